@@ -0,0 +1,135 @@
+package ru.ac.secondhand.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.ac.secondhand.dto.ad.AdFilter;
+import ru.ac.secondhand.dto.ad.AdSort;
+import ru.ac.secondhand.dto.ad.Ads;
+import ru.ac.secondhand.dto.ad.ExtendedAd;
+import ru.ac.secondhand.dto.ad.PriceHistogram;
+import ru.ac.secondhand.event.AdCommentsChangedEvent;
+import ru.ac.secondhand.event.AdDeletedEvent;
+import ru.ac.secondhand.event.AdSavedEvent;
+import ru.ac.secondhand.event.UserUpdatedEvent;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Кэш готовых ответов публичного API объявлений: страниц ленты, карточек объявлений и гистограмм цен.
+ * <p>
+ * Кэши ограничены по размеру и времени жизни. Записи удаляются по событиям после фиксации транзакции:
+ * изменение или удаление объявления удаляет его карточку и все страницы ленты и гистограммы,
+ * так как объявление могло сместиться между страницами; изменение профиля или количества объявлений
+ * пользователя удаляет карточки его объявлений, в которых показаны эти данные; добавление или удаление
+ * комментария удаляет карточку объявления со счётчиком комментариев. Счётчик комментариев в страницах
+ * ленты обновляется по истечении их времени жизни. Время жизни ограничивает устаревание записей,
+ * загруженных одновременно с изменением.
+ * </p>
+ * <p>
+ * Попадания, промахи и вытеснения публикуются в Micrometer как метрики {@code cache.*}
+ * с тегом {@code cache}, равным {@code ads.feed}, {@code ads.details} или {@code ads.priceHistogram}.
+ * </p>
+ */
+@Component
+public class AdResponseCache {
+
+    private static final int FEED_MAX_SIZE = 1_000;
+    private static final Duration FEED_TTL = Duration.ofMinutes(1);
+    private static final int DETAILS_MAX_SIZE = 10_000;
+    private static final Duration DETAILS_TTL = Duration.ofMinutes(10);
+    private static final int HISTOGRAM_MAX_SIZE = 50;
+    private static final Duration HISTOGRAM_TTL = Duration.ofSeconds(30);
+
+    private final Cache<FeedKey, Ads> feed;
+    private final Cache<Integer, ExtendedAd> details;
+    private final Cache<Integer, PriceHistogram> priceHistograms;
+
+    public AdResponseCache(MeterRegistry meterRegistry) {
+        feed = Caffeine.newBuilder()
+                .maximumSize(FEED_MAX_SIZE)
+                .expireAfterWrite(FEED_TTL)
+                .recordStats()
+                .build();
+        details = Caffeine.newBuilder()
+                .maximumSize(DETAILS_MAX_SIZE)
+                .expireAfterWrite(DETAILS_TTL)
+                .recordStats()
+                .build();
+        priceHistograms = Caffeine.newBuilder()
+                .maximumSize(HISTOGRAM_MAX_SIZE)
+                .expireAfterWrite(HISTOGRAM_TTL)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, feed, "ads.feed");
+        CaffeineCacheMetrics.monitor(meterRegistry, details, "ads.details");
+        CaffeineCacheMetrics.monitor(meterRegistry, priceHistograms, "ads.priceHistogram");
+    }
+
+    public Ads getFeed(AdFilter filter, String cursor, int size, Supplier<Ads> loader) {
+        FeedKey key = new FeedKey(filter.getMinPrice(), filter.getMaxPrice(), filter.getSort(), cursor, size);
+        return feed.get(key, k -> loader.get());
+    }
+
+    public ExtendedAd getDetails(Integer adId, Supplier<ExtendedAd> loader) {
+        return details.get(adId, k -> loader.get());
+    }
+
+    /**
+     * Карточки нескольких объявлений: найденные в кэше берутся из него, остальные загружаются
+     * одним вызовом {@code loader} и кэшируются. Объявления, которых нет в результате загрузчика,
+     * не кэшируются и отсутствуют в возвращаемой карте.
+     */
+    public Map<Integer, ExtendedAd> getDetails(Collection<Integer> adIds,
+                                               Function<Iterable<? extends Integer>, Map<Integer, ExtendedAd>> loader) {
+        return details.getAll(adIds, loader);
+    }
+
+    public PriceHistogram getPriceHistogram(int buckets, Supplier<PriceHistogram> loader) {
+        return priceHistograms.get(buckets, k -> loader.get());
+    }
+
+    @TransactionalEventListener
+    public void onAdSaved(AdSavedEvent event) {
+        evictAd(event.getAd().getPk());
+    }
+
+    @TransactionalEventListener
+    public void onAdDeleted(AdDeletedEvent event) {
+        evictAd(event.getAdId());
+    }
+
+    @TransactionalEventListener
+    public void onAdCommentsChanged(AdCommentsChangedEvent event) {
+        details.invalidate(event.getAdId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserUpdated(UserUpdatedEvent event) {
+        details.asMap().values().removeIf(ad -> event.getUsername().equals(ad.getEmail()));
+    }
+
+    private void evictAd(Integer adId) {
+        details.invalidate(adId);
+        feed.invalidateAll();
+        priceHistograms.invalidateAll();
+    }
+
+    @Value
+    private static class FeedKey {
+
+        Integer minPrice;
+        Integer maxPrice;
+        AdSort sort;
+        String cursor;
+        int size;
+    }
+}
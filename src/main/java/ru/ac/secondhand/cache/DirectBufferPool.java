@@ -0,0 +1,93 @@
+package ru.ac.secondhand.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ограниченный пул страниц прямой памяти для {@link ImageContentCache}.
+ * <p>
+ * Память выделяется слэбами по {@value #SLAB_PAGES} страниц, пока их общий объём не достигнет лимита,
+ * и затем не освобождается: страницы вытесненных записей возвращаются в пул и используются повторно.
+ * Поэтому кэш не выделяет прямую память при каждой загрузке и не зависит от сборщика мусора,
+ * который освобождает прямые буферы только при сборке их объектов.
+ * </p>
+ */
+class DirectBufferPool {
+
+    static final int PAGE_SIZE = 16 * 1024;
+
+    private static final int SLAB_PAGES = 256;
+
+    private final int maxPages;
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger allocatedPages = new AtomicInteger();
+
+    DirectBufferPool(long maxBytes) {
+        this.maxPages = (int) Math.min(maxBytes / PAGE_SIZE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Количество страниц для содержимого заданного размера.
+     */
+    static int pages(long size) {
+        return (int) ((size + PAGE_SIZE - 1) / PAGE_SIZE);
+    }
+
+    /**
+     * Берёт из пула страницы для содержимого заданного размера.
+     *
+     * @param size размер содержимого в байтах
+     * @return очищенные страницы или {@code null}, если свободных страниц не хватает
+     */
+    List<ByteBuffer> acquire(long size) {
+        int count = pages(size);
+        List<ByteBuffer> pages = new ArrayList<>(count);
+        while (pages.size() < count) {
+            ByteBuffer page = free.poll();
+            if (page != null) {
+                page.clear();
+                pages.add(page);
+            } else if (!allocateSlab()) {
+                release(pages);
+                return null;
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * Возвращает страницы в пул.
+     */
+    void release(List<ByteBuffer> pages) {
+        free.addAll(pages);
+    }
+
+    /**
+     * Объём выделенной прямой памяти в байтах.
+     */
+    long allocatedBytes() {
+        return (long) allocatedPages.get() * PAGE_SIZE;
+    }
+
+    private boolean allocateSlab() {
+        int allocated;
+        int count;
+        do {
+            allocated = allocatedPages.get();
+            count = Math.min(SLAB_PAGES, maxPages - allocated);
+            if (count <= 0) {
+                return false;
+            }
+        } while (!allocatedPages.compareAndSet(allocated, allocated + count));
+        ByteBuffer slab = ByteBuffer.allocateDirect(count * PAGE_SIZE);
+        for (int i = 0; i < count; i++) {
+            slab.limit((i + 1) * PAGE_SIZE).position(i * PAGE_SIZE);
+            free.add(slab.slice());
+        }
+        return true;
+    }
+}
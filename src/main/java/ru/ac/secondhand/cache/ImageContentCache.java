@@ -0,0 +1,181 @@
+package ru.ac.secondhand.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import ru.ac.secondhand.image.ImageFile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Кэш содержимого часто запрашиваемых изображений и их уменьшенных копий.
+ * <p>
+ * Запись хранит файл, выбранный для ответа, вместе с хэшем оригинала, поэтому попадание не обращается
+ * ни к базе данных, ни к диску. Содержимое хранится вне кучи в страницах {@link DirectBufferPool}
+ * по {@value DirectBufferPool#PAGE_SIZE} байт и не увеличивает паузы сборщика мусора. Пул ограничен
+ * {@code secondhand.images.cache.max-size}, и тем же объёмом страниц ограничен кэш; файлы больше
+ * {@code secondhand.images.cache.max-entry-size} не кэшируются и отдаются с диска.
+ * Вытеснение учитывает частоту обращений (W-TinyLFU в Caffeine): разовые запросы редких изображений
+ * не вытесняют популярные.
+ * </p>
+ * <p>
+ * Страницы удалённой, вытесненной или не допущенной в кэш записи явно возвращаются в пул слушателем удаления,
+ * который выполняется в потоке, изменившем кэш, — как только закрыты потоки чтения, ещё отправляющие
+ * её содержимое. Если свободных страниц нет, файл не читается в память и отдаётся с диска.
+ * </p>
+ * <p>
+ * Оригинал, отданный вместо не готовой копии, не кэшируется. Записи изображения удаляются после удаления
+ * его строки; время жизни ограничивает устаревание записи, загруженной одновременно с удалением.
+ * Попадания, промахи и вытеснения публикуются в Micrometer как метрики {@code cache.*} с тегом
+ * {@code cache=images.content}, доля попаданий — как {@code images.cache.hit.ratio}, занятый объём —
+ * как {@code images.cache.resident.bytes}.
+ * </p>
+ */
+@Component
+@Slf4j
+public class ImageContentCache {
+
+    private static final Duration TTL = Duration.ofMinutes(10);
+
+    private final Cache<Key, ImageFile> files;
+    private final DirectBufferPool pool;
+    private final long maxEntrySize;
+
+    public ImageContentCache(MeterRegistry meterRegistry,
+                             @Value("${secondhand.images.cache.max-size:64MB}") DataSize maxSize,
+                             @Value("${secondhand.images.cache.max-entry-size:1MB}") DataSize maxEntrySize) {
+        this.maxEntrySize = Math.min(maxEntrySize.toBytes(), Math.min(maxSize.toBytes(), Integer.MAX_VALUE));
+        this.pool = new DirectBufferPool(maxSize.toBytes());
+        files = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .<Key, ImageFile>weigher((key, file) -> weight(file))
+                .expireAfterWrite(TTL)
+                .executor(Runnable::run)
+                .removalListener((Key key, ImageFile file, RemovalCause cause) -> release(file))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, files, "images.content");
+        Gauge.builder("images.cache.hit.ratio", files, cache -> cache.stats().hitRate())
+                .register(meterRegistry);
+        Gauge.builder("images.cache.resident.bytes", files,
+                        cache -> cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L))
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("images.cache.direct.bytes", pool, DirectBufferPool::allocatedBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Закэшированный файл изображения.
+     *
+     * @param imageId идентификатор изображения
+     * @param width   ширина копии или {@code null} для оригинала
+     * @return файл с содержимым в памяти или {@code null}, если его нет в кэше
+     */
+    public ImageFile get(Integer imageId, Integer width) {
+        return files.getIfPresent(new Key(imageId, width));
+    }
+
+    /**
+     * Загружает содержимое файла в кэш, если файл не слишком велик, не заменяет не готовую копию
+     * и в пуле хватает свободных страниц.
+     *
+     * @param imageId идентификатор изображения
+     * @param file    файл, выбранный для ответа
+     * @return файл с содержимым в памяти или исходный файл, если он не закэширован
+     */
+    public ImageFile put(Integer imageId, ImageFile file) {
+        if (file.isPending()) {
+            return file;
+        }
+        PooledContentResource content = read(file);
+        if (content == null) {
+            return file;
+        }
+        ImageFile cached = new ImageFile(content, file.getHash(), file.getWidth(), false);
+        ImageFile previous = files.asMap().putIfAbsent(new Key(imageId, file.getWidth()), cached);
+        if (previous != null) {
+            content.release();
+            return previous;
+        }
+        return cached;
+    }
+
+    /**
+     * Удаляет из кэша оригинал и все копии изображения.
+     *
+     * @param imageId идентификатор изображения
+     */
+    public void invalidate(Integer imageId) {
+        files.asMap().keySet().removeIf(key -> key.getImageId().equals(imageId));
+    }
+
+    private PooledContentResource read(ImageFile file) {
+        List<ByteBuffer> pages = null;
+        try {
+            Path path = file.getResource().getFile().toPath();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size > maxEntrySize || (pages = pool.acquire(size)) == null) {
+                    return null;
+                }
+                ByteBuffer[] buffers = pages.toArray(new ByteBuffer[0]);
+                long read = 0;
+                while (read < size) {
+                    long count = channel.read(buffers);
+                    if (count < 0) {
+                        pool.release(pages);
+                        return null;
+                    }
+                    read += count;
+                }
+                pages.forEach(ByteBuffer::flip);
+                return new PooledContentResource(pages, path, pool);
+            }
+        } catch (IOException e) {
+            if (pages != null) {
+                pool.release(pages);
+            }
+            log.warn("Could not cache image file {}: {}", file.getResource(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static void release(ImageFile file) {
+        if (file != null) {
+            ((PooledContentResource) file.getResource()).release();
+        }
+    }
+
+    /**
+     * Объём страниц, занятых записью.
+     */
+    private static int weight(ImageFile file) {
+        try {
+            return DirectBufferPool.pages(file.getResource().contentLength()) * DirectBufferPool.PAGE_SIZE;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @lombok.Value
+    private static class Key {
+
+        Integer imageId;
+        Integer width;
+    }
+}
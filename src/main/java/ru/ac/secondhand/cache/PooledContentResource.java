@@ -0,0 +1,77 @@
+package ru.ac.secondhand.cache;
+
+import ru.ac.secondhand.utils.ByteBufferResource;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Содержимое файла в страницах {@link DirectBufferPool} со счётчиком ссылок.
+ * <p>
+ * Одну ссылку держит запись кэша, ещё по одной — каждый открытый поток чтения. Страницы возвращаются в пул,
+ * когда запись удалена из кэша и все потоки закрыты, поэтому вытеснение не портит ответ, который ещё
+ * отправляется. Поток, открытый после возврата страниц, читает исходный файл.
+ * </p>
+ */
+class PooledContentResource extends ByteBufferResource {
+
+    private final List<ByteBuffer> pages;
+    private final Path file;
+    private final DirectBufferPool pool;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    /**
+     * @param pages страницы с содержимым от нулевой позиции до {@code limit}
+     * @param file  исходный файл
+     * @param pool  пул, в который возвращаются страницы
+     */
+    PooledContentResource(List<ByteBuffer> pages, Path file, DirectBufferPool pool) {
+        super(pages, file.getFileName().toString());
+        this.pages = pages;
+        this.file = file;
+        this.pool = pool;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        if (!retain()) {
+            return Files.newInputStream(file);
+        }
+        AtomicBoolean closed = new AtomicBoolean();
+        return new FilterInputStream(super.getInputStream()) {
+            @Override
+            public void close() {
+                if (closed.compareAndSet(false, true)) {
+                    release();
+                }
+            }
+        };
+    }
+
+    /**
+     * Освобождает ссылку; последняя освобождённая ссылка возвращает страницы в пул.
+     */
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            pool.release(pages);
+        }
+    }
+
+    private boolean retain() {
+        int count;
+        do {
+            count = references.get();
+            if (count == 0) {
+                return false;
+            }
+        } while (!references.compareAndSet(count, count + 1));
+        return true;
+    }
+}
@@ -8,6 +8,9 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.util.matcher.AndRequestMatcher;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 import org.springframework.web.cors.CorsConfiguration;
 
 import static org.springframework.security.config.Customizer.withDefaults;
@@ -43,6 +46,14 @@ public class WebSecurityConfig {
             "/image/**"
     };
 
+    /**
+     * Пакетный запрос объявлений {@code GET /ads?ids=...} отдаёт контакты авторов, как и {@code GET /ads/{id}},
+     * поэтому, в отличие от ленты по тому же пути, требует аутентификации.
+     */
+    private static final RequestMatcher AD_BATCH = new AndRequestMatcher(
+            new AntPathRequestMatcher("/ads", HttpMethod.GET.name()),
+            request -> request.getParameter("ids") != null);
+
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
         http.csrf()
@@ -52,8 +63,14 @@ public class WebSecurityConfig {
                                 authorization
                                         .mvcMatchers(AUTH_WHITELIST)
                                         .permitAll()
-                                        .mvcMatchers(HttpMethod.GET, "/ads")
+                                        .requestMatchers(AD_BATCH)
+                                        .authenticated()
+                                        .mvcMatchers(HttpMethod.GET, "/ads", "/ads/search", "/ads/suggest", "/ads/price-histogram")
+                                        .permitAll()
+                                        .mvcMatchers("/actuator/health")
                                         .permitAll()
+                                        .mvcMatchers("/actuator/**")
+                                        .hasRole("ADMIN")
                                         .mvcMatchers("/ads/**", "/users/**")
                                         .authenticated())
                 .cors(cors -> cors
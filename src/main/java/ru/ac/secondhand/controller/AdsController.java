@@ -1,5 +1,9 @@
 package ru.ac.secondhand.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -8,6 +12,7 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import org.springdoc.api.annotations.ParameterObject;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -23,12 +28,29 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.ac.secondhand.dto.ad.AdDTO;
+import ru.ac.secondhand.dto.ad.AdFilter;
+import ru.ac.secondhand.dto.ad.AdImportReport;
+import ru.ac.secondhand.dto.ad.AdSearchQuery;
+import ru.ac.secondhand.dto.ad.AdSort;
 import ru.ac.secondhand.dto.ad.Ads;
 import ru.ac.secondhand.dto.ad.CreateOrUpdateAd;
 import ru.ac.secondhand.dto.ad.ExtendedAd;
+import ru.ac.secondhand.dto.ad.ExtendedAds;
+import ru.ac.secondhand.dto.ad.PriceHistogram;
+import ru.ac.secondhand.dto.ad.Suggestions;
+import ru.ac.secondhand.service.AdImportService;
+import ru.ac.secondhand.service.AdSearchService;
 import ru.ac.secondhand.service.AdService;
+import ru.ac.secondhand.service.AdSuggestService;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.List;
 
 @RestController
 @RequestMapping("ads")
@@ -43,20 +65,154 @@ import ru.ac.secondhand.service.AdService;
 public class AdsController {
 
     private final AdService adService;
+    private final AdSearchService adSearchService;
+    private final AdSuggestService adSuggestService;
+    private final AdImportService adImportService;
+    private final ObjectMapper objectMapper;
+
+    @Operation(summary = "Получить страницу ленты объявлений",
+            description = "Лента может быть ограничена диапазоном цены minPrice..maxPrice и упорядочена "
+                    + "параметром sort: ID (по умолчанию), PRICE_ASC, PRICE_DESC или NEWEST (сначала новые). "
+                    + "Фильтр и порядок нужно повторять вместе с курсором следующей страницы.")
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "OK: возвращает страницу объявлений и курсор следующей страницы",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            schema = @Schema(implementation = Ads.class))
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "BAD_REQUEST: некорректный курсор или параметр фильтра"
+            )
+    })
+    @GetMapping
+    public ResponseEntity<?> getAll(@ParameterObject AdFilter filter,
+                                    @RequestParam(value = "cursor", required = false) String cursor,
+                                    @RequestParam(value = "size", required = false) Integer size) {
+        Ads ads = adService.getAll(filter, cursor, size);
+        return ResponseEntity.ok(ads);
+    }
+
+    @Operation(summary = "Получить инфо о нескольких объявлениях",
+            description = "Идентификаторы передаются через запятую в параметре ids, не более 100 различных. "
+                    + "Объявления возвращаются в порядке запроса, ненайденные идентификаторы — в поле missing.")
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "OK: возвращает найденные объявления и ненайденные идентификаторы",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            schema = @Schema(implementation = ExtendedAds.class))
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "BAD_REQUEST: некорректный идентификатор или слишком много идентификаторов"
+            )
+    })
+    @GetMapping(params = "ids")
+    public ResponseEntity<?> getAdsInfo(@RequestParam("ids") List<Integer> ids) {
+        ExtendedAds ads = adService.getAdsInfo(ids);
+        return ResponseEntity.ok(ads);
+    }
 
-    @Operation(summary = "Получить список всех объявлений")
+    @Operation(summary = "Получить гистограмму цен объявлений")
     @ApiResponse(
             responseCode = "200",
-            description = "OK: возвращает список пользователей",
+            description = "OK: возвращает количество объявлений в интервалах цены",
             content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
-                    array = @ArraySchema(schema = @Schema(implementation = Ads.class)))
+                    schema = @Schema(implementation = PriceHistogram.class))
     )
-    @GetMapping
-    public ResponseEntity<?> getAll() {
-        Ads ads = adService.getAll();
+    @GetMapping("/price-histogram")
+    public ResponseEntity<?> getPriceHistogram(@RequestParam(value = "buckets", required = false) Integer buckets) {
+        PriceHistogram histogram = adService.getPriceHistogram(buckets);
+        return ResponseEntity.ok(histogram);
+    }
+
+    @Operation(summary = "Найти объявления по тексту",
+            description = "Ищет по заголовку и описанию с учётом русской морфологии. "
+                    + "Результаты упорядочены по релевантности. С fuzzy=true ищет по сходству заголовка "
+                    + "с запросом и находит объявления с опечатками; threshold задаёт минимальное сходство "
+                    + "от 0 до 1. Если точный поиск находит слишком мало, сервис сам переходит к нечёткому.")
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "OK: возвращает страницу найденных объявлений и курсор следующей страницы",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            schema = @Schema(implementation = Ads.class))
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "BAD_REQUEST: некорректный курсор"
+            )
+    })
+    @GetMapping("/search")
+    public ResponseEntity<?> search(@ParameterObject AdSearchQuery query,
+                                    @RequestParam(value = "cursor", required = false) String cursor,
+                                    @RequestParam(value = "size", required = false) Integer size) {
+        Ads ads = adSearchService.search(query, cursor, size);
         return ResponseEntity.ok(ads);
     }
 
+    @Operation(summary = "Получить подсказки для поисковой строки",
+            description = "Дополняет последнее слово введённого текста словами из заголовков объявлений, "
+                    + "самые частые первыми.")
+    @ApiResponse(
+            responseCode = "200",
+            description = "OK: возвращает подсказки",
+            content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                    schema = @Schema(implementation = Suggestions.class))
+    )
+    @GetMapping("/suggest")
+    public ResponseEntity<?> suggest(@RequestParam("prefix") String prefix,
+                                     @RequestParam(value = "limit", required = false) Integer limit) {
+        Suggestions suggestions = adSuggestService.suggest(prefix, limit);
+        return ResponseEntity.ok(suggestions);
+    }
+
+    @Operation(summary = "Выгрузить все объявления потоком NDJSON",
+            description = "Выбирается заголовком Accept: application/x-ndjson или параметром stream=true. "
+                    + "Каждая строка ответа содержит одно объявление в формате JSON.")
+    @ApiResponse(
+            responseCode = "200",
+            description = "OK: возвращает все объявления, по одному на строку",
+            content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                    schema = @Schema(implementation = AdDTO.class))
+    )
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAll() {
+        return streamAds();
+    }
+
+    @Operation(summary = "Выгрузить все объявления потоком NDJSON")
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamAllByFlag() {
+        return streamAds();
+    }
+
+    private ResponseEntity<StreamingResponseBody> streamAds() {
+        ObjectWriter writer = objectMapper.writerFor(AdDTO.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.setRootValueSeparator(null);
+                adService.streamAll(ad -> {
+                    try {
+                        writer.writeValue(generator, ad);
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
     @Operation(summary = "Получить инфо об объявлении")
     @ApiResponses(value = {
             @ApiResponse(
@@ -65,18 +221,27 @@ public class AdsController {
                     content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
                             schema = @Schema(implementation = ExtendedAd.class))
             ),
+            @ApiResponse(
+                    responseCode = "304",
+                    description = "NOT_MODIFIED: объявление не изменилось с версии из If-None-Match или If-Modified-Since"
+            ),
             @ApiResponse(
                     responseCode = "404",
                     description = "NOT_FOUND: объявление не найдено"
             )
     })
     @GetMapping("/{id}")
-    public ResponseEntity<?> getAdInfo(@PathVariable("id") Integer id) {
+    public ResponseEntity<?> getAdInfo(@PathVariable("id") Integer id, WebRequest request) {
+        if (adService.getAdVersion(id).checkNotModified(request)) {
+            return null;
+        }
         ExtendedAd ad = adService.getAdInfo(id);
         return ResponseEntity.ok(ad);
     }
 
-    @Operation(summary = "Получить список объявлений пользователя")
+    @Operation(summary = "Получить список объявлений пользователя",
+            description = "Порядок задаётся параметром sort: ID (по умолчанию), PRICE_ASC, PRICE_DESC "
+                    + "или NEWEST (сначала новые).")
     @ApiResponse(
             responseCode = "200",
             description = "OK: возвращает список пользователей",
@@ -84,8 +249,8 @@ public class AdsController {
                     array = @ArraySchema(schema = @Schema(implementation = Ads.class)))
     )
     @GetMapping("/me")
-    public ResponseEntity<?> getUsersAds() {
-        Ads ads = adService.getUsersAds();
+    public ResponseEntity<?> getUsersAds(@RequestParam(value = "sort", required = false) AdSort sort) {
+        Ads ads = adService.getUsersAds(sort);
         return ResponseEntity.ok(ads);
     }
 
@@ -103,6 +268,48 @@ public class AdsController {
         return ResponseEntity.status(HttpStatus.CREATED).body(createdAd);
     }
 
+    @Operation(summary = "Импортировать объявления",
+            description = "Принимает JSON-массив объектов CreateOrUpdateAd. Каждая строка проверяется отдельно: "
+                    + "некорректные строки отклоняются с описанием ошибки, остальные сохраняются без изображений.")
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "OK: возвращает результат импорта каждой строки",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            schema = @Schema(implementation = AdImportReport.class))
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "BAD_REQUEST: слишком много строк"
+            )
+    })
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> importAds(@RequestBody List<CreateOrUpdateAd> ads) {
+        AdImportReport report = adImportService.importAds(ads);
+        return ResponseEntity.ok(report);
+    }
+
+    @Operation(summary = "Импортировать объявления из CSV",
+            description = "Первая строка CSV — заголовок со столбцами title, price и description в любом порядке. "
+                    + "Некорректные строки отклоняются с описанием ошибки, остальные сохраняются без изображений.")
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "OK: возвращает результат импорта каждой строки",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            schema = @Schema(implementation = AdImportReport.class))
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "BAD_REQUEST: некорректный заголовок CSV или слишком много строк"
+            )
+    })
+    @PostMapping(value = "/import", consumes = "text/csv")
+    public ResponseEntity<?> importAdsCsv(Reader csv) {
+        AdImportReport report = adImportService.importCsv(csv);
+        return ResponseEntity.ok(report);
+    }
+
 
     @Operation(summary = "Изменить объявление")
     @ApiResponses(value = {
@@ -19,9 +19,12 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import ru.ac.secondhand.dto.comment.CommentDTO;
 import ru.ac.secondhand.dto.comment.Comments;
 import ru.ac.secondhand.dto.comment.CreateOrUpdateComment;
@@ -44,19 +47,46 @@ public class CommentController {
     private final CommentService commentService;
 
 
-    @Operation(summary = "Получить комментарии объявления.")
+    @Operation(summary = "Получить комментарии объявления.",
+            description = "Комментарии отдаются страницами, сначала новые. Курсор следующей страницы "
+                    + "возвращается в поле nextCursor и передаётся в параметре cursor.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Комментарии найдены.",
                     content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
                             schema = @Schema(implementation = Comments.class))),
+            @ApiResponse(responseCode = "304", description = "Комментарии не изменились с версии из If-None-Match."),
+            @ApiResponse(responseCode = "400", description = "Некорректный курсор."),
             @ApiResponse(responseCode = "404", description = "Комментарии не найдены.")
     })
     @GetMapping("/{id}/comments")
-    public ResponseEntity<?> getComments(@PathVariable("id") Integer adId) {
-        Comments comments = commentService.getComments(adId);
+    public ResponseEntity<?> getComments(@PathVariable("id") Integer adId,
+                                         @RequestParam(value = "cursor", required = false) String cursor,
+                                         @RequestParam(value = "size", required = false) Integer size,
+                                         WebRequest request) {
+        if (commentService.getCommentsVersion(adId).checkNotModified(request)) {
+            return null;
+        }
+        Comments comments = commentService.getComments(adId, cursor, size);
         return ResponseEntity.ok(comments);
     }
 
+    @Operation(summary = "Подписаться на изменения комментариев объявления.",
+            description = "Поток Server-Sent Events: события created, updated и deleted с комментарием в формате JSON "
+                    + "и идентификатором комментария в поле id. Медленный клиент отключается; после переподключения "
+                    + "пропущенные комментарии догружаются через GET /ads/{id}/comments. Простаивающему соединению "
+                    + "периодически отправляется SSE-комментарий; после удаления объявления соединение закрывается.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Подписка открыта.",
+                    content = @Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE,
+                            schema = @Schema(implementation = CommentDTO.class))),
+            @ApiResponse(responseCode = "404", description = "Объявление не найдено."),
+            @ApiResponse(responseCode = "503", description = "Достигнут лимит подписчиков, повторите позже.")
+    })
+    @GetMapping(value = "/{id}/comments/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamComments(@PathVariable("id") Integer adId) {
+        return commentService.subscribe(adId);
+    }
+
     @Operation(summary = "Добавить новый комментарий.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Комментарий успешно добавлен.",
@@ -1,9 +1,12 @@
 package ru.ac.secondhand.controller;
 
 import lombok.AllArgsConstructor;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -12,15 +15,27 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
 import ru.ac.secondhand.entity.Image;
+import ru.ac.secondhand.exception.ImageNotFoundException;
+import ru.ac.secondhand.image.ImageFile;
 import ru.ac.secondhand.service.ImageService;
+import ru.ac.secondhand.utils.FileResponses;
+import ru.ac.secondhand.utils.ResourceVersion;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 @AllArgsConstructor
 @RestController
 @RequestMapping("/image")
 public class ImageController {
 
+    private static final String IMMUTABLE =
+            CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().getHeaderValue() + ", immutable";
+    private static final String REVALIDATE = CacheControl.noCache().getHeaderValue();
+
     private final ImageService imageService;
 
     @PostMapping("/add")
@@ -38,14 +53,41 @@ public class ImageController {
         imageService.deleteImage(id);
     }
 
+    /**
+     * Изображение по адресу без хэша: ответ с ETag, который кэш должен перепроверять.
+     * Параметр {@code w} запрашивает уменьшенную копию не уже заданной ширины.
+     */
     @GetMapping(value = "/{imageId}", produces = {MediaType.IMAGE_PNG_VALUE, MediaType.IMAGE_JPEG_VALUE, MediaType.IMAGE_GIF_VALUE, "image/*"})
-    public ResponseEntity<?> getImageById(@PathVariable Integer imageId) {
-        byte[] image = imageService.getImage(imageId);
-        if (image != null) {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.IMAGE_JPEG);
-            return new ResponseEntity<>(image, headers, HttpStatus.OK);
+    public ResponseEntity<Resource> getImageById(@PathVariable Integer imageId,
+                                                 @RequestParam(value = "w", required = false) Integer width,
+                                                 ServletWebRequest request) throws IOException {
+        return image(imageService.getImageFile(imageId, width), REVALIDATE, request);
+    }
+
+    /**
+     * Изображение по адресу с хэшем содержимого: при замене изображения меняется адрес,
+     * поэтому ответ кэшируется на год как неизменяемый. Адрес с устаревшим хэшем не найден.
+     * Пока запрошенная копия не готова, вместо неё отдаётся оригинал с перепроверкой.
+     */
+    @GetMapping(value = "/{imageId}/{hash}", produces = {MediaType.IMAGE_PNG_VALUE, MediaType.IMAGE_JPEG_VALUE, MediaType.IMAGE_GIF_VALUE, "image/*"})
+    public ResponseEntity<Resource> getImageByHash(@PathVariable Integer imageId, @PathVariable String hash,
+                                                   @RequestParam(value = "w", required = false) Integer width,
+                                                   ServletWebRequest request) throws IOException {
+        ImageFile image = imageService.getImageFile(imageId, width);
+        if (!image.getHash().equals(hash)) {
+            throw new ImageNotFoundException(String.format("Image [%d] with hash [%s] not found", imageId, hash));
+        }
+        return image(image, image.isPending() ? REVALIDATE : IMMUTABLE, request);
+    }
+
+    private ResponseEntity<Resource> image(ImageFile image, String cacheControl, ServletWebRequest request)
+            throws IOException {
+        if (new ResourceVersion(image.getEtag()).checkNotModified(request)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .header(HttpHeaders.CACHE_CONTROL, cacheControl)
+                    .build();
         }
-        return ResponseEntity.notFound().build();
+        MediaType contentType = MediaTypeFactory.getMediaType(image.getResource()).orElse(MediaType.IMAGE_JPEG);
+        return FileResponses.ok(image.getResource(), contentType, cacheControl, request.getRequest());
     }
 }
@@ -19,6 +19,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 import ru.ac.secondhand.dto.user.NewPassword;
 import ru.ac.secondhand.dto.user.UpdateUserDTO;
@@ -54,8 +55,13 @@ public class UserController {
             content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
                     schema = @Schema(implementation = UserDTO.class))
     )
+    @ApiResponse(
+            responseCode = "304", description = "NOT_MODIFIED: данные не изменились с версии из If-None-Match или If-Modified-Since")
     @GetMapping("/me")
-    public ResponseEntity<?> getUserData() {
+    public ResponseEntity<?> getUserData(WebRequest request) {
+        if (userService.getUserDataVersion().checkNotModified(request)) {
+            return null;
+        }
         UserDTO userDTO = userService.getUserData();
         return ResponseEntity.ok(userDTO);
     }
@@ -12,7 +12,7 @@ import lombok.NoArgsConstructor;
  * </p>
  * <p>
  * Этот класс включает основные данные объявления, такие как идентификатор пользователя-автора,
- * URL изображения, уникальный идентификатор объявления (pk), цену и заголовок.
+ * URL изображения, уникальный идентификатор объявления (pk), цену, заголовок и количество комментариев.
  * Он предназначен для упрощения обработки и представления информации о объявлениях в пользовательском интерфейсе.
  * </p>
  *
@@ -28,5 +28,6 @@ public class AdDTO {
     private Integer pk;
     private Integer price;
     private String title;
+    private Integer commentsCount;
 
 }
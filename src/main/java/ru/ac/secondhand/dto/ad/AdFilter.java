@@ -0,0 +1,22 @@
+package ru.ac.secondhand.dto.ad;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Параметры выборки ленты объявлений: диапазон цены и порядок сортировки.
+ * <p>
+ * Заполняется из параметров запроса {@code minPrice}, {@code maxPrice} и {@code sort}.
+ * Границы диапазона включаются в выборку; незаданная граница не ограничивает цену.
+ * </p>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AdFilter {
+
+    private Integer minPrice;
+    private Integer maxPrice;
+    private AdSort sort = AdSort.ID;
+}
@@ -0,0 +1,23 @@
+package ru.ac.secondhand.dto.ad;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Итог массового импорта объявлений: количество импортированных и отклонённых строк
+ * и результат каждой строки в порядке входных данных.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AdImportReport {
+
+    private Integer imported;
+
+    private Integer failed;
+
+    private List<AdImportResult> results;
+}
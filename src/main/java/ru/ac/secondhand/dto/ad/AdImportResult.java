@@ -0,0 +1,26 @@
+package ru.ac.secondhand.dto.ad;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Результат импорта одной строки.
+ * <p>
+ * Поле {@code row} — номер строки во входных данных, начиная с 1 (для CSV — без строки заголовка).
+ * Для импортированной строки заполнено поле {@code pk} созданного объявления, для отклонённой — {@code error}.
+ * </p>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AdImportResult {
+
+    private int row;
+
+    private Integer pk;
+
+    private String error;
+}
@@ -0,0 +1,35 @@
+package ru.ac.secondhand.dto.ad;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Параметры поиска объявлений.
+ * <p>
+ * Заполняется из параметров запроса {@code q}, {@code fuzzy} и {@code threshold}. При {@code fuzzy=true}
+ * заголовки сравниваются с запросом по триграммам, что находит объявления с опечатками;
+ * {@code threshold} задаёт минимальное сходство от 0 до 1. Нечисловые и бесконечные значения {@code threshold}
+ * не принимаются: ошибка привязки параметра возвращается клиенту как 400.
+ * </p>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AdSearchQuery {
+
+    private String q;
+    private boolean fuzzy;
+    private Double threshold;
+
+    public AdSearchQuery(String q) {
+        this.q = q;
+    }
+
+    public void setThreshold(Double threshold) {
+        if (threshold != null && !Double.isFinite(threshold)) {
+            throw new IllegalArgumentException("Threshold must be a finite number");
+        }
+        this.threshold = threshold;
+    }
+}
@@ -0,0 +1,27 @@
+package ru.ac.secondhand.dto.ad;
+
+/**
+ * Порядок сортировки ленты объявлений.
+ */
+public enum AdSort {
+
+    /**
+     * По возрастанию идентификатора, порядок по умолчанию.
+     */
+    ID,
+
+    /**
+     * По возрастанию цены. Объявления без цены не выводятся.
+     */
+    PRICE_ASC,
+
+    /**
+     * По убыванию цены. Объявления без цены не выводятся.
+     */
+    PRICE_DESC,
+
+    /**
+     * Сначала новые: по убыванию времени создания, затем идентификатора.
+     */
+    NEWEST
+}
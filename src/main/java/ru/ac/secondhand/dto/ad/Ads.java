@@ -1,5 +1,6 @@
 package ru.ac.secondhand.dto.ad;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -17,6 +18,10 @@ import java.util.List;
  * Этот класс полезен для сценариев, где требуется передать список объявлений, например, при пагинации
  * или в ответах API, где необходимо вместе со списком предоставить дополнительные метаданные.
  * </p>
+ * <p>
+ * Поле {@code nextCursor} содержит непрозрачный курсор следующей страницы и отсутствует в ответе,
+ * если страница последняя.
+ * </p>
  *
  * @author fifimova
  */
@@ -28,4 +33,12 @@ public class Ads {
     private Integer count;
 
     private List<AdDTO> results;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
+
+    public Ads(Integer count, List<AdDTO> results) {
+        this.count = count;
+        this.results = results;
+    }
 }
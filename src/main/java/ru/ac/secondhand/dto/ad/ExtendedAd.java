@@ -9,7 +9,7 @@ import lombok.NoArgsConstructor;
  * <p>
  * Этот класс {@code ExtendedAd} используется для хранения детальной информации об объявлениях.
  * Он включает в себя всю необходимую информацию, такую как данные автора, описание, контактную информацию,
- * изображение, цену и заголовок объявления.
+ * изображение, цену и заголовок объявления, количество комментариев к нему и количество объявлений автора.
  * Предназначен для использования в сценариях, где требуется полная информация об объявлении.
  * </p>
  *
@@ -29,4 +29,6 @@ public class ExtendedAd {
     private String phone;
     private Integer price;
     private String title;
+    private Integer commentsCount;
+    private Integer authorAdsCount;
 }
@@ -0,0 +1,26 @@
+package ru.ac.secondhand.dto.ad;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Результат пакетного запроса объявлений по идентификаторам.
+ * <p>
+ * Поле {@code results} содержит найденные объявления в порядке запрошенных идентификаторов,
+ * поле {@code missing} — идентификаторы, для которых объявление не найдено, в том же порядке.
+ * </p>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExtendedAds {
+
+    private Integer count;
+
+    private List<ExtendedAd> results;
+
+    private List<Integer> missing;
+}
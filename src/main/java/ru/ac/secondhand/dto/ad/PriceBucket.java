@@ -0,0 +1,18 @@
+package ru.ac.secondhand.dto.ad;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Интервал гистограммы цен: границы {@code from}..{@code to} включительно и количество объявлений в нём.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PriceBucket {
+
+    private Integer from;
+    private Integer to;
+    private Long count;
+}
@@ -0,0 +1,22 @@
+package ru.ac.secondhand.dto.ad;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Гистограмма распределения цен объявлений.
+ * <p>
+ * Интервалы имеют одинаковую ширину и идут по возрастанию цены; пустые интервалы в ответ не включаются.
+ * Объявления без цены не учитываются.
+ * </p>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PriceHistogram {
+
+    private List<PriceBucket> buckets;
+}
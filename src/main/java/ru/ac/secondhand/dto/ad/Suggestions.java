@@ -0,0 +1,20 @@
+package ru.ac.secondhand.dto.ad;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Подсказки для поисковой строки: слова из заголовков объявлений по убыванию популярности.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Suggestions {
+
+    private Integer count;
+
+    private List<String> results;
+}
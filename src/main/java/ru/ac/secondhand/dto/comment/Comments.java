@@ -1,5 +1,7 @@
 package ru.ac.secondhand.dto.comment;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -18,12 +20,25 @@ import java.util.List;
  * URL изображения, уникальный идентификатор объявления (pk), цену и заголовок.
  * Он предназначен для упрощения обработки и представления информации о объявлениях в пользовательском интерфейсе.
  * </p>
+ * <p>
+ * Поле {@code nextCursor} содержит непрозрачный курсор следующей страницы комментариев и отсутствует в ответе,
+ * если страница последняя.
+ * </p>
  */
 @Setter
 @Getter
 @NoArgsConstructor
+@AllArgsConstructor
 public class Comments {
 
     private Integer count;
     private List<CommentDTO> results;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
+
+    public Comments(Integer count, List<CommentDTO> results) {
+        this.count = count;
+        this.results = results;
+    }
 }
@@ -4,8 +4,12 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+import org.hibernate.annotations.UpdateTimestamp;
 
-import javax.persistence.CascadeType;
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
@@ -14,8 +18,10 @@ import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
-import javax.persistence.OneToOne;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
+import javax.persistence.Version;
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -23,9 +29,19 @@ import java.util.List;
  * <p>
  * Класс {@code Ad} является сущностью JPA и представляет собой объявление.
  * Включает в себя данные, такие как название, описание и цена объявления.
+ * Идентификатор выдаётся последовательностью {@code ads_id_seq} блоками по 50 значений, поэтому
+ * вставки объявлений не требуют обращения к базе за ключом каждой строки и объединяются Hibernate в пакеты JDBC.
+ * Поле {@code createdAt} заполняется временем создания объявления и задаёт порядок ленты «сначала новые».
+ * Поля {@code version} и {@code updatedAt} меняются при каждом изменении объявления и задают
+ * его ETag и Last-Modified; {@code version} также используется для оптимистической блокировки.
+ * Поле {@code commentsCount} — счётчик комментариев, который изменяется только атомарным запросом
+ * {@code AdRepository#addCommentsCount} и поэтому не записывается при сохранении сущности.
  * Также связан с другими сущностями, такими как {@code Image}, {@code User},
  * и {@code Comment}, для представления изображения объявления, пользователя,
  * опубликовавшего объявление, и комментариев к объявлению соответственно.
+ * Комментарии удаляются вместе с объявлением внешним ключом {@code ON DELETE CASCADE},
+ * поэтому удаление объявления не загружает его комментарии.
+ * Одно изображение может быть общим для нескольких объявлений и пользователей, если их файлы совпадают.
  * </p>
  * <p>
  * Этот класс используется для взаимодействия с базой данных и представления информации
@@ -42,7 +58,8 @@ import java.util.List;
 public class Ad {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ads_id_seq")
+    @SequenceGenerator(name = "ads_id_seq", sequenceName = "ads_id_seq", allocationSize = 50)
     @EqualsAndHashCode.Include
     private Integer id;
 
@@ -50,8 +67,21 @@ public class Ad {
     private String description;
     private Integer price;
 
+    @CreationTimestamp
+    @Column(updatable = false)
+    private LocalDateTime createdAt;
+
+    @Version
+    private int version;
+
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+
+    @Column(updatable = false)
+    private int commentsCount;
+
     @ToString.Exclude
-    @OneToOne(fetch = FetchType.LAZY)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "image_id", referencedColumnName = "id")
     private Image image;
 
@@ -61,6 +91,7 @@ public class Ad {
     private User user;
 
     @ToString.Exclude
-    @OneToMany(mappedBy = "ad", cascade = CascadeType.REMOVE)
+    @OneToMany(mappedBy = "ad")
+    @OnDelete(action = OnDeleteAction.CASCADE)
     private List<Comment> comments;
 }
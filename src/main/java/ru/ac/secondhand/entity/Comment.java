@@ -5,6 +5,7 @@ import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
 
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
@@ -14,6 +15,7 @@ import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
+import javax.persistence.Version;
 import java.time.LocalDateTime;
 
 /**
@@ -42,6 +44,10 @@ import java.time.LocalDateTime;
  * при сохранении в базе данных с помощью аннотации {@code @CreationTimestamp}.
  * </p>
  * <p>
+ * Поля {@code version} и {@code updatedAt} меняются при каждом изменении комментария
+ * и участвуют в ETag списка комментариев объявления.
+ * </p>
+ * <p>
  * Поля {@code user} и {@code ad} представляют связи между комментарием, пользователем и объявлением.
  * Они аннотированы как множественные связи (Many-to-One), где каждый комментарий принадлежит
  * определенному пользователю и объявлению.
@@ -68,6 +74,12 @@ public class Comment {
     @CreationTimestamp
     private LocalDateTime createdAt;
 
+    @Version
+    private int version;
+
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+
     @ToString.Exclude
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "author_id", referencedColumnName = "id")
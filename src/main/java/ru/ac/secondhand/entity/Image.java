@@ -31,7 +31,17 @@ import javax.persistence.Table;
  * как первичный ключ с автоматической генерацией значений.
  * </p>
  * <p>
- * Поле {@code imagePath} содержит путь к изображению.
+ * Поле {@code imagePath} содержит путь файла изображения относительно корня хранилища {@code ImageStore},
+ * у изображений, ещё не перенесённых в хранилище, — абсолютный путь.
+ * </p>
+ * <p>
+ * Поле {@code hash} содержит SHA-256 содержимого файла в шестнадцатеричном виде. Хэш входит в адрес
+ * изображения и служит его строгим ETag, поэтому ответ по такому адресу кэшируется как неизменяемый.
+ * </p>
+ * <p>
+ * Поле {@code refCount} — количество объявлений и пользователей, ссылающихся на изображение: одинаковые
+ * загрузки хранятся одной строкой и одним файлом. Счётчик изменяется только атомарным запросом
+ * {@code ImageRepository#addReferences} и поэтому не записывается при сохранении сущности.
  * </p>
  */
 @Entity
@@ -48,4 +58,10 @@ public class Image {
 
     @Column(name = "image_path")
     private String imagePath;
+
+    @Column(name = "hash")
+    private String hash;
+
+    @Column(name = "ref_count", updatable = false)
+    private int refCount;
 }
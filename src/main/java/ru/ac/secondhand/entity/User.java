@@ -8,6 +8,9 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+import org.hibernate.annotations.UpdateTimestamp;
 import ru.ac.secondhand.entity.enums.Role;
 
 import javax.persistence.CascadeType;
@@ -20,9 +23,11 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
-import javax.persistence.OneToOne;
 import javax.persistence.Table;
+import javax.persistence.Version;
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -44,9 +49,10 @@ import java.util.List;
  * как первичный ключ с автоматической генерацией значений.
  * </p>
  * <p>
- * Поле {@code image} представляет связь с изображением пользователя (One-to-One), и
- * аннотировано как ленивая загрузка (Lazy Loading), что означает, что изображение будет
- * загружено только при необходимости.
+ * Поле {@code image} представляет связь с изображением пользователя (Many-to-One: одинаковые файлы
+ * хранятся одним изображением со счётчиком ссылок), и аннотировано как ленивая загрузка (Lazy Loading),
+ * что означает, что изображение будет загружено только при необходимости. Удаление не каскадируется:
+ * общее изображение освобождает сервис изображений.
  * </p>
  * <p>
  * Поля {@code username}, {@code password}, {@code firstName}, {@code lastName}, {@code phone}
@@ -56,13 +62,22 @@ import java.util.List;
  * Поле {@code role} представляет роль пользователя и использует перечисление (Enum) {@code Role}.
  * </p>
  * <p>
+ * Поля {@code version} и {@code updatedAt} меняются при каждом изменении пользователя
+ * и задают ETag и Last-Modified его профиля.
+ * </p>
+ * <p>
+ * Поле {@code adsCount} — счётчик объявлений пользователя, который изменяется только атомарным запросом
+ * {@code UserRepository#addAdsCount} и поэтому не записывается при сохранении сущности.
+ * </p>
+ * <p>
  * Аннотации {@code @JsonIgnore} применены к полям {@code ads} и {@code comments} для исключения
  * их из сериализации при преобразовании в JSON, что может быть полезно в определенных случаях.
  * </p>
  * <p>
  * Поля {@code ads} и {@code comments} представляют связи с объявлениями и комментариями,
- * соответственно, и аннотированы как множественные связи (One-to-Many) с каскадным удалением
- * (CascadeType.REMOVE), что позволяет удалять связанные объявления и комментарии при удалении пользователя.
+ * соответственно, и аннотированы как множественные связи (One-to-Many). Связанные объявления и комментарии
+ * удаляются вместе с пользователем внешними ключами {@code ON DELETE CASCADE} одним запросом,
+ * без загрузки коллекций в память.
  * </p>
  */
 @Entity
@@ -82,7 +97,7 @@ public class User {
     private Integer id;
 
     @ToString.Exclude
-    @OneToOne(fetch = FetchType.LAZY, cascade = CascadeType.ALL)
+    @ManyToOne(fetch = FetchType.LAZY, cascade = {CascadeType.PERSIST, CascadeType.MERGE})
     @JoinColumn(name = "image_id", referencedColumnName = "id")
     private Image image;
 
@@ -96,13 +111,24 @@ public class User {
     @Enumerated(EnumType.STRING)
     private Role role;
 
+    @Version
+    private int version;
+
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+
+    @Column(updatable = false)
+    private int adsCount;
+
     @JsonIgnore
     @ToString.Exclude
-    @OneToMany(mappedBy = "user", cascade = CascadeType.REMOVE)
+    @OneToMany(mappedBy = "user")
+    @OnDelete(action = OnDeleteAction.CASCADE)
     private List<Ad> ads;
 
     @JsonIgnore
     @ToString.Exclude
-    @OneToMany(mappedBy = "user", cascade = CascadeType.REMOVE)
+    @OneToMany(mappedBy = "user")
+    @OnDelete(action = OnDeleteAction.CASCADE)
     private List<Comment> comments;
 }
@@ -0,0 +1,12 @@
+package ru.ac.secondhand.event;
+
+import lombok.Value;
+
+/**
+ * Событие добавления или удаления комментария к объявлению.
+ */
+@Value
+public class AdCommentsChangedEvent {
+
+    Integer adId;
+}
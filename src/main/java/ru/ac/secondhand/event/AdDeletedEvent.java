@@ -0,0 +1,12 @@
+package ru.ac.secondhand.event;
+
+import lombok.Value;
+
+/**
+ * Событие удаления объявления.
+ */
+@Value
+public class AdDeletedEvent {
+
+    Integer adId;
+}
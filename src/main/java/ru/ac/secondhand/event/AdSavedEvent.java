@@ -0,0 +1,18 @@
+package ru.ac.secondhand.event;
+
+import lombok.Value;
+import ru.ac.secondhand.dto.ad.AdDTO;
+
+/**
+ * Событие сохранения объявления: создания, изменения текста или замены изображения.
+ * <p>
+ * Публикуется сервисом объявлений внутри транзакции и несёт актуальное состояние объявления,
+ * чтобы подписчики могли обновить свои данные без обращения к базе.
+ * </p>
+ */
+@Value
+public class AdSavedEvent {
+
+    AdDTO ad;
+    String description;
+}
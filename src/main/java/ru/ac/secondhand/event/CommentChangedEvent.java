@@ -0,0 +1,20 @@
+package ru.ac.secondhand.event;
+
+import lombok.Value;
+import ru.ac.secondhand.dto.comment.CommentDTO;
+
+/**
+ * Событие создания, изменения или удаления комментария к объявлению.
+ * Для удалённого комментария содержит его последнее состояние.
+ */
+@Value
+public class CommentChangedEvent {
+
+    Integer adId;
+    Type type;
+    CommentDTO comment;
+
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+}
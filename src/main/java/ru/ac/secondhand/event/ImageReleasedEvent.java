@@ -0,0 +1,12 @@
+package ru.ac.secondhand.event;
+
+import lombok.Value;
+
+/**
+ * Событие освобождения ссылки на изображение: объявление или пользователь перестали на него ссылаться.
+ */
+@Value
+public class ImageReleasedEvent {
+
+    Integer imageId;
+}
@@ -0,0 +1,13 @@
+package ru.ac.secondhand.event;
+
+import lombok.Value;
+
+/**
+ * Событие сохранения файла нового изображения.
+ */
+@Value
+public class ImageSavedEvent {
+
+    Integer imageId;
+    String imagePath;
+}
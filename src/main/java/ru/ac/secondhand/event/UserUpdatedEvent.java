@@ -0,0 +1,14 @@
+package ru.ac.secondhand.event;
+
+import lombok.Value;
+
+/**
+ * Событие изменения данных пользователя, показываемых в карточках его объявлений:
+ * имени, фамилии, телефона или количества объявлений.
+ */
+@Value
+public class UserUpdatedEvent {
+
+    Integer userId;
+    String username;
+}
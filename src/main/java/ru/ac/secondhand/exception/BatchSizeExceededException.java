@@ -0,0 +1,8 @@
+package ru.ac.secondhand.exception;
+
+public class BatchSizeExceededException extends RuntimeException {
+
+    public BatchSizeExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package ru.ac.secondhand.exception;
+
+public class InvalidCsvException extends RuntimeException {
+
+    public InvalidCsvException(String message) {
+        super(message);
+    }
+}
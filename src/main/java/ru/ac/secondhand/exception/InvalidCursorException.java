@@ -0,0 +1,8 @@
+package ru.ac.secondhand.exception;
+
+public class InvalidCursorException extends RuntimeException {
+
+    public InvalidCursorException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package ru.ac.secondhand.exception;
+
+public class StreamLimitExceededException extends RuntimeException {
+
+    public StreamLimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,28 @@
+package ru.ac.secondhand.image;
+
+import lombok.Value;
+import org.springframework.core.io.Resource;
+
+/**
+ * Файл изображения, выбранный для ответа: оригинал или его уменьшенная копия.
+ * <p>
+ * Поле {@code hash} — хэш содержимого оригинала, {@code width} — ширина копии или {@code null} для оригинала.
+ * Поле {@code pending} означает, что запрошенная копия ещё не готова и вместо неё отдаётся оригинал:
+ * такой ответ нельзя кэшировать как неизменяемый.
+ * </p>
+ */
+@Value
+public class ImageFile {
+
+    Resource resource;
+    String hash;
+    Integer width;
+    boolean pending;
+
+    /**
+     * Строгий ETag файла: хэш оригинала, для копии — вместе с её шириной.
+     */
+    public String getEtag() {
+        return width == null ? hash : hash + "-w" + width;
+    }
+}
@@ -0,0 +1,318 @@
+package ru.ac.secondhand.image;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.ac.secondhand.event.ImageSavedEvent;
+
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Уменьшенные копии изображений для карточек и списков.
+ * <p>
+ * После фиксации сохранения нового файла ({@code ImageSavedEvent}) задача на построение копий
+ * всех ширин из {@code secondhand.images.renditions.widths} ставится в пул из
+ * {@code secondhand.images.renditions.threads} потоков с очередью на
+ * {@code secondhand.images.renditions.queue-capacity} задач. Если очередь заполнена, задача отбрасывается:
+ * копии будут построены при первом запросе, который их не найдёт. Один файл обрабатывается одной задачей.
+ * </p>
+ * <p>
+ * Копия хранится рядом с оригиналом под именем {@code <имя>_w<ширина>.<расширение>} и записывается
+ * через временный файл, поэтому читатели видят только готовые копии. Оригинал масштабируется
+ * {@code java.awt} последовательными уменьшениями вдвое с билинейной интерполяцией. Если оригинал не шире
+ * копии, вместо копии создаётся жёсткая ссылка на оригинал.
+ * </p>
+ * <p>
+ * Размеры оригинала читаются из заголовка файла до декодирования. Изображение, в котором больше
+ * {@code secondhand.images.renditions.max-pixels} пикселей, не декодируется: небольшой сжатый файл
+ * может распаковаться в гигабайты памяти. Вместо его копий создаются ссылки на оригинал, поэтому
+ * такой файл отдаётся как есть и не ставится в очередь повторно. Так же обрабатывается файл, который
+ * не удалось построить: формат не поддерживается, нет записи в формат или файл повреждён. Иначе каждый
+ * запрос копии снова ставил бы в очередь его чтение. Количество построенных и отброшенных задач
+ * публикуется в Micrometer как {@code images.renditions.created} и {@code images.renditions.rejected},
+ * количество файлов в обработке — как {@code images.renditions.pending}.
+ * </p>
+ */
+@Component
+@Slf4j
+public class ImageRenditions {
+
+    private final List<Integer> widths;
+    private final long maxPixels;
+    private final Executor workers;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final Counter created;
+    private final Counter rejected;
+
+    @Autowired
+    public ImageRenditions(MeterRegistry meterRegistry,
+                           @Value("${secondhand.images.renditions.widths:160,320,640}") List<Integer> widths,
+                           @Value("${secondhand.images.renditions.threads:2}") int threads,
+                           @Value("${secondhand.images.renditions.queue-capacity:100}") int queueCapacity,
+                           @Value("${secondhand.images.renditions.max-pixels:40000000}") long maxPixels) {
+        this(meterRegistry, widths, maxPixels, new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), workerThreadFactory()));
+    }
+
+    ImageRenditions(MeterRegistry meterRegistry, List<Integer> widths, long maxPixels, Executor workers) {
+        this.widths = widths.stream().sorted().distinct().collect(Collectors.toList());
+        this.maxPixels = maxPixels;
+        this.workers = workers;
+        meterRegistry.gaugeCollectionSize("images.renditions.pending", Tags.empty(), pending);
+        this.created = meterRegistry.counter("images.renditions.created");
+        this.rejected = meterRegistry.counter("images.renditions.rejected");
+    }
+
+    private static CustomizableThreadFactory workerThreadFactory() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("image-rendition-");
+        threadFactory.setDaemon(true);
+        threadFactory.setThreadPriority(Thread.MIN_PRIORITY);
+        return threadFactory;
+    }
+
+    /**
+     * Ширина копии для запрошенной ширины: наименьшая из настроенных, не меньше запрошенной.
+     *
+     * @param requested запрошенная ширина или {@code null}
+     * @return ширина копии или {@code null}, если нужен оригинал
+     */
+    public Integer select(Integer requested) {
+        if (requested == null || requested <= 0) {
+            return null;
+        }
+        for (Integer width : widths) {
+            if (width >= requested) {
+                return width;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Путь копии заданной ширины рядом с оригиналом.
+     */
+    public Path path(String originalPath, int width) {
+        int dot = originalPath.lastIndexOf('.');
+        int slash = originalPath.lastIndexOf('/');
+        if (dot <= slash) {
+            return Paths.get(originalPath + "_w" + width);
+        }
+        return Paths.get(originalPath.substring(0, dot) + "_w" + width + originalPath.substring(dot));
+    }
+
+    /**
+     * Готовая копия изображения. Если копии ещё нет, ставит задачу на её построение.
+     *
+     * @param originalPath путь оригинала
+     * @param width        ширина копии
+     * @return путь копии или {@code null}, если копия не готова
+     */
+    public Path find(String originalPath, int width) {
+        Path rendition = path(originalPath, width);
+        if (Files.isReadable(rendition)) {
+            return rendition;
+        }
+        submit(originalPath);
+        return null;
+    }
+
+    /**
+     * Удаляет копии изображения всех ширин.
+     *
+     * @param originalPath путь оригинала
+     */
+    public void delete(String originalPath) {
+        for (Integer width : widths) {
+            try {
+                Files.deleteIfExists(path(originalPath, width));
+            } catch (IOException e) {
+                log.warn("Could not delete rendition {} of {}: {}", width, originalPath, e.getMessage());
+            }
+        }
+    }
+
+    @TransactionalEventListener
+    public void onImageSaved(ImageSavedEvent event) {
+        submit(event.getImagePath());
+    }
+
+    private void submit(String originalPath) {
+        if (!pending.add(originalPath)) {
+            return;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    render(originalPath);
+                } finally {
+                    pending.remove(originalPath);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(originalPath);
+            rejected.increment();
+            log.debug("Rendition queue is full, skipping {}", originalPath);
+        }
+    }
+
+    private void render(String originalPath) {
+        Path original = Paths.get(originalPath);
+        List<Integer> missing = widths.stream()
+                .filter(width -> !Files.exists(path(originalPath, width)))
+                .collect(Collectors.toList());
+        if (missing.isEmpty()) {
+            return;
+        }
+        try (ImageInputStream in = ImageIO.createImageInputStream(original.toFile())) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+            if (readers == null || !readers.hasNext()) {
+                log.warn("Unsupported image format, renditions of {} link to the original", originalPath);
+                linkToOriginal(original, originalPath);
+                return;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int sourceWidth = reader.getWidth(0);
+                long pixels = (long) sourceWidth * reader.getHeight(0);
+                boolean oversized = pixels > maxPixels;
+                if (oversized) {
+                    log.warn("Image {} has {} pixels, more than {}: renditions link to the original",
+                            originalPath, pixels, maxPixels);
+                }
+                BufferedImage source = null;
+                for (Integer width : missing) {
+                    Path rendition = path(originalPath, width);
+                    Path temp = Files.createTempFile(rendition.getParent(), "rendition", ".tmp");
+                    try {
+                        if (oversized || sourceWidth <= width) {
+                            link(original, temp);
+                        } else {
+                            if (source == null) {
+                                source = reader.read(0);
+                            }
+                            if (!ImageIO.write(scale(source, width), format(originalPath), temp.toFile())) {
+                                log.warn("No image writer, renditions of {} link to the original", originalPath);
+                                linkToOriginal(original, originalPath);
+                                return;
+                            }
+                        }
+                        Files.move(temp, rendition, StandardCopyOption.ATOMIC_MOVE);
+                        created.increment();
+                    } finally {
+                        Files.deleteIfExists(temp);
+                    }
+                }
+            } finally {
+                reader.dispose();
+            }
+            log.debug("Renditions of {} are ready", originalPath);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not render {}, renditions link to the original: {}", originalPath, e.getMessage());
+            linkToOriginal(original, originalPath);
+        } catch (OutOfMemoryError e) {
+            // декодированное изображение уже недостижимо, поток пула продолжает работу;
+            // нехватка памяти временная, поэтому копии будут построены при следующем запросе
+            log.error("Not enough memory to render {}: {}", originalPath, e.getMessage());
+        }
+    }
+
+    /**
+     * Создаёт вместо ещё не построенных копий ссылки на оригинал, чтобы файл не ставился в очередь повторно.
+     */
+    private void linkToOriginal(Path original, String originalPath) {
+        try {
+            for (Integer width : widths) {
+                Path rendition = path(originalPath, width);
+                if (Files.exists(rendition)) {
+                    continue;
+                }
+                Path temp = Files.createTempFile(rendition.getParent(), "rendition", ".tmp");
+                try {
+                    link(original, temp);
+                    Files.move(temp, rendition, StandardCopyOption.ATOMIC_MOVE);
+                    created.increment();
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not link renditions of {} to the original: {}", originalPath, e.getMessage());
+        }
+    }
+
+    private static void link(Path original, Path target) throws IOException {
+        Files.delete(target);
+        try {
+            Files.createLink(target, original);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(original, target);
+        }
+    }
+
+    /**
+     * Уменьшает изображение до заданной ширины с сохранением пропорций. Уменьшение выполняется шагами
+     * не больше чем вдвое: билинейная интерполяция за один большой шаг теряет детали.
+     */
+    static BufferedImage scale(BufferedImage source, int width) {
+        int height = Math.max(1, (int) Math.round((double) source.getHeight() * width / source.getWidth()));
+        int type = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = source;
+        int currentWidth = source.getWidth();
+        int currentHeight = source.getHeight();
+        do {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = currentWidth == width ? height : Math.max(height, currentHeight / 2);
+            BufferedImage next = new BufferedImage(currentWidth, currentHeight, type);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (currentWidth > width);
+        return current;
+    }
+
+    private static String format(String originalPath) {
+        return originalPath.toLowerCase().endsWith(".png") ? "png" : "jpg";
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (workers instanceof ExecutorService) {
+            ((ExecutorService) workers).shutdownNow();
+        }
+    }
+}
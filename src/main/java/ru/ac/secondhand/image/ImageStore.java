@@ -0,0 +1,134 @@
+package ru.ac.secondhand.image;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Хранилище файлов изображений в каталоге {@code secondhand.images.root}.
+ * <p>
+ * Файл хранится под именем из хэша содержимого в подкаталогах по первым двум парам символов хэша:
+ * {@code ab/cd/abcd....png}. Так в одном каталоге оказывается не больше нескольких сотен файлов даже
+ * при миллионах изображений, и поиск файла и резервное копирование не перебирают огромный каталог.
+ * </p>
+ * <p>
+ * В {@code Image.imagePath} хранится путь относительно корня, поэтому узлы могут монтировать хранилище
+ * в любой каталог. Абсолютные пути изображений, сохранённых до появления хранилища, используются как есть,
+ * пока их не перенесёт {@link ImageStoreMigration}.
+ * </p>
+ */
+@Component
+public class ImageStore {
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private final Path root;
+
+    public ImageStore(@Value("${secondhand.images.root:${user.dir}/images}") String root) {
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Относительный путь файла в хранилище: два уровня подкаталогов по началу имени и само имя.
+     *
+     * @param filename имя файла, начинающееся с хэша содержимого
+     * @return путь вида {@code ab/cd/<имя>}
+     */
+    public String relativePath(String filename) {
+        return filename.substring(0, 2) + "/" + filename.substring(2, 4) + "/" + filename;
+    }
+
+    /**
+     * Путь файла изображения: относительный путь разрешается от корня хранилища, абсолютный не изменяется.
+     *
+     * @param imagePath значение {@code Image.imagePath}
+     * @return путь файла
+     */
+    public Path resolve(String imagePath) {
+        Path path = Paths.get(imagePath);
+        return path.isAbsolute() ? path : root.resolve(path);
+    }
+
+    /**
+     * Создаёт временный файл для загрузки в корне хранилища, чтобы его можно было атомарно
+     * переместить на место в той же файловой системе.
+     */
+    public Path createTempFile() throws IOException {
+        Files.createDirectories(root);
+        return Files.createTempFile(root, "upload", ".tmp");
+    }
+
+    /**
+     * Перемещает файл в хранилище. Если файл с таким путём уже есть, он заменяется:
+     * по одинаковому пути лежит одинаковое содержимое.
+     *
+     * @param file         временный файл
+     * @param relativePath путь в хранилище
+     */
+    public void move(Path file, String relativePath) throws IOException {
+        Path target = resolve(relativePath);
+        Files.createDirectories(target.getParent());
+        Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Помещает в хранилище копию файла, не удаляя его: на одной файловой системе создаётся жёсткая ссылка,
+     * иначе содержимое копируется через временный файл, поэтому по пути в хранилище не бывает неполного файла.
+     *
+     * @param source       файл вне хранилища
+     * @param relativePath путь в хранилище
+     */
+    public void copy(Path source, String relativePath) throws IOException {
+        Path target = resolve(relativePath);
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), "copy", ".tmp");
+        try {
+            Files.delete(temp);
+            try {
+                Files.createLink(temp, source);
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(source, temp);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * SHA-256 содержимого файла в шестнадцатеричном виде.
+     */
+    public static String hash(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return toHex(digest.digest());
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String toHex(byte[] hash) {
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,177 @@
+package ru.ac.secondhand.image;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.ac.secondhand.entity.Image;
+import ru.ac.secondhand.repository.ImageRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Перенос файлов изображений, сохранённых до появления {@link ImageStore}, в хранилище.
+ * <p>
+ * Включается свойством {@code secondhand.images.migration.enabled=true} и выполняется в фоновом потоке
+ * после старта приложения, не прерывая отдачу изображений. Изображения с абсолютным путём читаются
+ * порциями по {@code secondhand.images.migration.batch-size} по возрастанию идентификатора. Для порции
+ * файлы сначала помещаются в хранилище (жёсткой ссылкой или копией), затем пути порции заменяются
+ * на относительные в одной транзакции, и только после её фиксации удаляются старые файлы, на которые
+ * больше не ссылается ни одна строка, и их уменьшенные копии: копии строятся заново при запросе.
+ * </p>
+ * <p>
+ * Путь изображения заменяется под блокировкой его хэша, как и при загрузке: если файл в хранилище
+ * успели удалить вместе с освобождённым изображением с тем же хэшем, он помещается в хранилище заново.
+ * Неиспользуемый файл в хранилище удаляется под той же блокировкой.
+ * </p>
+ * <p>
+ * Перенос можно прервать и запустить снова: перенесённые изображения уже имеют относительный путь
+ * и не выбираются, а файл, помещённый в хранилище до прерывания, повторно не копируется.
+ * Путь заменяется, только если он не изменился с момента чтения. Перенос должен быть включён
+ * на одном узле.
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ImageStoreMigration {
+
+    private final ImageRepository imageRepository;
+    private final ImageStore imageStore;
+    private final ImageRenditions renditions;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${secondhand.images.migration.enabled:false}")
+    private boolean enabled;
+
+    @Value("${secondhand.images.migration.batch-size:500}")
+    private int batchSize;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("image-migration-");
+        threadFactory.setDaemon(true);
+        threadFactory.newThread(this::migrate).start();
+    }
+
+    /**
+     * Переносит все изображения с абсолютным путём.
+     *
+     * @return количество перенесённых изображений
+     */
+    public int migrate() {
+        log.info("Image store migration started");
+        int migrated = 0;
+        int afterId = 0;
+        List<Image> batch;
+        while (!(batch = imageRepository.findLegacyAfter(afterId, PageRequest.of(0, batchSize))).isEmpty()) {
+            afterId = batch.get(batch.size() - 1).getId();
+            List<Move> moves = new ArrayList<>(batch.size());
+            for (Image image : batch) {
+                Move move = copy(image);
+                if (move != null) {
+                    moves.add(move);
+                }
+            }
+            boolean[] moved = transactionTemplate.execute(status -> {
+                boolean[] updated = new boolean[moves.size()];
+                for (int i = 0; i < moves.size(); i++) {
+                    Move move = moves.get(i);
+                    imageRepository.lockHash(move.getHash());
+                    updated[i] = ensureCopied(move) && imageRepository.movePath(move.getId(), move.getOldPath(),
+                            move.getNewPath(), move.getHash()) > 0;
+                }
+                return updated;
+            });
+            for (int i = 0; i < moves.size(); i++) {
+                Move move = moves.get(i);
+                if (moved[i]) {
+                    migrated++;
+                } else {
+                    transactionTemplate.execute(status -> {
+                        imageRepository.lockHash(move.getHash());
+                        if (!imageRepository.existsByImagePath(move.getNewPath())) {
+                            deleteQuietly(imageStore.resolve(move.getNewPath()));
+                        }
+                        return null;
+                    });
+                }
+                if (!imageRepository.existsByImagePath(move.getOldPath())) {
+                    deleteQuietly(Paths.get(move.getOldPath()));
+                    renditions.delete(move.getOldPath());
+                }
+            }
+            log.info("Image store migration: {} images moved, last id {}", migrated, afterId);
+        }
+        log.info("Image store migration finished, {} images moved", migrated);
+        return migrated;
+    }
+
+    private Move copy(Image image) {
+        Path source = Paths.get(image.getImagePath());
+        try {
+            String hash = image.getHash() != null ? image.getHash() : ImageStore.hash(source);
+            String newPath = imageStore.relativePath(hash + extension(source));
+            if (!Files.exists(imageStore.resolve(newPath))) {
+                imageStore.copy(source, newPath);
+            }
+            return new Move(image.getId(), image.getImagePath(), newPath, hash);
+        } catch (IOException e) {
+            log.warn("Could not move image [{}] from {}: {}", image.getId(), image.getImagePath(), e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Помещает файл в хранилище повторно, если его удалили после копирования. Вызывается под блокировкой хэша.
+     */
+    private boolean ensureCopied(Move move) {
+        if (Files.exists(imageStore.resolve(move.getNewPath()))) {
+            return true;
+        }
+        try {
+            imageStore.copy(Paths.get(move.getOldPath()), move.getNewPath());
+            return true;
+        } catch (IOException e) {
+            log.warn("Could not move image [{}] from {}: {}", move.getId(), move.getOldPath(), e.toString());
+            return false;
+        }
+    }
+
+    private static String extension(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot).toLowerCase(Locale.ROOT);
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete file {}: {}", file, e.getMessage());
+        }
+    }
+
+    @lombok.Value
+    private static class Move {
+
+        Integer id;
+        String oldPath;
+        String newPath;
+        String hash;
+    }
+}
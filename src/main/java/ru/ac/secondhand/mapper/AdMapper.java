@@ -8,6 +8,9 @@ import ru.ac.secondhand.dto.ad.Ads;
 import ru.ac.secondhand.dto.ad.CreateOrUpdateAd;
 import ru.ac.secondhand.dto.ad.ExtendedAd;
 import ru.ac.secondhand.entity.Ad;
+import ru.ac.secondhand.repository.projection.AdCardView;
+import ru.ac.secondhand.repository.projection.AdDetailsView;
+import ru.ac.secondhand.utils.ImageUrls;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -25,31 +28,54 @@ import java.util.stream.Collectors;
  * в том числе методы для создания расширенных и сокращённых представлений объявления.
  * Также предусмотрен метод {@code toAds} для преобразования списка объявлений в их DTO представления.
  * </p>
+ * <p>
+ * Для чтения списков и детальной страницы используются проекции {@code AdCardView} и {@code AdDetailsView},
+ * которые выбираются одним SQL-запросом без загрузки сущностей.
+ * Адрес изображения содержит хэш его содержимого и строится {@link ImageUrls}.
+ * </p>
  *
  * @author fifimova
  */
-@Mapper(componentModel = "spring", injectionStrategy = InjectionStrategy.CONSTRUCTOR)
+@Mapper(componentModel = "spring", injectionStrategy = InjectionStrategy.CONSTRUCTOR, imports = ImageUrls.class)
 public interface AdMapper {
 
     @Mapping(target = "id", ignore = true)
+    @Mapping(target = "createdAt", ignore = true)
+    @Mapping(target = "version", ignore = true)
+    @Mapping(target = "updatedAt", ignore = true)
+    @Mapping(target = "commentsCount", ignore = true)
     @Mapping(target = "image", ignore = true)
     @Mapping(target = "user", ignore = true)
     @Mapping(target = "comments", ignore = true)
     Ad toAdEntity(CreateOrUpdateAd ad);
 
-    @Mapping(target = "image", expression = "java(ad.getImage() != null ? \"/image/\" + ad.getImage().getId() : null)")
+    @Mapping(target = "image", expression = "java(ImageUrls.of(ad.getImage()))")
     @Mapping(target = "pk", source = "ad.id")
     @Mapping(target = "authorFirstName", source = "ad.user.firstName")
     @Mapping(target = "authorLastName", source = "ad.user.lastName")
     @Mapping(target = "email", source = "ad.user.username")
     @Mapping(target = "phone", source = "ad.user.phone")
+    @Mapping(target = "authorAdsCount", source = "ad.user.adsCount")
     ExtendedAd toExtendedAd(Ad ad);
 
-    @Mapping(target = "image", expression = "java(ad.getImage() != null ? \"/image/\" + ad.getImage().getId() : null)")
+    @Mapping(target = "image", expression = "java(ImageUrls.of(ad.getImage()))")
     @Mapping(target = "author", source = "ad.user.id")
     @Mapping(target = "pk", source = "ad.id")
     AdDTO toAdDTO(Ad ad);
 
+    @Mapping(target = "image", expression = "java(ImageUrls.of(ad.getImageId(), ad.getImageHash()))")
+    @Mapping(target = "author", source = "authorId")
+    @Mapping(target = "pk", source = "id")
+    AdDTO toAdDTO(AdCardView ad);
+
+    List<AdDTO> toAdDTOs(List<AdCardView> ads);
+
+    @Mapping(target = "image", expression = "java(ImageUrls.of(ad.getImageId(), ad.getImageHash()))")
+    @Mapping(target = "pk", source = "id")
+    @Mapping(target = "email", source = "authorEmail")
+    @Mapping(target = "phone", source = "authorPhone")
+    ExtendedAd toExtendedAd(AdDetailsView ad);
+
     default Ads toAds(List<Ad> ads) {
         List<AdDTO> adDTOs = ads.stream()
                 .map(this::toAdDTO)
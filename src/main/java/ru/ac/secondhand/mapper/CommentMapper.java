@@ -7,6 +7,8 @@ import ru.ac.secondhand.dto.comment.Comments;
 import ru.ac.secondhand.dto.comment.CreateOrUpdateComment;
 import ru.ac.secondhand.entity.Comment;
 import ru.ac.secondhand.entity.User;
+import ru.ac.secondhand.repository.projection.CommentView;
+import ru.ac.secondhand.utils.ImageUrls;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
@@ -29,7 +31,7 @@ import java.util.stream.Collectors;
  *
  * @author x3imal
  */
-@Mapper(componentModel = "spring")
+@Mapper(componentModel = "spring", imports = ImageUrls.class)
 public interface CommentMapper {
 
     default Comments toComments(List<Comment> comments) {
@@ -49,19 +51,26 @@ public interface CommentMapper {
     @Mapping(target = "pk", source = "comment.id")
     CommentDTO toCommentDTO(Comment comment);
 
+    @Mapping(target = "author", source = "authorId")
+    @Mapping(target = "authorImage", expression = "java(ImageUrls.of(comment.getAuthorImageId(), comment.getAuthorImageHash()))")
+    @Mapping(target = "createdAt", expression = "java(mapLocalDateTimeToLong(comment.getCreatedAt()))")
+    @Mapping(target = "pk", source = "id")
+    CommentDTO toCommentDTO(CommentView comment);
+
+    List<CommentDTO> toCommentDTOs(List<CommentView> comments);
+
     default Long mapLocalDateTimeToLong(LocalDateTime dateTime) {
         return dateTime == null ? null : dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
     }
 
     default String mapUserImageToUrl(User user) {
-        if (user != null && user.getImage() != null) {
-            return "/image/" + user.getImage().getId();
-        }
-        return null;
+        return user != null ? ImageUrls.of(user.getImage()) : null;
     }
 
     @Mapping(target = "id", ignore = true)
     @Mapping(target = "createdAt", ignore = true)
+    @Mapping(target = "version", ignore = true)
+    @Mapping(target = "updatedAt", ignore = true)
     @Mapping(target = "user", ignore = true)
     @Mapping(target = "ad", ignore = true)
     Comment toComment(CreateOrUpdateComment comment);
@@ -7,6 +7,8 @@ import ru.ac.secondhand.dto.user.RegisterDTO;
 import ru.ac.secondhand.dto.user.UpdateUserDTO;
 import ru.ac.secondhand.dto.user.UserDTO;
 import ru.ac.secondhand.entity.User;
+import ru.ac.secondhand.utils.ImageUrls;
+
 /**
  * Интерфейс-маппер для преобразования между объектами пользователь и их DTO представлениями.
  * <p>
@@ -22,17 +24,20 @@ import ru.ac.secondhand.entity.User;
  *
  * @author x3imal
  */
-@Mapper(componentModel = "spring")
+@Mapper(componentModel = "spring", imports = ImageUrls.class)
 public interface UserMapper {
 
     @Mapping(target = "id", ignore = true)
     @Mapping(target = "image", ignore = true)
     @Mapping(target = "ads", ignore = true)
     @Mapping(target = "comments", ignore = true)
+    @Mapping(target = "version", ignore = true)
+    @Mapping(target = "updatedAt", ignore = true)
+    @Mapping(target = "adsCount", ignore = true)
     User registerDTOToUser(RegisterDTO registerDTO);
 
     @Mapping(target = "email", source = "user.username")
-    @Mapping(target = "image", expression = "java(user.getImage() != null ? \"/image/\" + user.getImage().getId() : null)")
+    @Mapping(target = "image", expression = "java(ImageUrls.of(user.getImage()))")
     UserDTO toUserDTO(User user);
 
     @Mapping(target = "id", ignore = true)
@@ -42,5 +47,8 @@ public interface UserMapper {
     @Mapping(target = "role", ignore = true)
     @Mapping(target = "ads", ignore = true)
     @Mapping(target = "comments", ignore = true)
+    @Mapping(target = "version", ignore = true)
+    @Mapping(target = "updatedAt", ignore = true)
+    @Mapping(target = "adsCount", ignore = true)
     void updateUserDTOToUser(UpdateUserDTO updateUserDTO, @MappingTarget User user);
 }
@@ -0,0 +1,25 @@
+package ru.ac.secondhand.repository;
+
+import lombok.Builder;
+import lombok.Value;
+import ru.ac.secondhand.dto.ad.AdSort;
+
+import java.time.LocalDateTime;
+
+/**
+ * Параметры запроса страницы ленты: фильтр по цене, порядок сортировки и ключ последней записи
+ * предыдущей страницы. Пустые поля не ограничивают выборку.
+ */
+@Value
+@Builder
+public class AdFeedQuery {
+
+    Integer minPrice;
+    Integer maxPrice;
+    @Builder.Default
+    AdSort sort = AdSort.ID;
+    Integer afterId;
+    Integer afterPrice;
+    LocalDateTime afterCreatedAt;
+    int size;
+}
@@ -0,0 +1,22 @@
+package ru.ac.secondhand.repository;
+
+import org.springframework.data.domain.Slice;
+import ru.ac.secondhand.repository.projection.AdCardView;
+
+/**
+ * Выборка страниц ленты объявлений с фильтрами, запрос которой собирается динамически.
+ */
+public interface AdFeedRepository {
+
+    /**
+     * Страница карточек ленты по ключу (keyset pagination).
+     * <p>
+     * В запрос попадают только заданные условия, поэтому для каждой комбинации фильтров
+     * планировщик видит простой запрос и использует индекс {@code (price, id)} или первичный ключ.
+     * </p>
+     *
+     * @param query параметры выборки
+     * @return страница карточек; {@code hasNext()} показывает, есть ли следующая страница
+     */
+    Slice<AdCardView> findFeed(AdFeedQuery query);
+}
@@ -0,0 +1,113 @@
+package ru.ac.secondhand.repository;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+import ru.ac.secondhand.dto.ad.AdSort;
+import ru.ac.secondhand.repository.projection.AdCardView;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.TupleElement;
+import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Реализация {@link AdFeedRepository} на JPQL.
+ * <p>
+ * Условие продолжения после ключа записано как {@code price >= :price and (price > :price or id > :id)}:
+ * первая часть задаёт диапазон сканирования индекса {@code (price, id)}, вторая отсекает
+ * уже отданные записи с той же ценой. Лента «сначала новые» продолжается так же по паре
+ * {@code (createdAt, id)} и читается индексом {@code (created_at DESC, id DESC)} без шага сортировки.
+ * Строки результата превращаются в проекции {@code AdCardView}.
+ * </p>
+ */
+public class AdFeedRepositoryImpl implements AdFeedRepository {
+
+    private static final ProjectionFactory PROJECTION_FACTORY = new SpelAwareProxyProjectionFactory();
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Slice<AdCardView> findFeed(AdFeedQuery query) {
+        Map<String, Object> parameters = new HashMap<>();
+        StringJoiner where = new StringJoiner(" and ", " where ", "").setEmptyValue("");
+        if (query.getSort() == AdSort.PRICE_ASC || query.getSort() == AdSort.PRICE_DESC) {
+            where.add("a.price is not null");
+        }
+        if (query.getMinPrice() != null) {
+            where.add("a.price >= :minPrice");
+            parameters.put("minPrice", query.getMinPrice());
+        }
+        if (query.getMaxPrice() != null) {
+            where.add("a.price <= :maxPrice");
+            parameters.put("maxPrice", query.getMaxPrice());
+        }
+        if (query.getAfterId() != null) {
+            where.add(afterCondition(query.getSort()));
+            parameters.put("afterId", query.getAfterId());
+            if (query.getSort() == AdSort.NEWEST) {
+                parameters.put("afterCreatedAt", query.getAfterCreatedAt());
+            } else if (query.getSort() != AdSort.ID) {
+                parameters.put("afterPrice", query.getAfterPrice());
+            }
+        }
+
+        String jpql = AdRepository.CARD_SELECT + where + " order by " + orderBy(query.getSort());
+        TypedQuery<Tuple> typedQuery = entityManager.createQuery(jpql, Tuple.class)
+                .setMaxResults(query.getSize() + 1);
+        parameters.forEach(typedQuery::setParameter);
+
+        List<AdCardView> content = new ArrayList<>(query.getSize() + 1);
+        for (Tuple tuple : typedQuery.getResultList()) {
+            content.add(toView(tuple));
+        }
+        boolean hasNext = content.size() > query.getSize();
+        if (hasNext) {
+            content.remove(content.size() - 1);
+        }
+        return new SliceImpl<>(content, PageRequest.of(0, query.getSize()), hasNext);
+    }
+
+    private static String afterCondition(AdSort sort) {
+        switch (sort) {
+            case PRICE_ASC:
+                return "a.price >= :afterPrice and (a.price > :afterPrice or a.id > :afterId)";
+            case PRICE_DESC:
+                return "a.price <= :afterPrice and (a.price < :afterPrice or a.id < :afterId)";
+            case NEWEST:
+                return "a.createdAt <= :afterCreatedAt and (a.createdAt < :afterCreatedAt or a.id < :afterId)";
+            default:
+                return "a.id > :afterId";
+        }
+    }
+
+    private static String orderBy(AdSort sort) {
+        switch (sort) {
+            case PRICE_ASC:
+                return "a.price, a.id";
+            case PRICE_DESC:
+                return "a.price desc, a.id desc";
+            case NEWEST:
+                return "a.createdAt desc, a.id desc";
+            default:
+                return "a.id";
+        }
+    }
+
+    private static AdCardView toView(Tuple tuple) {
+        Map<String, Object> values = new HashMap<>();
+        for (TupleElement<?> element : tuple.getElements()) {
+            values.put(element.getAlias(), tuple.get(element));
+        }
+        return PROJECTION_FACTORY.createProjection(AdCardView.class, values);
+    }
+}
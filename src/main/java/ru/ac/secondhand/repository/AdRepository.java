@@ -1,11 +1,172 @@
 package ru.ac.secondhand.repository;
 
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import ru.ac.secondhand.entity.Ad;
+import ru.ac.secondhand.repository.projection.AdCardView;
+import ru.ac.secondhand.repository.projection.AdDetailsView;
+import ru.ac.secondhand.repository.projection.AdSearchView;
+import ru.ac.secondhand.repository.projection.AdVersionView;
+import ru.ac.secondhand.repository.projection.PriceBucketView;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface AdRepository extends JpaRepository<Ad, Integer> {
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
-    List<Ad> findAdsByUserId(Integer id);
+public interface AdRepository extends JpaRepository<Ad, Integer>, AdFeedRepository {
+
+    int STREAM_FETCH_SIZE = 500;
+
+    String CARD_SELECT = "select a.id as id, a.title as title, a.price as price, "
+            + "a.user.id as authorId, i.id as imageId, i.hash as imageHash, a.createdAt as createdAt, "
+            + "a.commentsCount as commentsCount from Ad a left join a.image i ";
+
+    String DETAILS_SELECT = "select a.id as id, a.title as title, a.price as price, a.description as description, "
+            + "i.id as imageId, i.hash as imageHash, a.commentsCount as commentsCount, u.id as authorId, "
+            + "u.firstName as authorFirstName, u.lastName as authorLastName, u.username as authorEmail, "
+            + "u.phone as authorPhone, u.adsCount as authorAdsCount "
+            + "from Ad a join a.user u left join a.image i ";
+
+    /**
+     * Карточки объявлений пользователя в заданном порядке.
+     * Порядок «сначала новые» читается индексом {@code (user_id, created_at DESC, id DESC)}.
+     */
+    @Query(CARD_SELECT + "where a.user.id = :userId")
+    List<AdCardView> findCardsByUserId(@Param("userId") Integer userId, Sort sort);
+
+    /**
+     * Все карточки объявлений в виде однонаправленного потока, читаемого серверным курсором порциями
+     * по {@code STREAM_FETCH_SIZE} строк. Поток должен потребляться внутри транзакции и быть закрыт.
+     */
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query(CARD_SELECT + "order by a.id")
+    Stream<AdCardView> streamFeed();
+
+    /**
+     * Все объявления с описанием в виде однонаправленного потока для построения поискового индекса.
+     */
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query("select a.id as id, a.title as title, a.price as price, a.description as description, "
+            + "a.user.id as authorId, i.id as imageId, i.hash as imageHash, a.createdAt as createdAt, "
+            + "a.commentsCount as commentsCount from Ad a left join a.image i order by a.id")
+    Stream<AdSearchView> streamSearchDocuments();
+
+    /**
+     * Данные детальной страницы объявления вместе с контактами автора одним запросом.
+     */
+    @Query(DETAILS_SELECT + "where a.id = :id")
+    Optional<AdDetailsView> findDetailsById(@Param("id") Integer id);
+
+    /**
+     * Данные детальных страниц нескольких объявлений одним запросом {@code IN} в произвольном порядке.
+     * Отсутствующие идентификаторы пропускаются.
+     */
+    @Query(DETAILS_SELECT + "where a.id in :ids")
+    List<AdDetailsView> findDetailsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Версия детальной страницы объявления: сумма версий объявления и его автора,
+     * так как страница показывает контакты автора, счётчики комментариев объявления и объявлений автора
+     * и более позднее из времён их изменения.
+     * Версии только растут, поэтому сумма меняется при любом изменении объявления или автора,
+     * а счётчики, которые меняются без увеличения версий, выбираются отдельно.
+     */
+    @Query("select a.version + u.version as version, "
+            + "case when a.updatedAt > u.updatedAt then a.updatedAt else u.updatedAt end as updatedAt, "
+            + "a.commentsCount as commentsCount, u.adsCount as authorAdsCount "
+            + "from Ad a join a.user u where a.id = :id")
+    Optional<AdVersionView> findVersionById(@Param("id") Integer id);
+
+    /**
+     * Атомарно изменяет счётчик комментариев объявления на {@code delta} одним запросом {@code UPDATE}
+     * без чтения строки и без увеличения версии объявления. Время изменения обновляется,
+     * так как счётчик показывается на детальной странице.
+     *
+     * @return количество изменённых строк: 0, если объявления нет
+     */
+    @Modifying
+    @Query("update Ad a set a.commentsCount = a.commentsCount + :delta, a.updatedAt = current_timestamp "
+            + "where a.id = :id")
+    int addCommentsCount(@Param("id") Integer id, @Param("delta") int delta);
+
+    /**
+     * Текущий счётчик комментариев объявления; пусто, если объявления нет.
+     */
+    @Query("select a.commentsCount from Ad a where a.id = :id")
+    Optional<Integer> findCommentsCountById(@Param("id") Integer id);
+
+    /**
+     * Полнотекстовый поиск по заголовку и описанию с русской морфологией.
+     * <p>
+     * Запрос разбирается функцией {@code websearch_to_tsquery}, совпадения ищутся по GIN-индексу
+     * на генерируемом столбце {@code search_vector}. Результаты упорядочены по релевантности
+     * ({@code ts_rank}, заголовок весит больше описания), при равной релевантности — по идентификатору.
+     */
+    @Query(value = "select a.id as \"id\", a.title as \"title\", a.price as \"price\", "
+            + "a.user_id as \"authorId\", a.image_id as \"imageId\", i.hash as \"imageHash\", "
+            + "a.created_at as \"createdAt\", a.comments_count as \"commentsCount\" "
+            + "from ads a left join image i on i.id = a.image_id, websearch_to_tsquery('russian', :query) q "
+            + "where a.search_vector @@ q "
+            + "order by ts_rank(a.search_vector, q) desc, a.id "
+            + "limit :limit offset :offset",
+            nativeQuery = true)
+    List<AdCardView> search(@Param("query") String query,
+                            @Param("offset") int offset,
+                            @Param("limit") int limit);
+
+    /**
+     * Гистограмма цен одним агрегирующим запросом.
+     * <p>
+     * Диапазон от минимальной до максимальной цены делится на {@code buckets} интервалов одинаковой
+     * целой ширины; границы берутся из индекса {@code (price, id)}. Возвращаются только непустые интервалы.
+     * </p>
+     */
+    @Query(value = "with bounds as ("
+            + "select min(price) as low, (max(price) - min(price)) / :buckets + 1 as width "
+            + "from ads where price is not null) "
+            + "select (a.price - b.low) / b.width as \"bucket\", b.low as \"low\", b.width as \"width\", "
+            + "count(*) as \"count\" "
+            + "from ads a cross join bounds b where a.price is not null "
+            + "group by (a.price - b.low) / b.width, b.low, b.width order by 1",
+            nativeQuery = true)
+    List<PriceBucketView> findPriceHistogram(@Param("buckets") int buckets);
+
+    /**
+     * Устанавливает порог сходства слов {@code pg_trgm} до конца текущей транзакции.
+     */
+    @Query(value = "select set_config('pg_trgm.word_similarity_threshold', :threshold, true)", nativeQuery = true)
+    String setWordSimilarityThreshold(@Param("threshold") String threshold);
+
+    /**
+     * Нечёткий поиск по заголовку: объявления, в заголовке которых есть фрагмент, похожий на запрос
+     * по триграммам не меньше порога {@code pg_trgm.word_similarity_threshold}.
+     * Оператор {@code <%} выполняется по GIN-индексу триграмм заголовка; результаты упорядочены
+     * по убыванию сходства, при равном сходстве — по идентификатору.
+     */
+    @Query(value = "select a.id as \"id\", a.title as \"title\", a.price as \"price\", "
+            + "a.user_id as \"authorId\", a.image_id as \"imageId\", i.hash as \"imageHash\", "
+            + "a.created_at as \"createdAt\", a.comments_count as \"commentsCount\" "
+            + "from ads a left join image i on i.id = a.image_id "
+            + "where :query <% a.title "
+            + "order by word_similarity(:query, a.title) desc, a.id "
+            + "limit :limit offset :offset",
+            nativeQuery = true)
+    List<AdCardView> fuzzySearch(@Param("query") String query,
+                                 @Param("offset") int offset,
+                                 @Param("limit") int limit);
 }
@@ -1,17 +1,55 @@
 package ru.ac.secondhand.repository;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import ru.ac.secondhand.entity.Comment;
+import ru.ac.secondhand.repository.projection.CommentView;
+import ru.ac.secondhand.repository.projection.CommentsVersionView;
 
-import java.util.List;
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 
 public interface CommentRepository extends JpaRepository<Comment, Integer> {
 
-    List<Comment> findByAdId(Integer adId);
+    String VIEW_SELECT = "select c.id as id, c.text as text, c.createdAt as createdAt, u.id as authorId, "
+            + "u.firstName as authorFirstName, i.id as authorImageId, i.hash as authorImageHash "
+            + "from Comment c left join c.user u left join u.image i ";
+
+    /**
+     * Первая страница комментариев объявления вместе с данными авторов, сначала новые.
+     * Читается индексом {@code (ad_id, created_at DESC, id DESC)} без шага сортировки.
+     */
+    @Query(VIEW_SELECT + "where c.ad.id = :adId order by c.createdAt desc, c.id desc")
+    Slice<CommentView> findPageByAdId(@Param("adId") Integer adId, Pageable pageable);
+
+    /**
+     * Страница комментариев объявления, следующая за комментарием с ключом {@code (createdAt, id)}.
+     */
+    @Query(VIEW_SELECT + "where c.ad.id = :adId "
+            + "and c.createdAt <= :createdAt and (c.createdAt < :createdAt or c.id < :id) "
+            + "order by c.createdAt desc, c.id desc")
+    Slice<CommentView> findPageByAdIdAfter(@Param("adId") Integer adId,
+                                           @Param("createdAt") LocalDateTime createdAt,
+                                           @Param("id") Integer id,
+                                           Pageable pageable);
+
+    /**
+     * Комментарий вместе с текущими данными автора.
+     */
+    @Query(VIEW_SELECT + "where c.id = :id")
+    Optional<CommentView> findViewById(@Param("id") Integer id);
 
     Optional<Comment> findByAdIdAndId(Integer adId, Integer commentId);
 
+    /**
+     * Отпечаток списка комментариев объявления; пусто, если объявления нет.
+     */
+    @Query("select count(c.id) as count, max(c.id) as lastId, coalesce(sum(c.version + u.version), 0) as version "
+            + "from Ad a left join a.comments c left join c.user u where a.id = :adId group by a.id")
+    Optional<CommentsVersionView> findCommentsVersionByAdId(@Param("adId") Integer adId);
 
 }
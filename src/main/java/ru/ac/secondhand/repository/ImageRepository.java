@@ -1,7 +1,87 @@
 package ru.ac.secondhand.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import ru.ac.secondhand.entity.Image;
 
+import java.util.List;
+import java.util.Optional;
+
 public interface ImageRepository extends JpaRepository<Image, Integer> {
+
+    /**
+     * Изображение с заданным хэшем содержимого. Читается индексом по {@code hash}.
+     */
+    Optional<Image> findFirstByHashOrderByIdAsc(String hash);
+
+    boolean existsByImagePath(String imagePath);
+
+    /**
+     * Блокирует хэш содержимого до конца текущей транзакции. Загрузка берёт блокировку до перемещения
+     * файла в хранилище, а удаление изображения — до проверки, что файл больше не используется,
+     * и удерживает её до удаления файла: файл, только что помещённый одинаковой загрузкой, не удаляется.
+     * Блокировка действует между узлами (advisory lock PostgreSQL); ключ — первые 64 бита хэша.
+     *
+     * @param hash SHA-256 содержимого в шестнадцатеричном виде
+     */
+    default void lockHash(String hash) {
+        lockKey(Long.parseUnsignedLong(hash.substring(0, 16), 16));
+    }
+
+    // pg_advisory_xact_lock возвращает void, который Hibernate не читает, поэтому выбирается количество строк
+    @Query(value = "select count(*) from (select pg_advisory_xact_lock(:key)) l", nativeQuery = true)
+    long lockKey(@Param("key") long key);
+
+    /**
+     * Атомарно изменяет счётчик ссылок изображения на {@code delta} одним запросом {@code UPDATE}
+     * без чтения строки.
+     *
+     * @return количество изменённых строк: 0, если изображения нет
+     */
+    @Modifying
+    @Query("update Image i set i.refCount = i.refCount + :delta where i.id = :id")
+    int addReferences(@Param("id") Integer id, @Param("delta") int delta);
+
+    /**
+     * Удаляет изображение, только если на него не осталось ссылок. Условие проверяется тем же запросом,
+     * поэтому изображение, на которое успела сослаться новая загрузка, не удаляется.
+     *
+     * @return количество удалённых строк
+     */
+    @Modifying
+    @Query("delete from Image i where i.id = :id and i.refCount <= 0")
+    int deleteUnreferenced(@Param("id") Integer id);
+
+    /**
+     * Сохраняет вычисленный хэш содержимого, если он ещё не задан. Остальные поля строки не изменяются,
+     * поэтому путь, заменённый миграцией после чтения изображения, не перезаписывается прочитанным.
+     * Выполняется в собственной транзакции: вызывается вне транзакции при отдаче файла.
+     *
+     * @return количество изменённых строк: 0, если хэш уже сохранён
+     */
+    @Transactional
+    @Modifying
+    @Query("update Image i set i.hash = :hash where i.id = :id and i.hash is null")
+    int saveHashIfMissing(@Param("id") Integer id, @Param("hash") String hash);
+
+    /**
+     * Изображения с абсолютным путём файла, сохранённые до появления хранилища {@code ImageStore},
+     * с идентификатором больше {@code afterId} по возрастанию идентификатора.
+     */
+    @Query("select i from Image i where i.id > :afterId and i.imagePath like '/%' order by i.id")
+    List<Image> findLegacyAfter(@Param("afterId") Integer afterId, Pageable pageable);
+
+    /**
+     * Заменяет путь файла изображения, если он не изменился с момента чтения, и сохраняет хэш содержимого.
+     *
+     * @return количество изменённых строк: 0, если путь уже изменён
+     */
+    @Modifying
+    @Query("update Image i set i.imagePath = :newPath, i.hash = :hash where i.id = :id and i.imagePath = :oldPath")
+    int movePath(@Param("id") Integer id, @Param("oldPath") String oldPath, @Param("newPath") String newPath,
+                 @Param("hash") String hash);
 }
@@ -1,12 +1,35 @@
 package ru.ac.secondhand.repository;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import ru.ac.secondhand.entity.User;
+import ru.ac.secondhand.repository.projection.VersionView;
 
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Integer> {
 
+    /**
+     * Пользователь по логину вместе с аватаром, хэш которого входит в адрес аватара в ответах.
+     */
+    @EntityGraph(attributePaths = "image")
     Optional<User> findByUsername(String username);
 
+    @Query("select u.version as version, u.updatedAt as updatedAt from User u where u.username = :username")
+    Optional<VersionView> findVersionByUsername(@Param("username") String username);
+
+    /**
+     * Атомарно изменяет счётчик объявлений пользователя на {@code delta} одним запросом {@code UPDATE}
+     * без чтения строки и без увеличения версии пользователя. Время изменения обновляется,
+     * так как счётчик показывается на детальных страницах его объявлений.
+     *
+     * @return количество изменённых строк: 0, если пользователя нет
+     */
+    @Modifying
+    @Query("update User u set u.adsCount = u.adsCount + :delta, u.updatedAt = current_timestamp where u.id = :id")
+    int addAdsCount(@Param("id") Integer id, @Param("delta") int delta);
+
 }
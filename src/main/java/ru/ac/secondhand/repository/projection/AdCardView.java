@@ -0,0 +1,29 @@
+package ru.ac.secondhand.repository.projection;
+
+import java.time.LocalDateTime;
+
+/**
+ * Проекция объявления для карточки в списках.
+ * <p>
+ * Содержит только поля, необходимые для {@code AdDTO}, и заполняется напрямую из одного SQL-запроса,
+ * без загрузки сущности {@code Ad} в контекст персистентности.
+ * </p>
+ */
+public interface AdCardView {
+
+    Integer getId();
+
+    String getTitle();
+
+    Integer getPrice();
+
+    Integer getAuthorId();
+
+    Integer getImageId();
+
+    String getImageHash();
+
+    LocalDateTime getCreatedAt();
+
+    Integer getCommentsCount();
+}
@@ -0,0 +1,23 @@
+package ru.ac.secondhand.repository.projection;
+
+/**
+ * Проекция объявления для детальной страницы.
+ * <p>
+ * Дополняет {@link AdCardView} описанием и контактными данными автора, выбранными
+ * соединением с таблицей пользователей в том же запросе.
+ * </p>
+ */
+public interface AdDetailsView extends AdCardView {
+
+    String getDescription();
+
+    String getAuthorFirstName();
+
+    String getAuthorLastName();
+
+    String getAuthorEmail();
+
+    String getAuthorPhone();
+
+    Integer getAuthorAdsCount();
+}
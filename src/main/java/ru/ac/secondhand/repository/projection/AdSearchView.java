@@ -0,0 +1,9 @@
+package ru.ac.secondhand.repository.projection;
+
+/**
+ * Карточка объявления вместе с описанием — всё, что нужно для индексации объявления в поиске.
+ */
+public interface AdSearchView extends AdCardView {
+
+    String getDescription();
+}
@@ -0,0 +1,15 @@
+package ru.ac.secondhand.repository.projection;
+
+/**
+ * Версия детальной страницы объявления.
+ * <p>
+ * Дополняет {@link VersionView} счётчиками комментариев объявления и объявлений автора:
+ * они изменяются атомарными запросами без увеличения версий и поэтому входят в ETag отдельно.
+ * </p>
+ */
+public interface AdVersionView extends VersionView {
+
+    Integer getCommentsCount();
+
+    Integer getAuthorAdsCount();
+}
@@ -0,0 +1,24 @@
+package ru.ac.secondhand.repository.projection;
+
+import java.time.LocalDateTime;
+
+/**
+ * Проекция комментария для списка комментариев объявления: данные комментария
+ * и автора, выбранные соединением с таблицей пользователей в том же запросе.
+ */
+public interface CommentView {
+
+    Integer getId();
+
+    String getText();
+
+    LocalDateTime getCreatedAt();
+
+    Integer getAuthorId();
+
+    String getAuthorFirstName();
+
+    Integer getAuthorImageId();
+
+    String getAuthorImageHash();
+}
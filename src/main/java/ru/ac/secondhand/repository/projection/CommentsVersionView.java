@@ -0,0 +1,18 @@
+package ru.ac.secondhand.repository.projection;
+
+/**
+ * Отпечаток списка комментариев объявления: количество комментариев, наибольший идентификатор
+ * и сумма версий комментариев и их авторов.
+ * <p>
+ * Добавление комментария меняет наибольший идентификатор, удаление — количество, изменение
+ * комментария или профиля автора увеличивает сумму версий.
+ * </p>
+ */
+public interface CommentsVersionView {
+
+    Long getCount();
+
+    Integer getLastId();
+
+    Long getVersion();
+}
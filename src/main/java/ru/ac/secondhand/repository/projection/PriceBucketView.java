@@ -0,0 +1,16 @@
+package ru.ac.secondhand.repository.projection;
+
+/**
+ * Строка агрегата гистограммы цен: номер интервала, начало первого интервала, ширина интервала
+ * и количество объявлений в интервале.
+ */
+public interface PriceBucketView {
+
+    Integer getBucket();
+
+    Integer getLow();
+
+    Integer getWidth();
+
+    Long getCount();
+}
@@ -0,0 +1,13 @@
+package ru.ac.secondhand.repository.projection;
+
+import java.time.LocalDateTime;
+
+/**
+ * Версия записи и время её последнего изменения, выбираемые без загрузки сущности.
+ */
+public interface VersionView {
+
+    Long getVersion();
+
+    LocalDateTime getUpdatedAt();
+}
@@ -0,0 +1,54 @@
+package ru.ac.secondhand.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Согласование начального построения индекса в памяти с событиями изменения объявлений.
+ * <p>
+ * Построение читает объявления потоком, пока приложение уже принимает запросы на запись. Изменение,
+ * применённое к индексу раньше, чем поток дошёл до строки объявления, было бы затёрто прочитанной строкой,
+ * а удалённое объявление вернулось бы в индекс. Поэтому во время построения изменения из событий
+ * откладываются и применяются по порядку сразу после него: строки, прочитанные построением, не новее
+ * изменений, зафиксированных после начала чтения.
+ * </p>
+ */
+public class IndexBuildGuard {
+
+    private List<Runnable> deferred;
+
+    /**
+     * Начинает построение: изменения откладываются до {@link #finishBuild()}.
+     */
+    public synchronized void startBuild() {
+        deferred = new ArrayList<>();
+    }
+
+    /**
+     * Завершает построение и применяет отложенные изменения. Новые изменения ждут, пока они не применены.
+     */
+    public synchronized void finishBuild() {
+        if (deferred == null) {
+            return;
+        }
+        for (int i = 0; i < deferred.size(); i++) {
+            deferred.get(i).run();
+        }
+        deferred = null;
+    }
+
+    /**
+     * Применяет изменение индекса из события или откладывает его, если идёт построение.
+     *
+     * @param change изменение индекса
+     */
+    public void apply(Runnable change) {
+        synchronized (this) {
+            if (deferred != null) {
+                deferred.add(change);
+                return;
+            }
+        }
+        change.run();
+    }
+}
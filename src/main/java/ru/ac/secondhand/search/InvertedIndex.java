@@ -0,0 +1,283 @@
+package ru.ac.secondhand.search;
+
+import lombok.Value;
+import ru.ac.secondhand.dto.ad.AdDTO;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * Инвертированный индекс объявлений в памяти с ранжированием BM25.
+ * <p>
+ * Каждому проиндексированному объявлению выдаётся плотный порядковый номер, по которому хранятся
+ * длина документа и готовый {@code AdDTO} для выдачи. Для каждого терма хранится {@link PostingList}
+ * с возрастающими номерами документов, поэтому поиск обходит списки запроса одновременно
+ * (document-at-a-time) и держит в куче только лучшие {@code offset + limit} результатов, но не больше
+ * количества живых документов.
+ * </p>
+ * <p>
+ * Изменение объявления не переписывает списки вхождений: старый номер помечается удалённым,
+ * а документ индексируется заново под новым номером. Когда удалённых номеров становится больше,
+ * чем живых, индекс уплотняется. Чтение и запись разделены {@code ReadWriteLock}:
+ * поиски выполняются параллельно, изменения — по одному.
+ * </p>
+ */
+public class InvertedIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int TITLE_BOOST = 2;
+    private static final int MIN_COMPACTION_SIZE = 64;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static final Comparator<ScoredDoc> WORST_FIRST = Comparator
+            .comparingDouble(ScoredDoc::getScore)
+            .thenComparing(ScoredDoc::getAdId, Comparator.reverseOrder());
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private final Map<Integer, Integer> ordinals = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    private AdDTO[] docs = new AdDTO[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int nextOrdinal;
+    private long totalLength;
+
+    /**
+     * Индексирует объявление, заменяя ранее проиндексированную версию.
+     *
+     * @param ad          карточка объявления, которая будет возвращаться в результатах поиска
+     * @param description описание объявления
+     */
+    public void put(AdDTO ad, String description) {
+        lock.writeLock().lock();
+        try {
+            removeOrdinal(ordinals.get(ad.getPk()));
+            add(ad, description);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Заменяет карточку проиндексированного объявления, не изменяя его термы.
+     * Используется для полей, которые не участвуют в поиске.
+     *
+     * @param adId   идентификатор объявления
+     * @param update новая карточка по текущей
+     */
+    public void update(Integer adId, UnaryOperator<AdDTO> update) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.get(adId);
+            if (ordinal != null) {
+                docs[ordinal] = update.apply(docs[ordinal]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Удаляет объявление из индекса.
+     *
+     * @param adId идентификатор объявления
+     */
+    public void remove(Integer adId) {
+        lock.writeLock().lock();
+        try {
+            removeOrdinal(ordinals.get(adId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Количество проиндексированных объявлений.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ordinals.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ищет объявления, содержащие хотя бы один терм запроса, в порядке убывания оценки BM25,
+     * при равной оценке — по возрастанию идентификатора.
+     *
+     * @param query  поисковый запрос
+     * @param offset количество пропускаемых результатов
+     * @param limit  максимальное количество возвращаемых результатов
+     * @return карточки найденных объявлений
+     */
+    public List<AdDTO> search(String query, int offset, int limit) {
+        String[] terms = new LinkedHashSet<>(Tokenizer.tokenize(query)).toArray(new String[0]);
+        if (terms.length == 0 || limit <= 0 || offset < 0) {
+            return Collections.emptyList();
+        }
+        lock.readLock().lock();
+        try {
+            List<ScoredDoc> top = topDocs(terms, (int) Math.min((long) offset + limit, Integer.MAX_VALUE));
+            List<AdDTO> results = new ArrayList<>(Math.max(0, top.size() - offset));
+            for (int i = offset; i < top.size(); i++) {
+                results.add(docs[top.get(i).getOrdinal()]);
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<ScoredDoc> topDocs(String[] terms, int k) {
+        int live = ordinals.size();
+        if (live == 0) {
+            return Collections.emptyList();
+        }
+        double avgLength = Math.max(1.0, (double) totalLength / live);
+
+        PostingList[] lists = new PostingList[terms.length];
+        double[] idf = new double[terms.length];
+        int[] positions = new int[terms.length];
+        int count = 0;
+        for (String term : terms) {
+            PostingList list = postings.get(term);
+            if (list != null) {
+                double df = list.size();
+                idf[count] = Math.log(1 + (live - df + 0.5) / (df + 0.5));
+                lists[count++] = list;
+            }
+        }
+
+        PriorityQueue<ScoredDoc> heap = new PriorityQueue<>(Math.min(k, live) + 1, WORST_FIRST);
+        while (true) {
+            int doc = Integer.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                if (positions[i] < lists[i].size()) {
+                    doc = Math.min(doc, lists[i].doc(positions[i]));
+                }
+            }
+            if (doc == Integer.MAX_VALUE) {
+                break;
+            }
+            double score = 0;
+            double norm = K1 * (1 - B + B * lengths[doc] / avgLength);
+            for (int i = 0; i < count; i++) {
+                if (positions[i] < lists[i].size() && lists[i].doc(positions[i]) == doc) {
+                    int tf = lists[i].freq(positions[i]);
+                    score += idf[i] * tf * (K1 + 1) / (tf + norm);
+                    positions[i]++;
+                }
+            }
+            if (deleted.get(doc)) {
+                continue;
+            }
+            ScoredDoc candidate = new ScoredDoc(doc, docs[doc].getPk(), score);
+            if (heap.size() < k) {
+                heap.add(candidate);
+            } else if (WORST_FIRST.compare(candidate, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(candidate);
+            }
+        }
+
+        List<ScoredDoc> top = new ArrayList<>(heap);
+        top.sort(WORST_FIRST.reversed());
+        return top;
+    }
+
+    private void add(AdDTO ad, String description) {
+        List<String> titleTerms = Tokenizer.tokenize(ad.getTitle());
+        List<String> descriptionTerms = Tokenizer.tokenize(description);
+        Map<String, Integer> freqs = new HashMap<>();
+        for (String term : titleTerms) {
+            freqs.merge(term, TITLE_BOOST, Integer::sum);
+        }
+        for (String term : descriptionTerms) {
+            freqs.merge(term, 1, Integer::sum);
+        }
+
+        int ordinal = nextOrdinal++;
+        if (ordinal == docs.length) {
+            docs = Arrays.copyOf(docs, ordinal * 2);
+            lengths = Arrays.copyOf(lengths, ordinal * 2);
+        }
+        int length = titleTerms.size() + descriptionTerms.size();
+        docs[ordinal] = ad;
+        lengths[ordinal] = length;
+        totalLength += length;
+        ordinals.put(ad.getPk(), ordinal);
+        freqs.forEach((term, freq) -> postings.computeIfAbsent(term, t -> new PostingList()).add(ordinal, freq));
+    }
+
+    private void removeOrdinal(Integer ordinal) {
+        if (ordinal == null) {
+            return;
+        }
+        ordinals.remove(docs[ordinal].getPk());
+        deleted.set(ordinal);
+        docs[ordinal] = null;
+        totalLength -= lengths[ordinal];
+        int tombstones = deleted.cardinality();
+        if (tombstones >= MIN_COMPACTION_SIZE && tombstones > ordinals.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Перенумеровывает живые документы подряд и выбрасывает из списков вхождений удалённые.
+     * Порядок номеров сохраняется, поэтому списки остаются отсортированными.
+     */
+    private void compact() {
+        int[] remap = new int[nextOrdinal];
+        int live = 0;
+        for (int ordinal = 0; ordinal < nextOrdinal; ordinal++) {
+            if (deleted.get(ordinal)) {
+                remap[ordinal] = -1;
+            } else {
+                remap[ordinal] = live;
+                docs[live] = docs[ordinal];
+                lengths[live] = lengths[ordinal];
+                ordinals.put(docs[live].getPk(), live);
+                live++;
+            }
+        }
+        Arrays.fill(docs, live, nextOrdinal, null);
+
+        postings.replaceAll((term, list) -> {
+            PostingList compacted = new PostingList();
+            for (int i = 0; i < list.size(); i++) {
+                int ordinal = remap[list.doc(i)];
+                if (ordinal >= 0) {
+                    compacted.add(ordinal, list.freq(i));
+                }
+            }
+            return compacted;
+        });
+        postings.values().removeIf(list -> list.size() == 0);
+        deleted.clear();
+        nextOrdinal = live;
+    }
+
+    @Value
+    private static class ScoredDoc {
+
+        int ordinal;
+        Integer adId;
+        double score;
+    }
+}
@@ -0,0 +1,44 @@
+package ru.ac.secondhand.search;
+
+import java.util.Arrays;
+
+/**
+ * Список вхождений одного терма: возрастающие порядковые номера документов и частоты терма в них.
+ * <p>
+ * Хранится в двух массивах примитивов, без упаковки в объекты, поэтому занимает 8 байт на вхождение
+ * и последовательно читается при поиске.
+ * </p>
+ */
+final class PostingList {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private int[] docs = new int[INITIAL_CAPACITY];
+    private int[] freqs = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Добавляет вхождение. Номер документа должен быть больше всех уже добавленных.
+     */
+    void add(int doc, int freq) {
+        if (size == docs.length) {
+            docs = Arrays.copyOf(docs, size * 2);
+            freqs = Arrays.copyOf(freqs, size * 2);
+        }
+        docs[size] = doc;
+        freqs[size] = freq;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int doc(int i) {
+        return docs[i];
+    }
+
+    int freq(int i) {
+        return freqs[i];
+    }
+}
@@ -0,0 +1,158 @@
+package ru.ac.secondhand.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Префиксное дерево слов из заголовков объявлений для подсказок при наборе поискового запроса.
+ * <p>
+ * Вес слова — количество объявлений, в заголовке которого оно встречается. Каждый узел дерева хранит
+ * готовый список {@code MAX_SUGGESTIONS} самых популярных слов своего поддерева, поэтому ответ на запрос —
+ * это спуск по символам префикса и копирование списка узла, без обхода поддерева.
+ * </p>
+ * <p>
+ * При изменении веса слова пересчитываются списки только на пути от его узла к корню: список узла
+ * собирается из собственного слова и списков дочерних узлов. Для вычитания старых слов при изменении
+ * заголовка индекс помнит слова каждого объявления.
+ * </p>
+ */
+public class SuggestIndex {
+
+    public static final int MAX_SUGGESTIONS = 10;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Node root = new Node();
+    private final Map<Integer, String[]> adTerms = new HashMap<>();
+
+    /**
+     * Учитывает слова заголовка объявления, заменяя ранее учтённый заголовок.
+     *
+     * @param adId  идентификатор объявления
+     * @param title заголовок объявления
+     */
+    public void put(Integer adId, String title) {
+        String[] terms = new LinkedHashSet<>(Tokenizer.tokenize(title)).toArray(new String[0]);
+        lock.writeLock().lock();
+        try {
+            String[] previous = adTerms.put(adId, terms);
+            if (previous != null) {
+                for (String term : previous) {
+                    add(term, -1);
+                }
+            }
+            for (String term : terms) {
+                add(term, 1);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Перестаёт учитывать слова заголовка объявления.
+     *
+     * @param adId идентификатор объявления
+     */
+    public void remove(Integer adId) {
+        lock.writeLock().lock();
+        try {
+            String[] previous = adTerms.remove(adId);
+            if (previous != null) {
+                for (String term : previous) {
+                    add(term, -1);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Самые популярные слова, начинающиеся с последнего слова запроса.
+     *
+     * @param prefix текст поискового запроса
+     * @param limit  максимальное количество подсказок, не более {@code MAX_SUGGESTIONS}
+     * @return слова по убыванию веса, при равном весе — по алфавиту
+     */
+    public List<String> suggest(String prefix, int limit) {
+        String word = Tokenizer.lastWord(prefix);
+        if (word.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            for (int i = 0; i < word.length() && node != null; i++) {
+                node = node.children.get(word.charAt(i));
+            }
+            if (node == null) {
+                return Collections.emptyList();
+            }
+            List<String> result = new ArrayList<>(Math.min(limit, node.top.length));
+            for (int i = 0; i < node.top.length && i < limit; i++) {
+                result.add(node.top[i].term);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(String term, int delta) {
+        Node[] path = new Node[term.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < term.length(); i++) {
+            path[i + 1] = path[i].children.computeIfAbsent(term.charAt(i), c -> new Node());
+        }
+        Node leaf = path[term.length()];
+        leaf.count += delta;
+        leaf.term = leaf.count > 0 ? term : null;
+
+        for (int i = term.length(); i >= 0; i--) {
+            Node node = path[i];
+            node.recomputeTop();
+            if (i > 0 && node.isEmpty()) {
+                path[i - 1].children.remove(term.charAt(i - 1));
+            }
+        }
+    }
+
+    private static final class Node {
+
+        private static final Node[] EMPTY = new Node[0];
+
+        private final Map<Character, Node> children = new HashMap<>(4);
+        private String term;
+        private int count;
+        private Node[] top = EMPTY;
+
+        boolean isEmpty() {
+            return term == null && children.isEmpty();
+        }
+
+        /**
+         * Собирает лучшие слова поддерева из собственного слова и готовых списков дочерних узлов.
+         */
+        void recomputeTop() {
+            List<Node> candidates = new ArrayList<>();
+            if (term != null) {
+                candidates.add(this);
+            }
+            for (Node child : children.values()) {
+                candidates.addAll(Arrays.asList(child.top));
+            }
+            candidates.sort((a, b) -> a.count != b.count
+                    ? Integer.compare(b.count, a.count)
+                    : a.term.compareTo(b.term));
+            top = candidates.subList(0, Math.min(MAX_SUGGESTIONS, candidates.size())).toArray(EMPTY);
+        }
+    }
+}
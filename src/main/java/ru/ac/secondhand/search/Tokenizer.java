@@ -0,0 +1,69 @@
+package ru.ac.secondhand.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Разбиение текста объявления и поискового запроса на термы.
+ * <p>
+ * Терм — непрерывная последовательность букв и цифр, приведённая к нижнему регистру,
+ * буква «ё» заменяется на «е». Термы из одного символа отбрасываются.
+ * </p>
+ */
+public final class Tokenizer {
+
+    private static final int MIN_TERM_LENGTH = 2;
+
+    private Tokenizer() {
+    }
+
+    /**
+     * Разбивает текст на термы в порядке их появления, с повторами.
+     *
+     * @param text текст или {@code null}
+     * @return список термов
+     */
+    public static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> terms = new ArrayList<>();
+        StringBuilder term = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                term.append(c);
+            } else if (term.length() > 0) {
+                if (term.length() >= MIN_TERM_LENGTH) {
+                    terms.add(normalize(term.toString()));
+                }
+                term.setLength(0);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Приводит последнее слово текста к виду терма, например для дополнения по префиксу.
+     * Если текст заканчивается не буквой и не цифрой, возвращается пустая строка.
+     *
+     * @param text текст или {@code null}
+     * @return нормализованное последнее слово
+     */
+    public static String lastWord(String text) {
+        if (text == null) {
+            return "";
+        }
+        int start = text.length();
+        while (start > 0 && Character.isLetterOrDigit(text.charAt(start - 1))) {
+            start--;
+        }
+        return normalize(text.substring(start));
+    }
+
+    private static String normalize(String word) {
+        return word.toLowerCase(Locale.ROOT).replace('ё', 'е');
+    }
+}
@@ -0,0 +1,41 @@
+package ru.ac.secondhand.service;
+
+import ru.ac.secondhand.dto.ad.AdImportReport;
+import ru.ac.secondhand.dto.ad.CreateOrUpdateAd;
+
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * Сервис массового импорта объявлений текущего пользователя.
+ */
+public interface AdImportService {
+
+    /**
+     * Импортирует объявления из списка.
+     * <p>
+     * Каждая строка проверяется ограничениями {@code CreateOrUpdateAd}; строки, не прошедшие проверку,
+     * отклоняются с описанием ошибки, остальные сохраняются порциями, каждая в своей транзакции.
+     * </p>
+     *
+     * @param ads данные объявлений
+     * @return количество импортированных и отклонённых строк и результат каждой строки
+     * @throws BatchSizeExceededException если строк больше допустимого
+     */
+    AdImportReport importAds(List<CreateOrUpdateAd> ads);
+
+    /**
+     * Импортирует объявления из CSV с заголовком, содержащим столбцы {@code title}, {@code price}
+     * и {@code description} в любом порядке.
+     * <p>
+     * Строки с неверным количеством полей или нечисловой ценой отклоняются так же,
+     * как строки, не прошедшие проверку.
+     * </p>
+     *
+     * @param csv текст CSV
+     * @return количество импортированных и отклонённых строк и результат каждой строки
+     * @throws InvalidCsvException если в заголовке нет нужных столбцов или кавычки не сбалансированы
+     * @throws BatchSizeExceededException если строк больше допустимого
+     */
+    AdImportReport importCsv(Reader csv);
+}
@@ -0,0 +1,31 @@
+package ru.ac.secondhand.service;
+
+import ru.ac.secondhand.dto.ad.AdSearchQuery;
+import ru.ac.secondhand.dto.ad.Ads;
+import ru.ac.secondhand.exception.InvalidCursorException;
+
+/**
+ * Сервис поиска объявлений по тексту заголовка и описания.
+ */
+public interface AdSearchService {
+
+    /**
+     * Ищет объявления по поисковому запросу.
+     * <p>
+     * Результаты упорядочены по релевантности и отдаются постранично: ответ содержит курсор
+     * следующей страницы, который нужно передать вместе с теми же параметрами поиска.
+     * </p>
+     * <p>
+     * В нечётком режиме заголовки сравниваются с запросом по сходству и находятся с опечатками.
+     * Если точный поиск нашёл слишком мало объявлений, сервис может сам перейти в нечёткий режим;
+     * курсор следующей страницы в этом случае продолжает нечёткую выдачу.
+     * </p>
+     *
+     * @param query  параметры поиска
+     * @param cursor курсор из предыдущего ответа или {@code null} для первой страницы
+     * @param size   размер страницы или {@code null} для размера по умолчанию
+     * @return Объект Ads с найденными объявлениями и курсором следующей страницы
+     * @throws InvalidCursorException если курсор повреждён
+     */
+    Ads search(AdSearchQuery query, String cursor, Integer size);
+}
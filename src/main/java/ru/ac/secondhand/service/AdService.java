@@ -1,14 +1,26 @@
 package ru.ac.secondhand.service;
 
+import org.springframework.data.domain.Sort;
 import org.springframework.web.multipart.MultipartFile;
 import ru.ac.secondhand.dto.ad.AdDTO;
+import ru.ac.secondhand.dto.ad.AdFilter;
+import ru.ac.secondhand.dto.ad.AdSort;
 import ru.ac.secondhand.dto.ad.Ads;
 import ru.ac.secondhand.dto.ad.CreateOrUpdateAd;
 import ru.ac.secondhand.dto.ad.ExtendedAd;
+import ru.ac.secondhand.dto.ad.ExtendedAds;
+import ru.ac.secondhand.dto.ad.PriceHistogram;
 import ru.ac.secondhand.entity.Ad;
 import ru.ac.secondhand.exception.AdNotFoundException;
+import ru.ac.secondhand.exception.BatchSizeExceededException;
+import ru.ac.secondhand.exception.InvalidCursorException;
 import ru.ac.secondhand.mapper.AdMapper;
 import ru.ac.secondhand.repository.AdRepository;
+import ru.ac.secondhand.repository.projection.AdDetailsView;
+import ru.ac.secondhand.utils.ResourceVersion;
+
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Сервис для управления объявлениями.
@@ -31,19 +43,50 @@ import ru.ac.secondhand.repository.AdRepository;
 public interface AdService {
 
     /**
-     * Получает список всех объявлений из репозитория.
+     * Получает страницу ленты объявлений.
      * <p>
      * Метод выполняется в контексте транзакции только для чтения, что оптимизирует производительность.
      * </p>
      * <p>
-     * Сначала из репозитория извлекается список всех объявлений. После этого он преобразуется
-     * в формат {@code Ads} с помощью маппера {@code AdMapper}.
+     * Лента выбирается по ключу (keyset pagination): курсор хранит ключ сортировки последнего отданного
+     * объявления, и следующая страница начинается сразу после него. Поэтому стоимость запроса страницы
+     * не зависит от её глубины. Лента может быть ограничена диапазоном цены и упорядочена по цене;
+     * фильтр должен совпадать во всех запросах одной ленты. Результат преобразуется в формат {@code Ads}
+     * с помощью маппера {@code AdMapper} и дополняется курсором следующей страницы.
      * </p>
      *
-     * @return Объект Ads, содержащий список всех объявлений.
+     * @param filter фильтр по цене и порядок сортировки.
+     * @param cursor курсор из предыдущего ответа или {@code null} для первой страницы.
+     * @param size   размер страницы или {@code null} для размера по умолчанию.
+     * @return Объект Ads, содержащий объявления страницы и курсор следующей страницы.
+     * @throws InvalidCursorException если курсор повреждён или выдан для другого порядка сортировки.
      * @see AdMapper
      */
-    Ads getAll();
+    Ads getAll(AdFilter filter, String cursor, Integer size);
+
+    /**
+     * Получает гистограмму цен объявлений: количество объявлений в интервалах цены одинаковой ширины.
+     * <p>
+     * Гистограмма считается одним агрегирующим запросом и кратковременно кэшируется.
+     * </p>
+     *
+     * @param buckets количество интервалов или {@code null} для значения по умолчанию.
+     * @return гистограмма цен.
+     */
+    PriceHistogram getPriceHistogram(Integer buckets);
+
+    /**
+     * Передаёт все объявления в обработчик по одному, не собирая их в память.
+     * <p>
+     * Метод выполняется в транзакции только для чтения и читает объявления однонаправленным потоком
+     * из репозитория проекцией {@code AdCardView}. Каждое объявление преобразуется в {@code AdDTO}
+     * и сразу передаётся в обработчик, поэтому расход памяти не зависит от размера каталога.
+     * </p>
+     *
+     * @param action обработчик, получающий DTO каждого объявления.
+     * @see AdRepository#streamFeed()
+     */
+    void streamAll(Consumer<AdDTO> action);
 
     /**
      * Получает информацию об объявлении по его идентификатору.
@@ -61,10 +104,38 @@ public interface AdService {
      * @param id идентификатор объявления для поиска.
      * @return объект {@code ExtendedAd}, содержащий расширенную информацию об объявлении.
      * @throws AdNotFoundException если объявление с указанным идентификатором не найдено.
-     * @see AdMapper#toExtendedAd(Ad)
+     * @see AdMapper#toExtendedAd(AdDetailsView)
      */
     ExtendedAd getAdInfo(Integer id);
 
+    /**
+     * Получает расширенную информацию о нескольких объявлениях по их идентификаторам.
+     * <p>
+     * Все объявления, которых нет в кэше, выбираются одним запросом {@code IN} вместе с контактами авторов
+     * и преобразуются тем же маппером, что и в {@link #getAdInfo(Integer)}. Повторяющиеся идентификаторы
+     * учитываются один раз. Результаты и ненайденные идентификаторы возвращаются в порядке запроса.
+     * </p>
+     *
+     * @param ids идентификаторы объявлений, не более 100 различных.
+     * @return найденные объявления и ненайденные идентификаторы.
+     * @throws BatchSizeExceededException если запрошено слишком много объявлений.
+     * @see AdRepository#findDetailsByIdIn(java.util.Collection)
+     */
+    ExtendedAds getAdsInfo(List<Integer> ids);
+
+    /**
+     * Получает версию расширенной информации об объявлении для условного GET-запроса.
+     * <p>
+     * Версия выбирается запросом по первичному ключу, без загрузки объявления и без маппинга.
+     * </p>
+     *
+     * @param id идентификатор объявления.
+     * @return ETag и время последнего изменения объявления или его автора.
+     * @throws AdNotFoundException если объявление с указанным идентификатором не найдено.
+     * @see AdRepository#findVersionById(Integer)
+     */
+    ResourceVersion getAdVersion(Integer id);
+
     /**
      * Получает список объявлений, принадлежащих текущему пользователю.
      * <p>
@@ -72,30 +143,32 @@ public interface AdService {
      * операции за счёт сокращения нагрузки на базу данных.
      * </p>
      * <p>
-     * Сначала определяется текущий пользователь с помощью {@code userService.findUser()}.
+     * Сначала из principal берётся идентификатор текущего пользователя с помощью {@code userService.getCurrentUser()}.
      * Затем, используя идентификатор пользователя, из репозитория извлекается список его объявлений.
      * Наконец, этот список преобразуется в формат {@code Ads} с помощью маппера.
      * </p>
      *
+     * @param sort порядок объявлений или {@code null} для порядка по идентификатору.
      * @return Объект Ads, содержащий список объявлений текущего пользователя.
-     * @see UserService#findUser()
-     * @see AdRepository#findAdsByUserId(Integer)
+     * @see UserService#getCurrentUser()
+     * @see AdRepository#findCardsByUserId(Integer, Sort)
      * @see AdMapper
      */
-    Ads getUsersAds();
+    Ads getUsersAds(AdSort sort);
 
     /**
      * Создаёт новое объявление на основе предоставленных данных.
      * <p>
-     * В начале определяется текущий пользователь через {@code userService.findUser()}.
+     * В начале из principal берётся текущий пользователь через {@code userService.getCurrentUser()}.
      * Затем данные объявления из DTO преобразуются в сущность {@code Ad} с помощью маппера.
-     * Пользователь устанавливается для объявления, и оно сохраняется в репозитории.
+     * Пользователь устанавливается для объявления ссылкой по идентификатору, и оно сохраняется в репозитории.
      * На заключительном этапе создается и возвращается DTO нового объявления.
      * </p>
      *
      * @param adDTO DTO для создания объявления.
      * @return DTO созданного объявления.
-     * @see UserService#findUser()
+     * @throws UserNotFoundException если текущий пользователь не найден.
+     * @see UserService#getCurrentUser()
      * @see AdMapper#toAdEntity(CreateOrUpdateAd)
      * @see AdMapper#toAdDTO(Ad)
      */
@@ -0,0 +1,22 @@
+package ru.ac.secondhand.service;
+
+import ru.ac.secondhand.dto.ad.Suggestions;
+
+/**
+ * Сервис подсказок для поисковой строки по словам из заголовков объявлений.
+ */
+public interface AdSuggestService {
+
+    /**
+     * Подбирает слова, дополняющие последнее слово введённого текста.
+     * <p>
+     * Подсказки берутся из индекса в памяти и упорядочены по количеству объявлений,
+     * в заголовках которых встречается слово. База данных при этом не запрашивается.
+     * </p>
+     *
+     * @param prefix введённый текст
+     * @param limit  максимальное количество подсказок или {@code null} для значения по умолчанию
+     * @return подсказки
+     */
+    Suggestions suggest(String prefix, Integer limit);
+}
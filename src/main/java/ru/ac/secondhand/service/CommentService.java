@@ -1,8 +1,10 @@
 package ru.ac.secondhand.service;
 
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import ru.ac.secondhand.dto.comment.CommentDTO;
 import ru.ac.secondhand.dto.comment.Comments;
 import ru.ac.secondhand.dto.comment.CreateOrUpdateComment;
+import ru.ac.secondhand.utils.ResourceVersion;
 
 /**
  * Интерфейс CommentService определяет контракт для сервиса управления комментариями.
@@ -10,11 +12,31 @@ import ru.ac.secondhand.dto.comment.CreateOrUpdateComment;
 public interface CommentService {
 
     /**
-     * Получает все комментарии к конкретному объявлению.
+     * Получает страницу комментариев к конкретному объявлению, сначала новые.
      * @param adId Идентификатор объявления, для которого нужно получить комментарии.
-     * @return Объект Comments, содержащий список комментариев и их количество.
+     * @param cursor Курсор из предыдущего ответа или {@code null} для первой страницы.
+     * @param size Размер страницы или {@code null} для размера по умолчанию.
+     * @return Объект Comments, содержащий комментарии страницы, их количество и курсор следующей страницы.
+     * @throws AdNotFoundException если объявление с указанным идентификатором не найдено.
+     * @throws InvalidCursorException если курсор некорректен.
      */
-    Comments getComments(Integer adId);
+    Comments getComments(Integer adId, String cursor, Integer size);
+
+    /**
+     * Получает версию списка комментариев объявления для условного GET-запроса.
+     * @param adId Идентификатор объявления.
+     * @return ETag списка комментариев.
+     * @throws AdNotFoundException если объявление с указанным идентификатором не найдено.
+     */
+    ResourceVersion getCommentsVersion(Integer adId);
+
+    /**
+     * Подписывает клиента на создание, изменение и удаление комментариев объявления.
+     * @param adId Идентификатор объявления.
+     * @return Соединение Server-Sent Events.
+     * @throws AdNotFoundException если объявление с указанным идентификатором не найдено.
+     */
+    SseEmitter subscribe(Integer adId);
 
     /**
      * Создает новый комментарий к объявлению.
@@ -1,7 +1,9 @@
 package ru.ac.secondhand.service;
 
+import org.springframework.core.io.Resource;
 import org.springframework.web.multipart.MultipartFile;
 import ru.ac.secondhand.entity.Image;
+import ru.ac.secondhand.image.ImageFile;
 
 import java.util.Optional;
 /**
@@ -12,6 +14,7 @@ public interface ImageService {
 
     /**
      * Сохраняет изображение в файловой системе и информацию о нем в базе данных.
+     * Если изображение с таким же содержимым уже сохранено, возвращается оно с увеличенным счётчиком ссылок.
      *
      * @param imageFile Мультипарт-файл с изображением для сохранения
      * @return Объект Image с информацией о сохраненном изображении
@@ -21,18 +24,32 @@ public interface ImageService {
     Image saveImage(MultipartFile imageFile);
 
     /**
-     * Удаляет изображение по его идентификатору, если оно существует в базе данных.
+     * Освобождает ссылку на изображение по его идентификатору. Изображение и его файл удаляются
+     * после фиксации транзакции, когда на них не остаётся ссылок.
      *
      * @param imageId Идентификатор изображения, которое нужно удалить
      */
     void deleteImage(Integer imageId);
 
     /**
-     * Получает байтовое представление изображения по его идентификатору.
+     * Получает файл изображения по его идентификатору. Содержимое файла не читается:
+     * его передаёт клиенту контроллер.
      *
      * @param imageId Идентификатор изображения, которое нужно получить
-     * @return Байтовое представление изображения
-     * @throws ImageNotFoundException Если изображение с заданным идентификатором не найдено
+     * @return Файл изображения
+     * @throws ImageNotFoundException Если изображение с заданным идентификатором не найдено или его файл отсутствует
      */
-    byte[] getImage(Integer imagerId);
+    Resource getImage(Integer imageId);
+
+    /**
+     * Файл изображения для ответа: оригинал или уменьшенная копия ближайшей не меньшей ширины.
+     * Пока копия не построена, её построение ставится в очередь, а отдаётся оригинал.
+     * Небольшие файлы отдаются из кэша содержимого в памяти.
+     *
+     * @param imageId Идентификатор изображения
+     * @param width   Запрошенная ширина или {@code null} для оригинала
+     * @return Выбранный файл с хэшем оригинала
+     * @throws ImageNotFoundException Если изображение с заданным идентификатором не найдено или его файл отсутствует
+     */
+    ImageFile getImageFile(Integer imageId, Integer width);
 }
@@ -5,6 +5,8 @@ import ru.ac.secondhand.dto.user.NewPassword;
 import ru.ac.secondhand.dto.user.UserDTO;
 import ru.ac.secondhand.dto.user.UpdateUserDTO;
 import ru.ac.secondhand.entity.User;
+import ru.ac.secondhand.utils.ResourceVersion;
+import ru.ac.secondhand.utils.SecurityUser;
 
 /**
  * Сервис для операций, связанных с пользователем.
@@ -22,6 +24,15 @@ public interface UserService {
      */
     User findUser();
 
+    /**
+     * Возвращает principal текущего пользователя с его идентификатором, не обращаясь к базе данных.
+     * Если principal выдан не {@code UserDetailsServiceImpl}, пользователь читается по логину.
+     *
+     * @return SecurityUser текущий пользователь.
+     * @throws UserNotFoundException если пользователь не найден.
+     */
+    SecurityUser getCurrentUser();
+
     /**
      * Устанавливает новый пароль для текущего пользователя.
      *
@@ -37,6 +48,14 @@ public interface UserService {
      */
     UserDTO getUserData();
 
+    /**
+     * Извлекает версию данных текущего пользователя для условного GET-запроса, не загружая пользователя.
+     *
+     * @return ResourceVersion ETag и время последнего изменения пользователя.
+     * @throws UserNotFoundException если пользователь не найден.
+     */
+    ResourceVersion getUserDataVersion();
+
     /**
      * Обновляет данные текущего пользователя на основе предоставленного DTO.
      *
@@ -0,0 +1,200 @@
+package ru.ac.secondhand.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.ac.secondhand.dto.ad.AdImportReport;
+import ru.ac.secondhand.dto.ad.AdImportResult;
+import ru.ac.secondhand.dto.ad.CreateOrUpdateAd;
+import ru.ac.secondhand.entity.Ad;
+import ru.ac.secondhand.entity.User;
+import ru.ac.secondhand.event.AdSavedEvent;
+import ru.ac.secondhand.event.UserUpdatedEvent;
+import ru.ac.secondhand.exception.BatchSizeExceededException;
+import ru.ac.secondhand.exception.InvalidCsvException;
+import ru.ac.secondhand.exception.UserNotFoundException;
+import ru.ac.secondhand.mapper.AdMapper;
+import ru.ac.secondhand.repository.AdRepository;
+import ru.ac.secondhand.repository.UserRepository;
+import ru.ac.secondhand.service.AdImportService;
+import ru.ac.secondhand.service.UserService;
+import ru.ac.secondhand.utils.CsvReader;
+import ru.ac.secondhand.utils.MethodLog;
+import ru.ac.secondhand.utils.SecurityUser;
+
+import javax.persistence.EntityManager;
+import javax.validation.Validator;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Массовый импорт объявлений пакетными вставками JDBC.
+ * <p>
+ * Строки, прошедшие проверку, сохраняются порциями по {@code secondhand.import.chunk-size}: каждая порция
+ * вставляется в отдельной транзакции, поэтому ошибка базы данных отклоняет только строки своей порции,
+ * а уже зафиксированные порции остаются. Идентификаторы объявлений выдаются последовательностью блоками,
+ * и вставки порции отправляются в базу пакетами {@code hibernate.jdbc.batch_size}. Автор задаётся
+ * ссылкой из principal, а его счётчик объявлений увеличивается одним запросом на порцию. После порции
+ * контекст персистентности очищается, чтобы при открытом на весь запрос {@code EntityManager}
+ * сохранённые сущности не накапливались в памяти.
+ * </p>
+ * <p>
+ * Количество строк ограничено {@code secondhand.import.max-rows}. Изображения при импорте не загружаются.
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AdImportServiceImpl implements AdImportService {
+
+    private static final String[] CSV_COLUMNS = {"title", "price", "description"};
+
+    private final AdRepository adRepository;
+    private final UserRepository userRepository;
+    private final UserService userService;
+    private final AdMapper mapper;
+    private final Validator validator;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final EntityManager entityManager;
+
+    @Value("${secondhand.import.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${secondhand.import.max-rows:50000}")
+    private int maxRows;
+
+    @Override
+    public AdImportReport importAds(List<CreateOrUpdateAd> ads) {
+        log.info("Method {}, rows {}", MethodLog.getMethodName(), ads.size());
+        checkRowCount(ads.size());
+        return importRows(ads, new String[ads.size()]);
+    }
+
+    @Override
+    public AdImportReport importCsv(Reader csv) {
+        log.info("Method {}", MethodLog.getMethodName());
+        CsvReader reader = new CsvReader(csv);
+        List<String> header = reader.readRecord();
+        if (header == null) {
+            throw new InvalidCsvException("CSV header is missing");
+        }
+        int[] columns = new int[CSV_COLUMNS.length];
+        for (int i = 0; i < CSV_COLUMNS.length; i++) {
+            columns[i] = indexOf(header, CSV_COLUMNS[i]);
+            if (columns[i] < 0) {
+                throw new InvalidCsvException(String.format("CSV column [%s] is missing", CSV_COLUMNS[i]));
+            }
+        }
+
+        List<CreateOrUpdateAd> ads = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        for (List<String> record = reader.readRecord(); record != null; record = reader.readRecord()) {
+            checkRowCount(ads.size() + 1);
+            if (record.size() != header.size()) {
+                ads.add(null);
+                errors.add(String.format("Expected %d fields, got %d", header.size(), record.size()));
+                continue;
+            }
+            String price = record.get(columns[1]).trim();
+            try {
+                ads.add(new CreateOrUpdateAd(record.get(columns[0]),
+                        price.isEmpty() ? null : Integer.valueOf(price),
+                        record.get(columns[2])));
+                errors.add(null);
+            } catch (NumberFormatException e) {
+                ads.add(null);
+                errors.add(String.format("Invalid value [%s] for field [price]", price));
+            }
+        }
+        return importRows(ads, errors.toArray(new String[0]));
+    }
+
+    private AdImportReport importRows(List<CreateOrUpdateAd> ads, String[] errors) {
+        AdImportResult[] results = new AdImportResult[ads.size()];
+        List<Integer> accepted = new ArrayList<>(ads.size());
+        for (int i = 0; i < ads.size(); i++) {
+            String error = errors[i] != null ? errors[i] : validate(ads.get(i));
+            if (error != null) {
+                results[i] = new AdImportResult(i + 1, null, error);
+            } else {
+                accepted.add(i);
+            }
+        }
+
+        SecurityUser user = userService.getCurrentUser();
+        int imported = 0;
+        for (int from = 0; from < accepted.size(); from += chunkSize) {
+            List<Integer> chunk = accepted.subList(from, Math.min(from + chunkSize, accepted.size()));
+            try {
+                List<Ad> saved = transactionTemplate.execute(status -> insertChunk(user, chunk, ads));
+                for (int k = 0; k < chunk.size(); k++) {
+                    results[chunk.get(k)] = new AdImportResult(chunk.get(k) + 1, saved.get(k).getId(), null);
+                }
+                imported += chunk.size();
+            } catch (DataAccessException e) {
+                log.warn("Import chunk of {} rows from row {} rejected", chunk.size(), chunk.get(0) + 1, e);
+                for (Integer i : chunk) {
+                    results[i] = new AdImportResult(i + 1, null, "Rejected by the database together with its chunk");
+                }
+            }
+        }
+        log.info("Imported {} of {} ads for user {}", imported, ads.size(), user.getId());
+        return new AdImportReport(imported, ads.size() - imported, Arrays.asList(results));
+    }
+
+    private List<Ad> insertChunk(SecurityUser user, List<Integer> chunk, List<CreateOrUpdateAd> ads) {
+        if (userRepository.addAdsCount(user.getId(), chunk.size()) == 0) {
+            throw new UserNotFoundException(String.format("User not found [%s]", user.getUsername()));
+        }
+        User author = userRepository.getReferenceById(user.getId());
+        List<Ad> entities = new ArrayList<>(chunk.size());
+        for (Integer i : chunk) {
+            Ad ad = mapper.toAdEntity(ads.get(i));
+            ad.setUser(author);
+            entities.add(ad);
+        }
+        adRepository.saveAll(entities);
+        adRepository.flush();
+        for (Ad ad : entities) {
+            eventPublisher.publishEvent(new AdSavedEvent(mapper.toAdDTO(ad), ad.getDescription()));
+        }
+        entityManager.clear();
+        eventPublisher.publishEvent(new UserUpdatedEvent(user.getId(), user.getUsername()));
+        return entities;
+    }
+
+    private String validate(CreateOrUpdateAd ad) {
+        if (ad == null) {
+            return "Empty row";
+        }
+        return validator.validate(ad).stream()
+                .map(violation -> String.format("Invalid value [%s] for field [%s]: %s",
+                        violation.getInvalidValue(), violation.getPropertyPath(), violation.getMessage()))
+                .sorted()
+                .collect(Collectors.collectingAndThen(Collectors.joining("; "), s -> s.isEmpty() ? null : s));
+    }
+
+    private void checkRowCount(int rows) {
+        if (rows > maxRows) {
+            throw new BatchSizeExceededException(String.format("Too many rows, at most %d allowed", maxRows));
+        }
+    }
+
+    private static int indexOf(List<String> header, String column) {
+        for (int i = 0; i < header.size(); i++) {
+            if (header.get(i).trim().toLowerCase(Locale.ROOT).equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
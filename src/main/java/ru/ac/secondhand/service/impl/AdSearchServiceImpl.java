@@ -0,0 +1,107 @@
+package ru.ac.secondhand.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.ac.secondhand.dto.ad.AdDTO;
+import ru.ac.secondhand.dto.ad.AdSearchQuery;
+import ru.ac.secondhand.dto.ad.Ads;
+import ru.ac.secondhand.mapper.AdMapper;
+import ru.ac.secondhand.repository.AdRepository;
+import ru.ac.secondhand.repository.projection.AdCardView;
+import ru.ac.secondhand.service.AdSearchService;
+import ru.ac.secondhand.utils.MethodLog;
+import ru.ac.secondhand.utils.PageCursor;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Полнотекстовый поиск объявлений средствами PostgreSQL.
+ * <p>
+ * Поиск выполняется по генерируемому столбцу {@code ads.search_vector} с GIN-индексом,
+ * слова запроса приводятся к основе русским словарём, поэтому «велосипеды» находит «велосипед».
+ * Результаты ранжируются функцией {@code ts_rank} и выбираются проекцией {@code AdCardView},
+ * после чего преобразуются в {@code AdDTO} маппером {@code AdMapper}.
+ * </p>
+ * <p>
+ * Порядок по релевантности не совпадает с порядком какого-либо индекса, поэтому курсор страницы
+ * хранит смещение в результатах поиска. Для определения наличия следующей страницы выбирается
+ * на одну запись больше размера страницы.
+ * </p>
+ * <p>
+ * Нечёткий режим сравнивает запрос со словами заголовка по триграммам ({@code pg_trgm}) через
+ * GIN-индекс триграмм; порог сходства устанавливается на время транзакции. Если точный поиск
+ * на первой странице нашёл меньше {@code FALLBACK_MIN_HITS} объявлений, выполняется второй,
+ * нечёткий проход, и при большем числе находок выдача и курсор переходят в нечёткий режим.
+ * </p>
+ * <p>
+ * Используется по умолчанию; встроенный индекс в памяти включается свойством
+ * {@code secondhand.search.engine=memory}.
+ * </p>
+ *
+ * @see InMemoryAdSearchService
+ * @see AdRepository#search(String, int, int)
+ * @see AdRepository#fuzzySearch(String, int, int)
+ */
+@Service
+@ConditionalOnProperty(name = "secondhand.search.engine", havingValue = "postgres", matchIfMissing = true)
+@RequiredArgsConstructor
+@Slf4j
+@Transactional(readOnly = true)
+public class AdSearchServiceImpl implements AdSearchService {
+
+    private static final String SEARCH_CURSOR = "search";
+    private static final String FUZZY_CURSOR = "search.fuzzy";
+    private static final double DEFAULT_THRESHOLD = 0.4;
+    private static final double MIN_THRESHOLD = 0.1;
+    private static final int FALLBACK_MIN_HITS = 3;
+
+    private final AdRepository adRepository;
+    private final AdMapper mapper;
+
+    @Override
+    public Ads search(AdSearchQuery query, String cursor, Integer size) {
+        log.info("Method {}, query {}, cursor {}, size {}", MethodLog.getMethodName(), query, cursor, size);
+        boolean fuzzy = cursor != null ? FUZZY_CURSOR.equals(PageCursor.kind(cursor)) : query.isFuzzy();
+        int offset = PageCursor.decodeOffset(cursor, fuzzy ? FUZZY_CURSOR : SEARCH_CURSOR);
+        if (query.getQ() == null || query.getQ().isBlank()) {
+            return new Ads(0, Collections.emptyList());
+        }
+        String text = query.getQ().strip();
+        int pageSize = PageCursor.pageSize(size);
+
+        List<AdCardView> found;
+        if (fuzzy) {
+            found = fuzzySearch(text, query.getThreshold(), offset, pageSize);
+        } else {
+            found = adRepository.search(text, offset, pageSize + 1);
+            if (cursor == null && found.size() < FALLBACK_MIN_HITS) {
+                log.info("Exact search found {} ads, falling back to fuzzy search", found.size());
+                List<AdCardView> fuzzyFound = fuzzySearch(text, query.getThreshold(), offset, pageSize);
+                if (fuzzyFound.size() > found.size()) {
+                    found = fuzzyFound;
+                    fuzzy = true;
+                }
+            }
+        }
+
+        String nextCursor = null;
+        if (found.size() > pageSize) {
+            found = found.subList(0, pageSize);
+            nextCursor = PageCursor.encodeOffset(fuzzy ? FUZZY_CURSOR : SEARCH_CURSOR, offset + pageSize);
+        }
+        List<AdDTO> results = mapper.toAdDTOs(found);
+        return new Ads(results.size(), results, nextCursor);
+    }
+
+    private List<AdCardView> fuzzySearch(String text, Double threshold, int offset, int pageSize) {
+        double limit = threshold == null
+                ? DEFAULT_THRESHOLD
+                : Math.max(MIN_THRESHOLD, Math.min(threshold, 1.0));
+        adRepository.setWordSimilarityThreshold(String.valueOf(limit));
+        return adRepository.fuzzySearch(text, offset, pageSize + 1);
+    }
+}
@@ -2,25 +2,59 @@ package ru.ac.secondhand.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
+import ru.ac.secondhand.cache.AdResponseCache;
 import ru.ac.secondhand.dto.ad.AdDTO;
+import ru.ac.secondhand.dto.ad.AdFilter;
+import ru.ac.secondhand.dto.ad.AdSort;
 import ru.ac.secondhand.dto.ad.Ads;
 import ru.ac.secondhand.dto.ad.CreateOrUpdateAd;
 import ru.ac.secondhand.dto.ad.ExtendedAd;
+import ru.ac.secondhand.dto.ad.ExtendedAds;
+import ru.ac.secondhand.dto.ad.PriceBucket;
+import ru.ac.secondhand.dto.ad.PriceHistogram;
 import ru.ac.secondhand.entity.Ad;
 import ru.ac.secondhand.entity.Image;
 import ru.ac.secondhand.entity.User;
+import ru.ac.secondhand.event.AdDeletedEvent;
+import ru.ac.secondhand.event.AdSavedEvent;
+import ru.ac.secondhand.event.UserUpdatedEvent;
 import ru.ac.secondhand.exception.AdNotFoundException;
+import ru.ac.secondhand.exception.BatchSizeExceededException;
+import ru.ac.secondhand.exception.InvalidCursorException;
+import ru.ac.secondhand.exception.UserNotFoundException;
 import ru.ac.secondhand.mapper.AdMapper;
+import ru.ac.secondhand.repository.AdFeedQuery;
 import ru.ac.secondhand.repository.AdRepository;
+import ru.ac.secondhand.repository.UserRepository;
+import ru.ac.secondhand.repository.projection.AdCardView;
+import ru.ac.secondhand.repository.projection.AdDetailsView;
+import ru.ac.secondhand.repository.projection.AdVersionView;
 import ru.ac.secondhand.service.AdService;
 import ru.ac.secondhand.service.ImageService;
 import ru.ac.secondhand.service.UserService;
 import ru.ac.secondhand.utils.MethodLog;
+import ru.ac.secondhand.utils.PageCursor;
+import ru.ac.secondhand.utils.ResourceVersion;
+import ru.ac.secondhand.utils.SecurityUser;
 
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Сервис для управления объявлениями.
@@ -34,6 +68,10 @@ import java.util.List;
  * В классе используется логирование для отслеживания ключевых событий, таких как
  * создание, обновление и удаление объявлений.
  * </p>
+ * <p>
+ * При сохранении и удалении объявления публикуются события {@code AdSavedEvent} и {@code AdDeletedEvent},
+ * по которым обновляются производные данные, например поисковый индекс и кэш ответов {@code AdResponseCache}.
+ * </p>
  *
  * @author fifimova
  * @see AdRepository
@@ -47,29 +85,176 @@ import java.util.List;
 public class AdServiceImpl implements AdService {
 
     private final AdRepository adRepository;
+    private final UserRepository userRepository;
     private final UserService userService;
     private final AdMapper mapper;
     private final ImageService imageService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final AdResponseCache cache;
+
+    private static final String FEED_CURSOR = "ads";
+    private static final int DEFAULT_HISTOGRAM_BUCKETS = 10;
+    private static final int MAX_HISTOGRAM_BUCKETS = 50;
+    private static final int MAX_BATCH_SIZE = 100;
 
     /**
-     * Получает список всех объявлений из репозитория.
+     * Получает страницу ленты объявлений.
      * <p>
      * Метод выполняется в контексте транзакции только для чтения, что оптимизирует производительность.
      * </p>
      * <p>
-     * Сначала из репозитория извлекается список всех объявлений. После этого он преобразуется
-     * в формат {@code Ads} с помощью маппера {@code AdMapper}.
+     * Лента выбирается по ключу (keyset pagination): курсор хранит ключ сортировки последнего отданного
+     * объявления — идентификатор, пару (цена, идентификатор) или (время создания, идентификатор), — и следующая страница начинается сразу
+     * после него. Поэтому стоимость запроса страницы не зависит от её глубины. Фильтр по цене и порядок
+     * сортировки берутся из {@code AdFilter} и должны совпадать во всех запросах одной ленты; курсор,
+     * выданный для другого порядка, отклоняется. Карточки выбираются проекцией {@code AdCardView}
+     * без загрузки сущностей, преобразуются в формат {@code Ads} с помощью маппера {@code AdMapper}
+     * и дополняются курсором следующей страницы. Готовые страницы кэшируются по фильтру, курсору и размеру.
      * </p>
      *
-     * @return Объект Ads, содержащий список всех объявлений.
-     * @see AdMapper
+     * @param filter фильтр по цене и порядок сортировки.
+     * @param cursor курсор из предыдущего ответа или {@code null} для первой страницы.
+     * @param size   размер страницы или {@code null} для размера по умолчанию.
+     * @return Объект Ads, содержащий объявления страницы и курсор следующей страницы.
+     * @see AdRepository#findFeed(AdFeedQuery)
      */
     @Override
     @Transactional(readOnly = true)
-    public Ads getAll() {
+    public Ads getAll(AdFilter filter, String cursor, Integer size) {
+        log.info("Method {}, filter {}, cursor {}, size {}", MethodLog.getMethodName(), filter, cursor, size);
+        AdSort sort = filter.getSort() != null ? filter.getSort() : AdSort.ID;
+        int pageSize = PageCursor.pageSize(size);
+        AdFilter key = new AdFilter(filter.getMinPrice(), filter.getMaxPrice(), sort);
+        return cache.getFeed(key, cursor, pageSize, () -> loadFeed(key, cursor, pageSize));
+    }
+
+    private Ads loadFeed(AdFilter filter, String cursor, int size) {
+        AdSort sort = filter.getSort();
+        AdFeedQuery.AdFeedQueryBuilder query = AdFeedQuery.builder()
+                .minPrice(filter.getMinPrice())
+                .maxPrice(filter.getMaxPrice())
+                .sort(sort)
+                .size(size);
+        if (cursor != null) {
+            applyFeedCursor(query, sort, cursor);
+        }
+        Slice<AdCardView> ads = adRepository.findFeed(query.build());
+
+        List<AdDTO> results = mapper.toAdDTOs(ads.getContent());
+        String nextCursor = null;
+        if (ads.hasNext()) {
+            nextCursor = feedCursor(sort, ads.getContent().get(ads.getNumberOfElements() - 1));
+        }
+        return new Ads(results.size(), results, nextCursor);
+    }
+
+    /**
+     * Получает гистограмму цен объявлений.
+     * <p>
+     * Гистограмма считается одним агрегирующим запросом и кэшируется в {@code AdResponseCache}
+     * отдельно для каждого количества интервалов: её запрашивает каждая страница поиска,
+     * а небольшая задержка в отражении новых объявлений для фасета допустима.
+     * </p>
+     *
+     * @param buckets количество интервалов или {@code null} для значения по умолчанию.
+     * @return гистограмма цен.
+     * @see AdRepository#findPriceHistogram(int)
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public PriceHistogram getPriceHistogram(Integer buckets) {
+        log.info("Method {}, buckets {}", MethodLog.getMethodName(), buckets);
+        int count = buckets == null || buckets < 1
+                ? DEFAULT_HISTOGRAM_BUCKETS
+                : Math.min(buckets, MAX_HISTOGRAM_BUCKETS);
+        return cache.getPriceHistogram(count, () -> loadPriceHistogram(count));
+    }
+
+    private PriceHistogram loadPriceHistogram(int buckets) {
+        List<PriceBucket> result = adRepository.findPriceHistogram(buckets).stream()
+                .map(row -> {
+                    int from = row.getLow() + row.getBucket() * row.getWidth();
+                    return new PriceBucket(from, from + row.getWidth() - 1, row.getCount());
+                })
+                .collect(Collectors.toList());
+        return new PriceHistogram(result);
+    }
+
+    private static Sort toSort(AdSort sort) {
+        if (sort == null) {
+            return Sort.by("id");
+        }
+        switch (sort) {
+            case PRICE_ASC:
+                return Sort.by("price", "id");
+            case PRICE_DESC:
+                return Sort.by(Sort.Direction.DESC, "price", "id");
+            case NEWEST:
+                return Sort.by(Sort.Direction.DESC, "createdAt", "id");
+            default:
+                return Sort.by("id");
+        }
+    }
+
+    private static void applyFeedCursor(AdFeedQuery.AdFeedQueryBuilder query, AdSort sort, String cursor) {
+        switch (sort) {
+            case ID:
+                query.afterId(PageCursor.decodeId(cursor, FEED_CURSOR));
+                break;
+            case NEWEST:
+                String[] key = PageCursor.decode(cursor, feedCursorKind(sort), 2);
+                try {
+                    query.afterCreatedAt(LocalDateTime.parse(key[0])).afterId(Integer.valueOf(key[1]));
+                } catch (DateTimeParseException | NumberFormatException e) {
+                    throw new InvalidCursorException(String.format("Invalid cursor [%s]", cursor));
+                }
+                break;
+            default:
+                Integer[] priceKey = PageCursor.decodeIntegers(cursor, feedCursorKind(sort), 2);
+                query.afterPrice(priceKey[0]).afterId(priceKey[1]);
+        }
+    }
+
+    private static String feedCursor(AdSort sort, AdCardView last) {
+        switch (sort) {
+            case ID:
+                return PageCursor.encode(FEED_CURSOR, last.getId());
+            case NEWEST:
+                return PageCursor.encode(feedCursorKind(sort), last.getCreatedAt(), last.getId());
+            default:
+                return PageCursor.encode(feedCursorKind(sort), last.getPrice(), last.getId());
+        }
+    }
+
+    private static String feedCursorKind(AdSort sort) {
+        return FEED_CURSOR + "." + sort.name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Передаёт все объявления в обработчик по одному, не собирая их в память.
+     * <p>
+     * Метод выполняется в транзакции только для чтения и читает объявления однонаправленным потоком
+     * из репозитория проекцией {@code AdCardView}. Каждое объявление преобразуется в {@code AdDTO}
+     * и сразу передаётся в обработчик. Сущности в контекст персистентности не загружаются,
+     * поэтому расход памяти не зависит от размера каталога.
+     * </p>
+     *
+     * @param action обработчик, получающий DTO каждого объявления.
+     * @see AdRepository#streamFeed()
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void streamAll(Consumer<AdDTO> action) {
         log.info("Method {}", MethodLog.getMethodName());
-        List<Ad> ads = adRepository.findAll();
-        return mapper.toAds(ads);
+        int streamed = 0;
+        try (Stream<AdCardView> ads = adRepository.streamFeed()) {
+            Iterator<AdCardView> iterator = ads.iterator();
+            while (iterator.hasNext()) {
+                action.accept(mapper.toAdDTO(iterator.next()));
+                streamed++;
+            }
+        }
+        log.info("Streamed {} ads", streamed);
     }
 
     /**
@@ -79,23 +264,107 @@ public class AdServiceImpl implements AdService {
      * производительность для операций, не требующих изменения данных.
      * </p>
      * <p>
-     * Сначала производится поиск объявления в репозитории по предоставленному идентификатору.
-     * Если объявление не найдено, генерируется исключение {@code AdNotFoundException},
-     * а в журнал записывается предупреждение. В случае успешного нахождения объявления,
-     * оно преобразуется в расширенный DTO формат с помощью маппера.
+     * Данные объявления и контакты автора выбираются одним запросом в проекцию {@code AdDetailsView},
+     * без загрузки сущностей и ленивых прокси пользователя. Если объявление не найдено,
+     * генерируется исключение {@code AdNotFoundException}, а в журнал записывается предупреждение.
+     * В случае успешного нахождения объявления, оно преобразуется в расширенный DTO формат с помощью маппера.
+     * Результат кэшируется до изменения объявления или профиля его автора.
      * </p>
      *
      * @param id идентификатор объявления для поиска.
      * @return объект {@code ExtendedAd}, содержащий расширенную информацию об объявлении.
      * @throws AdNotFoundException если объявление с указанным идентификатором не найдено.
-     * @see AdMapper#toExtendedAd(Ad)
+     * @see AdMapper#toExtendedAd(AdDetailsView)
      */
     @Override
     @Transactional(readOnly = true)
     public ExtendedAd getAdInfo(Integer id) {
         log.info("Method {}", MethodLog.getMethodName());
-        Ad ad = getAdById(id);
-        return mapper.toExtendedAd(ad);
+        return cache.getDetails(id, () -> {
+            AdDetailsView ad = adRepository.findDetailsById(id).orElseThrow(() -> {
+                log.warn("Ad not found for id: {}", id);
+                return new AdNotFoundException("Ad not found for id: " + id);
+            });
+            return mapper.toExtendedAd(ad);
+        });
+    }
+
+    /**
+     * Получает расширенную информацию о нескольких объявлениях по их идентификаторам.
+     * <p>
+     * Объявления берутся из кэша карточек, а отсутствующие в нём выбираются одним запросом {@code IN}
+     * с присоединённым автором в проекцию {@code AdDetailsView} и преобразуются маппером {@code AdMapper}.
+     * Порядок результатов совпадает с порядком идентификаторов в запросе, повторы отбрасываются,
+     * ненайденные идентификаторы перечисляются в поле {@code missing}.
+     * </p>
+     *
+     * @param ids идентификаторы объявлений, не более {@code MAX_BATCH_SIZE} различных.
+     * @return найденные объявления и ненайденные идентификаторы.
+     * @throws BatchSizeExceededException если запрошено больше {@code MAX_BATCH_SIZE} объявлений.
+     * @see AdRepository#findDetailsByIdIn(java.util.Collection)
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public ExtendedAds getAdsInfo(List<Integer> ids) {
+        log.info("Method {}, ids {}", MethodLog.getMethodName(), ids);
+        Set<Integer> requested = new LinkedHashSet<>(ids);
+        requested.remove(null);
+        if (requested.size() > MAX_BATCH_SIZE) {
+            throw new BatchSizeExceededException(
+                    String.format("Too many ids [%d], at most %d allowed", requested.size(), MAX_BATCH_SIZE));
+        }
+        Map<Integer, ExtendedAd> found = requested.isEmpty()
+                ? Map.of()
+                : cache.getDetails(requested, this::loadDetails);
+
+        List<ExtendedAd> results = new ArrayList<>(found.size());
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : requested) {
+            ExtendedAd ad = found.get(id);
+            if (ad != null) {
+                results.add(ad);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            log.warn("Ads not found for ids: {}", missing);
+        }
+        return new ExtendedAds(results.size(), results, missing);
+    }
+
+    private Map<Integer, ExtendedAd> loadDetails(Iterable<? extends Integer> ids) {
+        List<Integer> missed = new ArrayList<>();
+        ids.forEach(missed::add);
+        return adRepository.findDetailsByIdIn(missed).stream()
+                .collect(Collectors.toMap(AdDetailsView::getId, mapper::toExtendedAd));
+    }
+
+    /**
+     * Получает версию расширенной информации об объявлении.
+     * <p>
+     * ETag — сумма версий объявления и его автора вместе со счётчиками комментариев объявления и объявлений
+     * автора, Last-Modified — более позднее из времён их изменения.
+     * Оба значения выбираются одним запросом по первичному ключу, поэтому ответ 304 не требует
+     * загрузки объявления, автора и работы маппера.
+     * </p>
+     *
+     * @param id идентификатор объявления.
+     * @return версия расширенной информации об объявлении.
+     * @throws AdNotFoundException если объявление с указанным идентификатором не найдено.
+     * @see AdRepository#findVersionById(Integer)
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public ResourceVersion getAdVersion(Integer id) {
+        log.info("Method {}, ad {}", MethodLog.getMethodName(), id);
+        AdVersionView version = adRepository.findVersionById(id).orElseThrow(() -> {
+            log.warn("Ad not found for id: {}", id);
+            return new AdNotFoundException("Ad not found for id: " + id);
+        });
+        return new ResourceVersion(
+                version.getVersion() + "-" + version.getCommentsCount() + "-" + version.getAuthorAdsCount(),
+                version.getUpdatedAt());
     }
 
     /**
@@ -105,48 +374,55 @@ public class AdServiceImpl implements AdService {
      * операции за счёт сокращения нагрузки на базу данных.
      * </p>
      * <p>
-     * Сначала определяется текущий пользователь с помощью {@code userService.findUser()}.
-     * Затем, используя идентификатор пользователя, из репозитория извлекается список его объявлений.
-     * Наконец, этот список преобразуется в формат {@code Ads} с помощью маппера.
+     * Сначала из principal берётся идентификатор текущего пользователя с помощью {@code userService.getCurrentUser()}.
+     * Затем, используя идентификатор пользователя, из репозитория извлекаются карточки его объявлений
+     * проекцией {@code AdCardView} в запрошенном порядке. Наконец, этот список преобразуется
+     * в формат {@code Ads} с помощью маппера.
      * </p>
      *
+     * @param sort порядок объявлений или {@code null} для порядка по идентификатору.
      * @return Объект Ads, содержащий список объявлений текущего пользователя.
-     * @see UserService#findUser()
-     * @see AdRepository#findAdsByUserId(Integer)
+     * @see UserService#getCurrentUser()
+     * @see AdRepository#findCardsByUserId(Integer, Sort)
      * @see AdMapper
      */
     @Override
     @Transactional(readOnly = true)
-    public Ads getUsersAds() {
-        log.info("Method {}", MethodLog.getMethodName());
-        User user = userService.findUser();
-        List<Ad> ads = adRepository.findAdsByUserId(user.getId());
-        return mapper.toAds(ads);
+    public Ads getUsersAds(AdSort sort) {
+        log.info("Method {}, sort {}", MethodLog.getMethodName(), sort);
+        SecurityUser user = userService.getCurrentUser();
+        List<AdDTO> results = mapper.toAdDTOs(adRepository.findCardsByUserId(user.getId(), toSort(sort)));
+        return new Ads(results.size(), results);
     }
 
     /**
      * Создаёт новое объявление на основе предоставленных данных.
      * <p>
-     * В начале определяется текущий пользователь через {@code userService.findUser()}.
+     * В начале из principal берётся текущий пользователь через {@code userService.getCurrentUser()},
+     * и его счётчик объявлений увеличивается атомарным запросом, который заодно проверяет, что пользователь есть.
      * Затем данные объявления из DTO преобразуются в сущность {@code Ad} с помощью маппера.
-     * Пользователь устанавливается для объявления, и оно сохраняется в репозитории.
+     * Пользователь устанавливается для объявления ссылкой по идентификатору, без чтения из базы,
+     * и объявление сохраняется в репозитории одной вставкой.
      * На заключительном этапе создается и возвращается DTO нового объявления.
      * </p>
      *
      * @param adDTO DTO для создания объявления.
      * @return DTO созданного объявления.
-     * @see UserService#findUser()
+     * @throws UserNotFoundException если текущий пользователь не найден.
+     * @see UserService#getCurrentUser()
      * @see AdMapper#toAdEntity(CreateOrUpdateAd)
      * @see AdMapper#toAdDTO(Ad)
      */
     @Override
     public AdDTO createAd(CreateOrUpdateAd adDTO, MultipartFile image) {
         log.info("Method {}", MethodLog.getMethodName());
-        User user = userService.findUser();
-        log.debug("User found");
+        SecurityUser user = userService.getCurrentUser();
+        if (userRepository.addAdsCount(user.getId(), 1) == 0) {
+            throw new UserNotFoundException(String.format("User not found [%s]", user.getUsername()));
+        }
 
         Ad ad = mapper.toAdEntity(adDTO);
-        ad.setUser(user);
+        ad.setUser(userRepository.getReferenceById(user.getId()));
 
         if (image != null && !image.isEmpty()) {
             Image newImage = imageService.saveImage(image);
@@ -156,7 +432,10 @@ public class AdServiceImpl implements AdService {
 
         adRepository.save(ad);
         log.info("Ad {} {} saved", ad.getId(), ad.getTitle());
-        return mapper.toAdDTO(ad);
+        AdDTO saved = mapper.toAdDTO(ad);
+        eventPublisher.publishEvent(new AdSavedEvent(saved, ad.getDescription()));
+        eventPublisher.publishEvent(new UserUpdatedEvent(user.getId(), user.getUsername()));
+        return saved;
     }
 
 
@@ -182,7 +461,9 @@ public class AdServiceImpl implements AdService {
         ad.setDescription(adDTO.getDescription());
         adRepository.save(ad);
         log.info("Ad {} {} saved", ad.getId(), ad.getTitle());
-        return mapper.toAdDTO(ad);
+        AdDTO saved = mapper.toAdDTO(ad);
+        eventPublisher.publishEvent(new AdSavedEvent(saved, ad.getDescription()));
+        return saved;
     }
 
     /**
@@ -212,6 +493,7 @@ public class AdServiceImpl implements AdService {
         ad.setImage(newImage);
         adRepository.save(ad);
         log.info("Image {} saved", newImage.getId());
+        eventPublisher.publishEvent(new AdSavedEvent(mapper.toAdDTO(ad), ad.getDescription()));
     }
 
     /**
@@ -219,7 +501,10 @@ public class AdServiceImpl implements AdService {
      * <p>
      * Поиск объявления осуществляется по его идентификатору. Если объявление не найдено,
      * генерируется исключение {@code AdNotFoundException}. В случае успешного нахождения,
-     * объявление удаляется из репозитория.
+     * объявление удаляется из репозитория, а счётчик объявлений автора уменьшается атомарным запросом.
+     * Комментарии объявления не загружаются: их удаляет внешний ключ {@code ON DELETE CASCADE}
+     * в том же запросе, поэтому число запросов не зависит от количества комментариев.
+     * Ссылка на изображение объявления освобождается: файл удаляется, только если он не нужен другим.
      * </p>
      *
      * @param id Идентификатор удаляемого объявления.
@@ -228,7 +513,14 @@ public class AdServiceImpl implements AdService {
     public void deleteAd(Integer id) {
         Ad ad = getAdById(id);
         log.info("Ad {} {} deleted", ad.getId(), ad.getTitle());
+        User author = ad.getUser();
         adRepository.delete(ad);
+        if (ad.getImage() != null) {
+            imageService.deleteImage(ad.getImage().getId());
+        }
+        userRepository.addAdsCount(author.getId(), -1);
+        eventPublisher.publishEvent(new AdDeletedEvent(id));
+        eventPublisher.publishEvent(new UserUpdatedEvent(author.getId(), author.getUsername()));
     }
 
     /**
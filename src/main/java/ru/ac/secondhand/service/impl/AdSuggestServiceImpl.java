@@ -0,0 +1,83 @@
+package ru.ac.secondhand.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.ac.secondhand.dto.ad.Suggestions;
+import ru.ac.secondhand.event.AdDeletedEvent;
+import ru.ac.secondhand.event.AdSavedEvent;
+import ru.ac.secondhand.repository.AdRepository;
+import ru.ac.secondhand.repository.projection.AdCardView;
+import ru.ac.secondhand.search.IndexBuildGuard;
+import ru.ac.secondhand.search.SuggestIndex;
+import ru.ac.secondhand.service.AdSuggestService;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Подсказки для поисковой строки по префиксному дереву слов заголовков.
+ * <p>
+ * При старте приложения дерево строится потоковым чтением карточек всех объявлений, затем
+ * поддерживается событиями {@code AdSavedEvent} и {@code AdDeletedEvent}, которые сервис объявлений
+ * публикует при создании, изменении и удалении. События применяются после фиксации транзакции,
+ * а пришедшие во время построения — после его завершения ({@link IndexBuildGuard}), чтобы устаревший
+ * заголовок, прочитанный построением, не затёр новый и удалённое объявление не вернулось в подсказки.
+ * </p>
+ *
+ * @see SuggestIndex
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AdSuggestServiceImpl implements AdSuggestService {
+
+    private final AdRepository adRepository;
+    private final SuggestIndex index = new SuggestIndex();
+    private final IndexBuildGuard buildGuard = new IndexBuildGuard();
+
+    @Override
+    public Suggestions suggest(String prefix, Integer limit) {
+        int count = limit == null || limit < 1
+                ? SuggestIndex.MAX_SUGGESTIONS
+                : Math.min(limit, SuggestIndex.MAX_SUGGESTIONS);
+        List<String> results = index.suggest(prefix, count);
+        return new Suggestions(results.size(), results);
+    }
+
+    /**
+     * Строит дерево подсказок по заголовкам всех объявлений.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void buildIndex() {
+        int indexed = 0;
+        buildGuard.startBuild();
+        try (Stream<AdCardView> ads = adRepository.streamFeed()) {
+            Iterator<AdCardView> iterator = ads.iterator();
+            while (iterator.hasNext()) {
+                AdCardView ad = iterator.next();
+                index.put(ad.getId(), ad.getTitle());
+                indexed++;
+            }
+        } finally {
+            buildGuard.finishBuild();
+        }
+        log.info("Suggest index built, {} ads", indexed);
+    }
+
+    @TransactionalEventListener
+    public void onAdSaved(AdSavedEvent event) {
+        buildGuard.apply(() -> index.put(event.getAd().getPk(), event.getAd().getTitle()));
+    }
+
+    @TransactionalEventListener
+    public void onAdDeleted(AdDeletedEvent event) {
+        buildGuard.apply(() -> index.remove(event.getAdId()));
+    }
+}
@@ -2,27 +2,40 @@ package ru.ac.secondhand.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import ru.ac.secondhand.dto.comment.CommentDTO;
 import ru.ac.secondhand.dto.comment.Comments;
 import ru.ac.secondhand.dto.comment.CreateOrUpdateComment;
 import ru.ac.secondhand.entity.Ad;
 import ru.ac.secondhand.entity.Comment;
-import ru.ac.secondhand.entity.User;
+import ru.ac.secondhand.event.AdCommentsChangedEvent;
+import ru.ac.secondhand.event.CommentChangedEvent;
+import ru.ac.secondhand.exception.AdNotFoundException;
 import ru.ac.secondhand.exception.CommentNotFoundException;
-import ru.ac.secondhand.exception.UnauthorizedAccessException;
+import ru.ac.secondhand.exception.InvalidCursorException;
 import ru.ac.secondhand.mapper.CommentMapper;
+import ru.ac.secondhand.repository.AdRepository;
 import ru.ac.secondhand.repository.CommentRepository;
+import ru.ac.secondhand.repository.projection.CommentView;
+import ru.ac.secondhand.repository.projection.CommentsVersionView;
 import ru.ac.secondhand.repository.UserRepository;
 import ru.ac.secondhand.service.AdService;
 import ru.ac.secondhand.service.CommentService;
+import ru.ac.secondhand.service.UserService;
+import ru.ac.secondhand.stream.CommentStreamHub;
 import ru.ac.secondhand.utils.MethodLog;
+import ru.ac.secondhand.utils.PageCursor;
+import ru.ac.secondhand.utils.ResourceVersion;
+import ru.ac.secondhand.utils.SecurityUser;
 
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 
 @Service
@@ -35,42 +48,115 @@ public class CommentServiceImpl implements CommentService {
     private final AdService adService;
     private final CommentMapper mapper;
     private final UserRepository userRepository;
+    private final AdRepository adRepository;
+    private final UserService userService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CommentStreamHub commentStreamHub;
 
+    private static final String COMMENTS_CURSOR = "comments";
 
+
+    /**
+     * Страница комментариев объявления, сначала новые.
+     * <p>
+     * Комментарии вместе с данными авторов выбираются одним запросом по ключу {@code (createdAt, id)}:
+     * курсор хранит ключ последнего отданного комментария, поэтому стоимость запроса ограничена размером
+     * страницы. Существование объявления проверяется отдельным запросом, только если страница пуста.
+     * </p>
+     */
     @Override
     @Transactional(readOnly = true)
-    public Comments getComments(Integer adId) {
-        log.info("Fetching comments for adId: {}", adId);
-        Ad ad = adService.getAdById(adId);
-        List<Comment> comments = commentRepository.findByAdId(adId);
-        return mapper.toComments(comments);
-    }
-
-    public User getCurrentAuthenticatedUser() {
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        if (authentication != null && authentication.isAuthenticated()) {
-            String username = ((UserDetails) authentication.getPrincipal()).getUsername();
-            return userRepository.findByUsername(username).orElse(null);
+    public Comments getComments(Integer adId, String cursor, Integer size) {
+        log.info("Fetching comments for adId: {}, cursor {}, size {}", adId, cursor, size);
+        Pageable page = PageRequest.of(0, PageCursor.pageSize(size));
+        Slice<CommentView> comments;
+        if (cursor == null) {
+            comments = commentRepository.findPageByAdId(adId, page);
         } else {
-            throw new UnauthorizedAccessException("Пользователь не аутентифицирован");
+            String[] key = PageCursor.decode(cursor, COMMENTS_CURSOR, 2);
+            try {
+                comments = commentRepository.findPageByAdIdAfter(adId, LocalDateTime.parse(key[0]),
+                        Integer.valueOf(key[1]), page);
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new InvalidCursorException(String.format("Invalid cursor [%s]", cursor));
+            }
+        }
+        if (!comments.hasContent() && !adRepository.existsById(adId)) {
+            log.warn("Ad not found for id: {}", adId);
+            throw new AdNotFoundException("Ad not found for id: " + adId);
         }
+
+        List<CommentDTO> results = mapper.toCommentDTOs(comments.getContent());
+        String nextCursor = null;
+        if (comments.hasNext()) {
+            CommentView last = comments.getContent().get(comments.getNumberOfElements() - 1);
+            nextCursor = PageCursor.encode(COMMENTS_CURSOR, last.getCreatedAt(), last.getId());
+        }
+        return new Comments(results.size(), results, nextCursor);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public ResourceVersion getCommentsVersion(Integer adId) {
+        log.info("Fetching comments version for adId: {}", adId);
+        CommentsVersionView version = commentRepository.findCommentsVersionByAdId(adId).orElseThrow(() -> {
+            log.warn("Ad not found for id: {}", adId);
+            return new AdNotFoundException("Ad not found for id: " + adId);
+        });
+        return new ResourceVersion(version.getCount() + "-" + version.getLastId() + "-" + version.getVersion());
+    }
 
+    /**
+     * Подписка на изменения комментариев объявления. Изменения рассылает {@code CommentStreamHub}
+     * по событиям {@code CommentChangedEvent}, которые публикуют создание, изменение и удаление комментария.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public SseEmitter subscribe(Integer adId) {
+        log.info("Subscribing to comments of adId: {}", adId);
+        if (!adRepository.existsById(adId)) {
+            log.warn("Ad not found for id: {}", adId);
+            throw new AdNotFoundException("Ad not found for id: " + adId);
+        }
+        return commentStreamHub.subscribe(adId);
+    }
+
+    /**
+     * Создаёт комментарий текущего пользователя к объявлению.
+     * <p>
+     * Объявление и автор не читаются: комментарий ссылается на них по идентификаторам, идентификатор
+     * автора берётся из principal. Существование объявления проверяется атомарным увеличением его счётчика комментариев:
+     * если строка объявления не изменена, объявления нет. Увеличение блокирует строку объявления
+     * до конца транзакции, поэтому вставка комментария не может нарушить внешний ключ из-за
+     * одновременного удаления объявления. Ответ строится одним запросом сохранённого комментария вместе
+     * с именем и аватаром автора из базы: principal хранится в сессии и не отражает их изменения.
+     * </p>
+     *
+     * @throws AdNotFoundException если объявление с указанным идентификатором не найдено.
+     */
     @Override
     public CommentDTO createComment(CreateOrUpdateComment comment, Integer adId) {
         log.info("Attempting to create a new comment for Ad [{}]", adId);
-        Ad ad = adService.getAdById(adId);
-        User currentUser = getCurrentAuthenticatedUser();
+        SecurityUser author = userService.getCurrentUser();
+        if (adRepository.addCommentsCount(adId, 1) == 0) {
+            log.warn("Ad not found for id: {}", adId);
+            throw new AdNotFoundException("Ad not found for id: " + adId);
+        }
 
         Comment newComment = mapper.toComment(comment);
-        newComment.setAd(ad);
-        newComment.setUser(currentUser);
+        newComment.setAd(adRepository.getReferenceById(adId));
+        newComment.setUser(userRepository.getReferenceById(author.getId()));
         newComment.setCreatedAt(LocalDateTime.now());
 
         Comment saveComment = commentRepository.save(newComment);
+        CommentDTO result = commentRepository.findViewById(saveComment.getId())
+                .map(mapper::toCommentDTO)
+                .orElseThrow(() -> new CommentNotFoundException(
+                        String.format("Comment [%d] not found for ad [%d]", saveComment.getId(), adId)));
+        eventPublisher.publishEvent(new AdCommentsChangedEvent(adId));
+        eventPublisher.publishEvent(new CommentChangedEvent(adId, CommentChangedEvent.Type.CREATED, result));
         log.info("Comment [{}] successfully created for Ad [{}]", saveComment.getId(), adId);
-        return mapper.toCommentDTO(saveComment);
+        return result;
     }
 
     @Override
@@ -82,7 +168,11 @@ public class CommentServiceImpl implements CommentService {
                     log.warn("Comment [{}] not found for update", commentId);
                     return new CommentNotFoundException(String.format("Comment [%d] not found for ad [%d]", commentId, adId));
                 });
+        CommentDTO deleted = mapper.toCommentDTO(deleteComment);
         commentRepository.delete(deleteComment);
+        adRepository.addCommentsCount(adId, -1);
+        eventPublisher.publishEvent(new AdCommentsChangedEvent(adId));
+        eventPublisher.publishEvent(new CommentChangedEvent(adId, CommentChangedEvent.Type.DELETED, deleted));
         log.info("Comments with id: {} successfully deleted for ad with id: {}", commentId, adId);
     }
 
@@ -90,16 +180,18 @@ public class CommentServiceImpl implements CommentService {
     public CommentDTO updateComment(Integer adId, Integer commentId, CreateOrUpdateComment commentRequest) {
         log.info("Starting update of comment [{}] for ad [{}]", commentId, adId);
         Ad ad = adService.getAdById(adId);
-        Comment updateComment = commentRepository.findById(commentId)
+        Comment updateComment = commentRepository.findByAdIdAndId(adId, commentId)
                 .orElseThrow(() -> {
                     log.warn("Comment [{}] not found for update", commentId);
-                    return new CommentNotFoundException(String.format("Comment [%d] not found ", commentId));
+                    return new CommentNotFoundException(String.format("Comment [%d] not found for ad [%d]", commentId, adId));
                 });
         updateComment.setText(commentRequest.getText());
         commentRepository.save(updateComment);
         log.info("Comment [{}] for ad [{}] successfully updated", commentId, adId);
 
-        return mapper.toCommentDTO(updateComment);
+        CommentDTO result = mapper.toCommentDTO(updateComment);
+        eventPublisher.publishEvent(new CommentChangedEvent(adId, CommentChangedEvent.Type.UPDATED, result));
+        return result;
     }
 
     /**
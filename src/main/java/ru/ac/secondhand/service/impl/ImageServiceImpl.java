@@ -2,24 +2,40 @@ package ru.ac.secondhand.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
+import ru.ac.secondhand.cache.ImageContentCache;
 import ru.ac.secondhand.entity.Image;
+import ru.ac.secondhand.event.ImageReleasedEvent;
+import ru.ac.secondhand.event.ImageSavedEvent;
 import ru.ac.secondhand.exception.ImageNotFoundException;
 import ru.ac.secondhand.exception.ImageSaveException;
 import ru.ac.secondhand.exception.InvalidFileException;
+import ru.ac.secondhand.image.ImageFile;
+import ru.ac.secondhand.image.ImageRenditions;
+import ru.ac.secondhand.image.ImageStore;
 import ru.ac.secondhand.repository.ImageRepository;
 import ru.ac.secondhand.service.ImageService;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.UUID;
 
 @Service
 @Slf4j
@@ -30,16 +46,31 @@ public class ImageServiceImpl implements ImageService {
     final String LOG_INVALID_SIZE_MSG = "Invalid file size. Maximum allowed size is 3MB.";
     final String LOG_INVALID_TYPE_MSG = "Invalid file type. Only JPEG and PNG are allowed.";
     final String LOG_INVALID_NAME_MSG = "Invalid file name. It contains illegal characters.";
-    final String LOG_CREATED_DIRECTORY_MSG = "Created directory for file uploads: {}";
-    final String LOG_ERROR_CREATING_DIRECTORY_MSG = "Could not create the directory for file uploads.";
     final String LOG_IMAGE_SAVED_MSG = "Image saved with path [{}]";
+    final String LOG_IMAGE_REUSED_MSG = "Image [{}] reused for identical upload [{}]";
     final String LOG_ERROR_SAVING_IMAGE_MSG = "Error saving image: {}";
 
     private final ImageRepository imageRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PlatformTransactionManager transactionManager;
+    private final ImageRenditions renditions;
+    private final ImageContentCache contentCache;
+    private final ImageStore imageStore;
     private static final long MAX_SIZE = 3 * 1024 * 1024;
 
     /**
      * Сохранение нового изображения
+     * <p>
+     * SHA-256 содержимого вычисляется при копировании загрузки во временный файл, без повторного чтения.
+     * Файл хранится под именем из хэша, поэтому одинаковые загрузки используют одну строку и один файл:
+     * если изображение с таким хэшем уже есть, его счётчик ссылок увеличивается, а временный файл удаляется.
+     * Новый файл помещается в {@link ImageStore}, а в изображении сохраняется путь относительно его корня.
+     * </p>
+     * <p>
+     * Поиск изображения и перемещение файла выполняются под блокировкой хэша, которая держится до фиксации
+     * транзакции: удаление освобождённого изображения с тем же хэшем не удалит перемещённый файл,
+     * пока строка новой загрузки не видна.
+     * </p>
      *
      * @param imageFile
      * @return Image
@@ -65,75 +96,192 @@ public class ImageServiceImpl implements ImageService {
             throw new InvalidFileException("File name is invalid. It contains illegal characters.");
         }
 
+        Path upload = null;
         try {
-            String directoryPath = System.getProperty("user.dir") + "/images/";
-            String filename = generateUniqueFilename(originalFilename);
-            String filePath = directoryPath + filename;
-
-            File directory = new File(directoryPath);
-            if (!directory.exists()) {
-                boolean isCreated = directory.mkdirs();
-                if (!isCreated) {
-                    log.error(LOG_ERROR_CREATING_DIRECTORY_MSG);
-                    throw new IOException(LOG_ERROR_CREATING_DIRECTORY_MSG);
-                }
-                log.info(LOG_CREATED_DIRECTORY_MSG, directoryPath);
+            upload = imageStore.createTempFile();
+            MessageDigest digest = ImageStore.newDigest();
+            try (InputStream in = new DigestInputStream(imageFile.getInputStream(), digest)) {
+                Files.copy(in, upload, StandardCopyOption.REPLACE_EXISTING);
             }
+            String hash = ImageStore.toHex(digest.digest());
 
-            File file = new File(filePath);
-            imageFile.transferTo(file);
+            imageRepository.lockHash(hash);
+            Optional<Image> existing = imageRepository.findFirstByHashOrderByIdAsc(hash);
+            if (existing.isPresent() && imageRepository.addReferences(existing.get().getId(), 1) > 0) {
+                log.info(LOG_IMAGE_REUSED_MSG, existing.get().getId(), hash);
+                return existing.get();
+            }
+
+            String filePath = imageStore.relativePath(contentFilename(hash, imageFile.getContentType()));
+            imageStore.move(upload, filePath);
 
             Image image = new Image();
             image.setImagePath(filePath);
+            image.setHash(hash);
+            image.setRefCount(1);
             image = imageRepository.save(image);
+            eventPublisher.publishEvent(new ImageSavedEvent(image.getId(), imageStore.resolve(filePath).toString()));
 
             log.info(LOG_IMAGE_SAVED_MSG, filePath);
             return image;
         } catch (IOException e) {
             log.error(LOG_ERROR_SAVING_IMAGE_MSG, e.getMessage());
             throw new ImageSaveException("Failed to save image", e);
+        } finally {
+            deleteQuietly(upload);
         }
     }
 
     /**
      * Удаление изображения
+     * <p>
+     * Освобождает одну ссылку на изображение: счётчик ссылок уменьшается атомарным запросом,
+     * а строка и файл удаляются после фиксации транзакции, если ссылок не осталось.
+     * Удаление откладывается, потому что до фиксации на изображение ещё ссылается
+     * объявление или пользователь, которому назначается новое изображение.
+     * </p>
      *
      * @param imageId
      */
     @Override
+    @Transactional
     public void deleteImage(Integer imageId) {
-        if (imageRepository.existsById(imageId)) {
-            imageRepository.deleteById(imageId);
+        if (imageRepository.addReferences(imageId, -1) > 0) {
+            eventPublisher.publishEvent(new ImageReleasedEvent(imageId));
+        }
+        log.info("Image reference released [{}]", imageId);
+    }
+
+    /**
+     * Удаляет изображение без ссылок и его файл, если файл не используется другой строкой, в отдельной
+     * транзакции. Файл удаляется под блокировкой хэша до фиксации, поэтому одновременная одинаковая
+     * загрузка, уже переместившая файл на тот же путь, дожидается удаления и помещает файл заново.
+     * Содержимое изображения удаляется из кэша.
+     */
+    @TransactionalEventListener
+    public void onImageReleased(ImageReleasedEvent event) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        String orphanPath;
+        try {
+            orphanPath = transaction.execute(status -> deleteIfUnreferenced(event.getImageId()));
+        } catch (DataAccessException e) {
+            log.warn("Could not delete released image [{}]: {}", event.getImageId(), e.getMessage());
+            return;
+        }
+        contentCache.invalidate(event.getImageId());
+        if (orphanPath != null) {
+            log.info("Image deleted [{}], file removed: {}", event.getImageId(), orphanPath);
         }
-        log.info("Image deleted [{}]", imageId);
     }
 
+    private String deleteIfUnreferenced(Integer imageId) {
+        Image image = imageRepository.findById(imageId).orElse(null);
+        if (image == null || image.getRefCount() > 0) {
+            return null;
+        }
+        if (image.getHash() != null) {
+            imageRepository.lockHash(image.getHash());
+        }
+        if (imageRepository.deleteUnreferenced(imageId) == 0
+                || imageRepository.existsByImagePath(image.getImagePath())) {
+            return null;
+        }
+        Path orphan = imageStore.resolve(image.getImagePath());
+        deleteQuietly(orphan);
+        renditions.delete(orphan.toString());
+        return image.getImagePath();
+    }
+
+    @Override
+    public Resource getImage(Integer imageId) {
+        return readableFile(findImage(imageId));
+    }
+
+    /**
+     * Файл изображения или его уменьшенной копии вместе с хэшем оригинала.
+     * <p>
+     * Для изображений, сохранённых до появления хэша, он вычисляется чтением файла при первом запросе
+     * и сохраняется, после чего ссылки на изображение строятся с хэшем. Если запрошенная копия
+     * ещё не построена, построение ставится в очередь, а вместо копии отдаётся оригинал.
+     * </p>
+     * <p>
+     * Небольшие файлы отдаются из кэша содержимого без обращения к базе данных и диску, поэтому метод
+     * не открывает транзакцию: вычисленный хэш сохраняется отдельным запросом {@code UPDATE} только этого поля,
+     * чтобы не перезаписать путь, который миграция хранилища могла изменить после чтения изображения.
+     * </p>
+     *
+     * @param imageId идентификатор изображения
+     * @param width   запрошенная ширина или {@code null} для оригинала
+     * @return выбранный файл
+     */
     @Override
-    public byte[] getImage(Integer imageId) {
-        Optional<Image> imageOpt = imageRepository.findById(imageId);
-        if (imageOpt.isPresent()) {
-            Image image = imageOpt.get();
-            String filePath = image.getImagePath();
-            Path path = Paths.get(filePath);
+    public ImageFile getImageFile(Integer imageId, Integer width) {
+        Integer renditionWidth = renditions.select(width);
+        ImageFile cached = contentCache.get(imageId, renditionWidth);
+        if (cached != null) {
+            return cached;
+        }
+
+        Image image = findImage(imageId);
+        Resource original = readableFile(image);
+        if (image.getHash() == null) {
             try {
-                return Files.readAllBytes(path);
+                image.setHash(ImageStore.hash(original.getFile().toPath()));
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                log.error("Could not hash image [{}]: {}", imageId, e.getMessage());
+                throw new ImageNotFoundException(String.format("Image [%d] not found", imageId));
             }
-        } else {
-            throw new ImageNotFoundException("Not found images {}");
+            imageRepository.saveHashIfMissing(imageId, image.getHash());
+            log.info("Image [{}] hashed: {}", imageId, image.getHash());
         }
+
+        if (renditionWidth == null) {
+            return contentCache.put(imageId, new ImageFile(original, image.getHash(), null, false));
+        }
+        Path rendition = renditions.find(imageStore.resolve(image.getImagePath()).toString(), renditionWidth);
+        if (rendition == null) {
+            return new ImageFile(original, image.getHash(), null, true);
+        }
+        return contentCache.put(imageId,
+                new ImageFile(new FileSystemResource(rendition), image.getHash(), renditionWidth, false));
+    }
+
+    private Image findImage(Integer imageId) {
+        return imageRepository.findById(imageId)
+                .orElseThrow(() -> new ImageNotFoundException(String.format("Image [%d] not found", imageId)));
+    }
+
+    private Resource readableFile(Image image) {
+        Resource file = new FileSystemResource(imageStore.resolve(image.getImagePath()));
+        if (!file.isReadable()) {
+            log.error("File of image [{}] is missing: {}", image.getId(), image.getImagePath());
+            throw new ImageNotFoundException(String.format("Image [%d] not found", image.getId()));
+        }
+        return file;
     }
 
     /**
-     * Генерирует уникальное имя файла на основе исходного имени.
+     * Имя файла в хранилище: хэш содержимого и расширение по типу файла.
+     * Расширение сохраняется, чтобы тип содержимого при отдаче определялся по имени файла.
      *
-     * @param originalFilename Исходное имя файла
-     * @return Уникальное имя файла
+     * @param hash        SHA-256 содержимого файла
+     * @param contentType тип файла
+     * @return Имя файла
      */
-    public String generateUniqueFilename(String originalFilename) {
-        log.debug("Generated unique filename: {}", originalFilename);
-        return UUID.randomUUID() + "_" + originalFilename;
+    public String contentFilename(String hash, String contentType) {
+        return hash + (MediaType.IMAGE_PNG_VALUE.equals(contentType) ? ".png" : ".jpg");
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete file {}: {}", file, e.getMessage());
+        }
     }
 
     /**
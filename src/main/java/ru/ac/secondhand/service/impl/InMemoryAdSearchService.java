@@ -0,0 +1,119 @@
+package ru.ac.secondhand.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.ac.secondhand.dto.ad.AdDTO;
+import ru.ac.secondhand.dto.ad.AdSearchQuery;
+import ru.ac.secondhand.dto.ad.Ads;
+import ru.ac.secondhand.event.AdCommentsChangedEvent;
+import ru.ac.secondhand.event.AdDeletedEvent;
+import ru.ac.secondhand.event.AdSavedEvent;
+import ru.ac.secondhand.mapper.AdMapper;
+import ru.ac.secondhand.repository.AdRepository;
+import ru.ac.secondhand.repository.projection.AdSearchView;
+import ru.ac.secondhand.search.IndexBuildGuard;
+import ru.ac.secondhand.search.InvertedIndex;
+import ru.ac.secondhand.service.AdSearchService;
+import ru.ac.secondhand.utils.MethodLog;
+import ru.ac.secondhand.utils.PageCursor;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Поиск объявлений по встроенному инвертированному индексу в памяти.
+ * <p>
+ * Включается свойством {@code secondhand.search.engine=memory} вместо полнотекстового поиска PostgreSQL.
+ * При старте приложения индекс строится потоковым чтением всех объявлений из репозитория,
+ * затем поддерживается событиями {@code AdSavedEvent} и {@code AdDeletedEvent}, которые сервис
+ * объявлений публикует при создании, изменении и удалении. События применяются после фиксации
+ * транзакции, поэтому в индекс не попадают откаченные изменения, а события, пришедшие во время
+ * построения, откладываются до его завершения ({@link IndexBuildGuard}).
+ * </p>
+ * <p>
+ * Индекс хранит готовые {@code AdDTO}, поэтому выполнение поискового запроса не обращается к базе данных.
+ * Счётчик комментариев в карточке обновляется по {@code AdCommentsChangedEvent}: текущее значение
+ * читается из базы, поэтому события, пришедшие не по порядку, не оставляют устаревший счётчик.
+ * Курсор страницы хранит смещение в ранжированных результатах. Нечёткий режим этим движком
+ * не поддерживается: параметры {@code fuzzy} и {@code threshold} игнорируются.
+ * </p>
+ *
+ * @see InvertedIndex
+ * @see AdSearchServiceImpl
+ */
+@Service
+@ConditionalOnProperty(name = "secondhand.search.engine", havingValue = "memory")
+@RequiredArgsConstructor
+@Slf4j
+public class InMemoryAdSearchService implements AdSearchService {
+
+    private static final String SEARCH_CURSOR = "search";
+
+    private final AdRepository adRepository;
+    private final AdMapper mapper;
+    private final InvertedIndex index = new InvertedIndex();
+    private final IndexBuildGuard buildGuard = new IndexBuildGuard();
+
+    @Override
+    public Ads search(AdSearchQuery query, String cursor, Integer size) {
+        log.info("Method {}, query {}, cursor {}, size {}", MethodLog.getMethodName(), query, cursor, size);
+        int offset = PageCursor.decodeOffset(cursor, SEARCH_CURSOR);
+        int pageSize = PageCursor.pageSize(size);
+        List<AdDTO> results = query.getQ() == null
+                ? Collections.emptyList()
+                : index.search(query.getQ(), offset, pageSize + 1);
+
+        String nextCursor = null;
+        if (results.size() > pageSize) {
+            results = results.subList(0, pageSize);
+            nextCursor = PageCursor.encodeOffset(SEARCH_CURSOR, offset + pageSize);
+        }
+        return new Ads(results.size(), results, nextCursor);
+    }
+
+    /**
+     * Строит индекс по всем объявлениям потоковым чтением из репозитория.
+     * Изменения объявлений, зафиксированные во время построения, применяются после него.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void buildIndex() {
+        log.info("Method {}", MethodLog.getMethodName());
+        buildGuard.startBuild();
+        try (Stream<AdSearchView> ads = adRepository.streamSearchDocuments()) {
+            Iterator<AdSearchView> iterator = ads.iterator();
+            while (iterator.hasNext()) {
+                AdSearchView ad = iterator.next();
+                index.put(mapper.toAdDTO(ad), ad.getDescription());
+            }
+        } finally {
+            buildGuard.finishBuild();
+        }
+        log.info("Search index built, {} ads", index.size());
+    }
+
+    @TransactionalEventListener
+    public void onAdSaved(AdSavedEvent event) {
+        buildGuard.apply(() -> index.put(event.getAd(), event.getDescription()));
+    }
+
+    @TransactionalEventListener
+    public void onAdDeleted(AdDeletedEvent event) {
+        buildGuard.apply(() -> index.remove(event.getAdId()));
+    }
+
+    @TransactionalEventListener
+    public void onAdCommentsChanged(AdCommentsChangedEvent event) {
+        buildGuard.apply(() -> adRepository.findCommentsCountById(event.getAdId())
+                .ifPresent(count -> index.update(event.getAdId(), ad ->
+                        new AdDTO(ad.getAuthor(), ad.getImage(), ad.getPk(), ad.getPrice(), ad.getTitle(), count))));
+    }
+}
@@ -6,6 +6,7 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 import ru.ac.secondhand.entity.User;
 import ru.ac.secondhand.repository.UserRepository;
+import ru.ac.secondhand.utils.SecurityUser;
 
 @Service
 public class UserDetailsServiceImpl implements UserDetailsService {
@@ -17,6 +18,10 @@ public class UserDetailsServiceImpl implements UserDetailsService {
 
     /**
      * Создание объекта UserDetails
+     * <p>
+     * Возвращается {@link SecurityUser} с идентификатором, именем и аватаром пользователя,
+     * чтобы операции записи не перечитывали пользователя по логину.
+     * </p>
      *
      * @param username - логин пользователя
      * @return - объект UserDetails, содержащий сведения о пользователе
@@ -27,10 +32,6 @@ public class UserDetailsServiceImpl implements UserDetailsService {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found"));
 
-        return org.springframework.security.core.userdetails.User.builder()
-                .username(username)
-                .password(user.getPassword())
-                .roles(user.getRole().name())
-                .build();
+        return new SecurityUser(user);
     }
 }
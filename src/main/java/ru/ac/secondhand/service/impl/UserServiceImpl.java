@@ -2,23 +2,29 @@ package ru.ac.secondhand.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 import ru.ac.secondhand.dto.user.NewPassword;
 import ru.ac.secondhand.dto.user.UpdateUserDTO;
 import ru.ac.secondhand.dto.user.UserDTO;
 import ru.ac.secondhand.entity.Image;
 import ru.ac.secondhand.entity.User;
+import ru.ac.secondhand.event.UserUpdatedEvent;
 import ru.ac.secondhand.exception.IncorrectPasswordException;
 import ru.ac.secondhand.exception.UserNotFoundException;
 import ru.ac.secondhand.mapper.UserMapper;
 import ru.ac.secondhand.repository.UserRepository;
+import ru.ac.secondhand.repository.projection.VersionView;
 import ru.ac.secondhand.service.ImageService;
 import ru.ac.secondhand.service.UserService;
 import ru.ac.secondhand.utils.MethodLog;
+import ru.ac.secondhand.utils.ResourceVersion;
+import ru.ac.secondhand.utils.SecurityUser;
 
 
 @Service
@@ -30,6 +36,7 @@ public class UserServiceImpl implements UserService {
     private final UserRepository userRepository;
     private final ImageService imageService;
     private final PasswordEncoder encoder;
+    private final ApplicationEventPublisher eventPublisher;
 
 
     /**
@@ -47,6 +54,15 @@ public class UserServiceImpl implements UserService {
         return user;
     }
 
+    @Override
+    public SecurityUser getCurrentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication.getPrincipal() instanceof SecurityUser) {
+            return (SecurityUser) authentication.getPrincipal();
+        }
+        return new SecurityUser(findUser());
+    }
+
     /**
      * Изменение пароля пользователя
      *
@@ -81,6 +97,21 @@ public class UserServiceImpl implements UserService {
         return userMapper.toUserDTO(user);
     }
 
+    /**
+     * Версия данных пользователя для условного GET-запроса
+     *
+     * @return ResourceVersion
+     */
+    @Override
+    public ResourceVersion getUserDataVersion() {
+        log.debug("Method {}", MethodLog.getMethodName());
+
+        String username = SecurityContextHolder.getContext().getAuthentication().getName();
+        VersionView version = userRepository.findVersionByUsername(username)
+                .orElseThrow(() -> new UserNotFoundException(String.format("User not found [%s]", username)));
+        return new ResourceVersion(String.valueOf(version.getVersion()), version.getUpdatedAt());
+    }
+
     /**
      * Обновление данных пользователя - имени, отчества и номера телефона
      *
@@ -94,6 +125,7 @@ public class UserServiceImpl implements UserService {
         User user = findUser();
         userMapper.updateUserDTOToUser(updateUserDTO, user);
         userRepository.save(user);
+        eventPublisher.publishEvent(new UserUpdatedEvent(user.getId(), user.getUsername()));
 
         return updateUserDTO;
     }
@@ -104,6 +136,7 @@ public class UserServiceImpl implements UserService {
      * @param image
      */
     @Override
+    @Transactional
     public void updateAvatar(MultipartFile image) {
         log.info("Method {}", MethodLog.getMethodName());
 
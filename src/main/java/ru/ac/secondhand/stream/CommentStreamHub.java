@@ -0,0 +1,338 @@
+package ru.ac.secondhand.stream;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.ac.secondhand.event.AdDeletedEvent;
+import ru.ac.secondhand.event.CommentChangedEvent;
+import ru.ac.secondhand.exception.StreamLimitExceededException;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Рассылка изменений комментариев подписчикам объявления по Server-Sent Events.
+ * <p>
+ * Событие {@code CommentChangedEvent} после фиксации транзакции сериализуется в JSON один раз
+ * и раскладывается в очереди всех подписчиков объявления. Очередь каждого подписчика ограничена
+ * {@code secondhand.comments.stream.buffer-size} событиями: поток, публикующий событие, никогда
+ * не пишет в сокет и не ждёт клиента. Очереди разбираются пулом из
+ * {@code secondhand.comments.stream.dispatcher-threads} потоков, при этом события одного подписчика
+ * отправляются по очереди одним потоком.
+ * </p>
+ * <p>
+ * Подписчик, очередь которого переполнена, считается медленным и отключается: соединение закрывается,
+ * клиент переподключается и догружает пропущенное через {@code GET /ads/{id}/comments}.
+ * Соединение также закрывается по истечении {@code secondhand.comments.stream.timeout} и после удаления
+ * объявления. Каждые {@code secondhand.comments.stream.heartbeat} подписчику без ожидающих событий
+ * отправляется SSE-комментарий: прокси не закрывают простаивающее соединение, а оборванное соединение
+ * обнаруживается ошибкой записи и освобождается, не дожидаясь таймаута.
+ * </p>
+ * <p>
+ * Число открытых соединений ограничено: {@code secondhand.comments.stream.max-subscribers-per-ad}
+ * на объявление и {@code secondhand.comments.stream.max-subscribers} на узел. Подписка сверх лимита
+ * отклоняется {@link StreamLimitExceededException}. Количество подписчиков, отключений и отказов
+ * публикуется в Micrometer как {@code comments.stream.subscribers}, {@code comments.stream.evictions}
+ * и {@code comments.stream.rejections}.
+ * </p>
+ */
+@Component
+@Slf4j
+public class CommentStreamHub {
+
+    private static final Frame HEARTBEAT = new Frame(null, null, null);
+
+    private final ObjectMapper objectMapper;
+    private final int bufferSize;
+    private final long timeoutMillis;
+    private final int maxSubscribersPerAd;
+    private final int maxSubscribers;
+    private final Executor dispatcher;
+    private final ScheduledExecutorService heartbeatScheduler;
+    private final Map<Integer, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final Counter evictions;
+    private final Counter rejections;
+
+    @Autowired
+    public CommentStreamHub(ObjectMapper objectMapper,
+                            MeterRegistry meterRegistry,
+                            @Value("${secondhand.comments.stream.buffer-size:64}") int bufferSize,
+                            @Value("${secondhand.comments.stream.timeout:30m}") Duration timeout,
+                            @Value("${secondhand.comments.stream.heartbeat:15s}") Duration heartbeat,
+                            @Value("${secondhand.comments.stream.max-subscribers-per-ad:200}") int maxSubscribersPerAd,
+                            @Value("${secondhand.comments.stream.max-subscribers:5000}") int maxSubscribers,
+                            @Value("${secondhand.comments.stream.dispatcher-threads:4}") int dispatcherThreads) {
+        this(objectMapper, meterRegistry, bufferSize, timeout, maxSubscribersPerAd, maxSubscribers,
+                Executors.newFixedThreadPool(dispatcherThreads, threadFactory("comment-stream-")),
+                Executors.newSingleThreadScheduledExecutor(threadFactory("comment-stream-heartbeat-")));
+        long heartbeatMillis = heartbeat.toMillis();
+        heartbeatScheduler.scheduleAtFixedRate(this::heartbeat, heartbeatMillis, heartbeatMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    CommentStreamHub(ObjectMapper objectMapper, MeterRegistry meterRegistry, int bufferSize, Duration timeout,
+                     int maxSubscribersPerAd, int maxSubscribers, Executor dispatcher,
+                     ScheduledExecutorService heartbeatScheduler) {
+        this.objectMapper = objectMapper;
+        this.bufferSize = bufferSize;
+        this.timeoutMillis = timeout.toMillis();
+        this.maxSubscribersPerAd = maxSubscribersPerAd;
+        this.maxSubscribers = maxSubscribers;
+        this.dispatcher = dispatcher;
+        this.heartbeatScheduler = heartbeatScheduler;
+        meterRegistry.gauge("comments.stream.subscribers", subscriberCount);
+        this.evictions = meterRegistry.counter("comments.stream.evictions");
+        this.rejections = meterRegistry.counter("comments.stream.rejections");
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(prefix);
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+
+    /**
+     * Подписывает клиента на изменения комментариев объявления.
+     *
+     * @param adId идентификатор объявления
+     * @return открытое соединение SSE
+     * @throws StreamLimitExceededException если достигнут лимит подписчиков объявления или узла
+     */
+    public SseEmitter subscribe(Integer adId) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            rejections.increment();
+            log.warn("Comment stream subscriber limit {} reached, rejecting subscriber of ad {}", maxSubscribers, adId);
+            throw new StreamLimitExceededException("Too many comment stream subscribers, retry later");
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(adId, emitter);
+        Set<Subscriber> added = subscribers.compute(adId, (id, set) -> {
+            Set<Subscriber> result = set != null ? set : ConcurrentHashMap.newKeySet();
+            if (result.size() < maxSubscribersPerAd) {
+                result.add(subscriber);
+            }
+            return result.isEmpty() ? null : result;
+        });
+        if (added == null || !added.contains(subscriber)) {
+            subscriberCount.decrementAndGet();
+            rejections.increment();
+            log.warn("Comment stream subscriber limit {} reached for ad {}", maxSubscribersPerAd, adId);
+            throw new StreamLimitExceededException("Too many comment stream subscribers for ad " + adId + ", retry later");
+        }
+        emitter.onCompletion(subscriber::detach);
+        emitter.onTimeout(subscriber::detach);
+        emitter.onError(e -> subscriber.detach());
+        try {
+            // Spring отправляет заголовки ответа только вместе с первым событием
+            emitter.send(SseEmitter.event().comment("subscribed"));
+        } catch (IOException e) {
+            subscriber.detach();
+            throw new UncheckedIOException(e);
+        }
+        log.debug("Comment stream subscriber added for ad {}", adId);
+        return emitter;
+    }
+
+    /**
+     * Количество подписчиков объявления.
+     */
+    public int subscriberCount(Integer adId) {
+        Set<Subscriber> set = subscribers.get(adId);
+        return set != null ? set.size() : 0;
+    }
+
+    @TransactionalEventListener
+    public void onCommentChanged(CommentChangedEvent event) {
+        Set<Subscriber> set = subscribers.get(event.getAdId());
+        if (set == null || set.isEmpty()) {
+            return;
+        }
+        Frame frame;
+        try {
+            frame = new Frame(String.valueOf(event.getComment().getPk()),
+                    event.getType().name().toLowerCase(Locale.ROOT),
+                    objectMapper.writeValueAsString(event.getComment()));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize comment {} of ad {}", event.getComment().getPk(), event.getAdId(), e);
+            return;
+        }
+        for (Subscriber subscriber : set) {
+            subscriber.offer(frame);
+        }
+    }
+
+    /**
+     * Закрывает соединения подписчиков удалённого объявления: новых комментариев к нему не будет,
+     * а повторная подписка клиента получит 404.
+     */
+    @TransactionalEventListener
+    public void onAdDeleted(AdDeletedEvent event) {
+        Set<Subscriber> set = subscribers.remove(event.getAdId());
+        if (set != null) {
+            set.forEach(Subscriber::close);
+            log.debug("Closed {} comment stream subscribers of deleted ad {}", set.size(), event.getAdId());
+        }
+    }
+
+    /**
+     * Ставит SSE-комментарий в очередь каждого подписчика, которому нечего отправить.
+     */
+    void heartbeat() {
+        subscribers.values().forEach(set -> set.forEach(Subscriber::heartbeat));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (heartbeatScheduler != null) {
+            heartbeatScheduler.shutdownNow();
+        }
+        subscribers.values().forEach(set -> set.forEach(Subscriber::close));
+        if (dispatcher instanceof ExecutorService) {
+            ((ExecutorService) dispatcher).shutdown();
+        }
+    }
+
+    /**
+     * Событие для отправки; {@link #HEARTBEAT} отправляется как SSE-комментарий.
+     */
+    private static final class Frame {
+
+        private final String id;
+        private final String name;
+        private final String json;
+
+        Frame(String id, String name, String json) {
+            this.id = id;
+            this.name = name;
+            this.json = json;
+        }
+    }
+
+    /**
+     * Соединение одного клиента с ограниченной очередью событий. С {@code SseEmitter} работает только
+     * поток пула, выполняющий {@link #run()}, поэтому медленная запись в сокет не блокирует публикацию.
+     */
+    private final class Subscriber implements Runnable {
+
+        private final Integer adId;
+        private final SseEmitter emitter;
+        private final Queue<Frame> queue = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean detached = new AtomicBoolean();
+        private volatile boolean closed;
+
+        Subscriber(Integer adId, SseEmitter emitter) {
+            this.adId = adId;
+            this.emitter = emitter;
+        }
+
+        void offer(Frame frame) {
+            if (closed) {
+                return;
+            }
+            if (!queue.offer(frame)) {
+                log.info("Comment stream subscriber of ad {} is too slow, disconnecting", adId);
+                evictions.increment();
+                close();
+                return;
+            }
+            schedule();
+        }
+
+        /**
+         * Ставит в очередь SSE-комментарий, если очередь пуста: подписчику с ожидающими событиями
+         * он не нужен.
+         */
+        void heartbeat() {
+            if (!closed && queue.isEmpty() && queue.offer(HEARTBEAT)) {
+                schedule();
+            }
+        }
+
+        /**
+         * Закрывает соединение: сам вызов {@code complete()} выполняется потоком пула.
+         */
+        void close() {
+            closed = true;
+            detach();
+            schedule();
+        }
+
+        /**
+         * Убирает подписчика из рассылки, не обращаясь к соединению.
+         */
+        void detach() {
+            closed = true;
+            if (detached.compareAndSet(false, true)) {
+                subscribers.computeIfPresent(adId, (id, set) -> {
+                    set.remove(this);
+                    return set.isEmpty() ? null : set;
+                });
+                subscriberCount.decrementAndGet();
+            }
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                dispatcher.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Frame frame;
+                while (!closed && (frame = queue.poll()) != null) {
+                    emitter.send(frame == HEARTBEAT
+                            ? SseEmitter.event().comment("heartbeat")
+                            : SseEmitter.event()
+                                    .id(frame.id)
+                                    .name(frame.name)
+                                    .data(frame.json, MediaType.APPLICATION_JSON));
+                }
+                if (closed) {
+                    queue.clear();
+                    emitter.complete();
+                    return;
+                }
+            } catch (IOException | IllegalStateException e) {
+                log.debug("Comment stream subscriber of ad {} disconnected: {}", adId, e.getMessage());
+                detach();
+                queue.clear();
+                return;
+            } finally {
+                scheduled.set(false);
+            }
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package ru.ac.secondhand.utils;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Содержимое файла, загруженное в буфер или последовательность буферов, в том числе прямых буферов вне кучи.
+ * <p>
+ * Каждый вызов {@link #getInputStream()} читает независимые копии позиций буферов,
+ * поэтому один ресурс отдаётся параллельными запросами. Имя файла используется
+ * для определения типа содержимого.
+ * </p>
+ */
+public class ByteBufferResource extends AbstractResource {
+
+    private final ByteBuffer[] buffers;
+    private final long length;
+    private final String filename;
+
+    /**
+     * @param buffer   содержимое от нулевой позиции до {@code limit}; ресурс его не изменяет
+     * @param filename имя исходного файла
+     */
+    public ByteBufferResource(ByteBuffer buffer, String filename) {
+        this(List.of(buffer), filename);
+    }
+
+    /**
+     * @param buffers  части содержимого по порядку, каждая от нулевой позиции до {@code limit}
+     * @param filename имя исходного файла
+     */
+    public ByteBufferResource(List<ByteBuffer> buffers, String filename) {
+        this.buffers = buffers.stream().map(ByteBuffer::asReadOnlyBuffer).toArray(ByteBuffer[]::new);
+        this.length = buffers.stream().mapToLong(ByteBuffer::limit).sum();
+        this.filename = filename;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        ByteBuffer[] duplicates = new ByteBuffer[buffers.length];
+        for (int i = 0; i < buffers.length; i++) {
+            duplicates[i] = buffers[i].duplicate();
+        }
+        return new BufferInputStream(duplicates);
+    }
+
+    @Override
+    public long contentLength() {
+        return length;
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Byte buffer resource [" + filename + "]";
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return this == other;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this);
+    }
+
+    private static final class BufferInputStream extends InputStream {
+
+        private final ByteBuffer[] buffers;
+        private int index;
+
+        BufferInputStream(ByteBuffer[] buffers) {
+            this.buffers = buffers;
+        }
+
+        /**
+         * Текущий буфер с непрочитанными байтами или {@code null}, если содержимое прочитано.
+         */
+        private ByteBuffer current() {
+            while (index < buffers.length && !buffers[index].hasRemaining()) {
+                index++;
+            }
+            return index < buffers.length ? buffers[index] : null;
+        }
+
+        @Override
+        public int read() {
+            ByteBuffer buffer = current();
+            return buffer != null ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            ByteBuffer buffer = current();
+            if (buffer == null) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = 0;
+            ByteBuffer buffer;
+            while (skipped < n && (buffer = current()) != null) {
+                int count = (int) Math.min(n - skipped, buffer.remaining());
+                buffer.position(buffer.position() + count);
+                skipped += count;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            ByteBuffer buffer = current();
+            return buffer != null ? buffer.remaining() : 0;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package ru.ac.secondhand.utils;
+
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Ответы с содержимым файлов, которые не копируют файл в память приложения.
+ * <p>
+ * Если контейнер поддерживает sendfile (атрибут запроса {@code org.apache.tomcat.sendfile.support}
+ * у коннектора NIO в Tomcat), ответ содержит только заголовки, а файл или его запрошенный диапазон
+ * передаёт в сокет сам Tomcat после завершения обработчика через {@code FileChannel.transferTo},
+ * без копирования в кучу. Иначе телом ответа становится {@code Resource}: Spring MVC читает его
+ * буфером фиксированного размера и сам обрабатывает заголовок {@code Range}, включая несколько
+ * диапазонов и ответ 416.
+ * </p>
+ * <p>
+ * На запрос {@code HEAD} возвращаются только заголовки с {@code Content-Length}, файл не читается.
+ * Условные запросы проверяются до вызова: ответ 304 не должен содержать атрибутов sendfile.
+ * </p>
+ */
+public final class FileResponses {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private FileResponses() {
+    }
+
+    /**
+     * Ответ 200 или 206 с содержимым файла.
+     *
+     * @param resource    файл
+     * @param contentType  тип содержимого
+     * @param cacheControl значение заголовка {@code Cache-Control} или {@code null}
+     * @param request      текущий запрос
+     * @return ответ с заголовками {@code Content-Length} и {@code Accept-Ranges}
+     * @throws IOException если размер файла не удалось определить
+     */
+    public static ResponseEntity<Resource> ok(Resource resource, MediaType contentType, String cacheControl,
+                                              HttpServletRequest request) throws IOException {
+        long length = resource.contentLength();
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            return headers(HttpStatus.OK, contentType, cacheControl).contentLength(length).build();
+        }
+        if (!resource.isFile() || !Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            return headers(HttpStatus.OK, contentType, cacheControl).body(resource);
+        }
+
+        ResponseEntity.BodyBuilder builder = headers(HttpStatus.OK, contentType, cacheControl);
+        long start = 0;
+        long end = length;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null) {
+            ResourceRegion region = singleRegion(range, resource);
+            if (region == null) {
+                // Несколько диапазонов и некорректный диапазон обрабатывает Spring MVC
+                return builder.body(resource);
+            }
+            start = region.getPosition();
+            end = start + region.getCount();
+            builder = headers(HttpStatus.PARTIAL_CONTENT, contentType, cacheControl)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + length);
+        }
+        request.setAttribute(SENDFILE_FILENAME, resource.getFile().getAbsolutePath());
+        request.setAttribute(SENDFILE_START, start);
+        request.setAttribute(SENDFILE_END, end);
+        return builder.contentLength(end - start).build();
+    }
+
+    private static ResponseEntity.BodyBuilder headers(HttpStatus status, MediaType contentType, String cacheControl) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(status)
+                .contentType(contentType)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes");
+        return cacheControl != null ? builder.header(HttpHeaders.CACHE_CONTROL, cacheControl) : builder;
+    }
+
+    private static ResourceRegion singleRegion(String range, Resource resource) {
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(range);
+            return ranges.size() == 1 ? ranges.get(0).toResourceRegion(resource) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -3,11 +3,20 @@ package ru.ac.secondhand.utils.GEH;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.access.AccessDeniedException;
+import org.springframework.validation.BindException;
+import org.springframework.validation.FieldError;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 import ru.ac.secondhand.exception.AdNotFoundException;
+import ru.ac.secondhand.exception.BatchSizeExceededException;
 import ru.ac.secondhand.exception.CommentNotFoundException;
+import ru.ac.secondhand.exception.ImageNotFoundException;
+import ru.ac.secondhand.exception.InvalidCsvException;
+import ru.ac.secondhand.exception.InvalidCursorException;
+import ru.ac.secondhand.exception.StreamLimitExceededException;
 import ru.ac.secondhand.exception.UserNotFoundException;
 
 import java.io.IOException;
@@ -35,12 +44,66 @@ public class GlobalExceptionHandler {
         return buildResponseEntity(apiMessageError);
     }
 
+    @ExceptionHandler(ImageNotFoundException.class)
+    public ResponseEntity<Object> handleImageNotFoundException(ImageNotFoundException e) {
+        ApiMessageError apiMessageError = new ApiMessageError(HttpStatus.NOT_FOUND, e.getMessage());
+        return buildResponseEntity(apiMessageError);
+    }
+
     @ExceptionHandler(UserNotFoundException.class)
     protected ResponseEntity<Object> handleUserNotFoundException(UserNotFoundException e) {
         ApiMessageError apiMessageError = new ApiMessageError(HttpStatus.NOT_FOUND, e.getMessage());
         return buildResponseEntity(apiMessageError);
     }
 
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<Object> handleInvalidCursorException(InvalidCursorException e) {
+        ApiMessageError apiMessageError = new ApiMessageError(HttpStatus.BAD_REQUEST, e.getMessage());
+        return buildResponseEntity(apiMessageError);
+    }
+
+    @ExceptionHandler(BatchSizeExceededException.class)
+    public ResponseEntity<Object> handleBatchSizeExceededException(BatchSizeExceededException e) {
+        ApiMessageError apiMessageError = new ApiMessageError(HttpStatus.BAD_REQUEST, e.getMessage());
+        return buildResponseEntity(apiMessageError);
+    }
+
+    @ExceptionHandler(InvalidCsvException.class)
+    public ResponseEntity<Object> handleInvalidCsvException(InvalidCsvException e) {
+        ApiMessageError apiMessageError = new ApiMessageError(HttpStatus.BAD_REQUEST, e.getMessage());
+        return buildResponseEntity(apiMessageError);
+    }
+
+    @ExceptionHandler(StreamLimitExceededException.class)
+    public ResponseEntity<Object> handleStreamLimitExceededException(StreamLimitExceededException e) {
+        ApiMessageError apiMessageError = new ApiMessageError(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        return buildResponseEntity(apiMessageError);
+    }
+
+    @ExceptionHandler(BindException.class)
+    public ResponseEntity<Object> handleBindException(BindException e) {
+        FieldError fieldError = e.getFieldError();
+        String message = fieldError != null
+                ? String.format("Invalid value [%s] for parameter [%s]", fieldError.getRejectedValue(), fieldError.getField())
+                : e.getMessage();
+        ApiMessageError apiMessageError = new ApiMessageError(HttpStatus.BAD_REQUEST, message);
+        return buildResponseEntity(apiMessageError);
+    }
+
+    @ExceptionHandler(MethodArgumentTypeMismatchException.class)
+    public ResponseEntity<Object> handleArgumentTypeMismatch(MethodArgumentTypeMismatchException e) {
+        ApiMessageError apiMessageError = new ApiMessageError(HttpStatus.BAD_REQUEST,
+                String.format("Invalid value [%s] for parameter [%s]", e.getValue(), e.getName()));
+        return buildResponseEntity(apiMessageError);
+    }
+
+    @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+    public ResponseEntity<Object> handleOptimisticLockingFailure(ObjectOptimisticLockingFailureException e) {
+        ApiMessageError apiMessageError = new ApiMessageError(HttpStatus.CONFLICT,
+                "The resource was modified concurrently, retry the request");
+        return buildResponseEntity(apiMessageError);
+    }
+
     @ExceptionHandler(AccessDeniedException.class)
     protected ResponseEntity<Object> handleAccessDenied(AccessDeniedException ex) {
         ApiMessageError apiMessageError = new ApiMessageError(HttpStatus.FORBIDDEN,
@@ -0,0 +1,39 @@
+package ru.ac.secondhand.utils;
+
+import ru.ac.secondhand.entity.Image;
+
+/**
+ * Адреса изображений для DTO.
+ * <p>
+ * Адрес {@code /image/{id}/{hash}} содержит хэш содержимого, поэтому при замене изображения меняется
+ * и адрес, а ответ по нему кэшируется браузером и прокси как неизменяемый. Для изображений,
+ * хэш которых ещё не вычислен, возвращается адрес {@code /image/{id}}, ответ по которому перепроверяется.
+ * </p>
+ */
+public final class ImageUrls {
+
+    private static final String PREFIX = "/image/";
+
+    private ImageUrls() {
+    }
+
+    /**
+     * @param id   идентификатор изображения или {@code null}
+     * @param hash хэш содержимого изображения или {@code null}
+     * @return адрес изображения или {@code null}, если изображения нет
+     */
+    public static String of(Integer id, String hash) {
+        if (id == null) {
+            return null;
+        }
+        return hash == null ? PREFIX + id : PREFIX + id + "/" + hash;
+    }
+
+    /**
+     * @param image изображение или {@code null}
+     * @return адрес изображения или {@code null}, если изображения нет
+     */
+    public static String of(Image image) {
+        return image == null ? null : of(image.getId(), image.getHash());
+    }
+}
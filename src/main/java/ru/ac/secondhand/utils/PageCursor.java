@@ -0,0 +1,162 @@
+package ru.ac.secondhand.utils;
+
+import ru.ac.secondhand.exception.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.stream.Collectors;
+
+/**
+ * Кодирование и декодирование курсоров для постраничной выборки по ключу (keyset pagination).
+ * <p>
+ * Курсор хранит вид выборки и значения ключа сортировки последней отданной записи
+ * (например, {@code (sort key, id)}). Для клиента курсор непрозрачен: это строка Base64URL,
+ * которую нужно передать обратно без изменений, чтобы получить следующую страницу.
+ * </p>
+ */
+public final class PageCursor {
+
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+    /**
+     * Наибольшее смещение в курсоре по смещению: глубже ранжированная выдача не листается,
+     * чтобы поиск не держал в памяти и не сортировал произвольно много результатов.
+     */
+    public static final int MAX_OFFSET = 10_000;
+
+    private static final String SEPARATOR = "|";
+
+    private PageCursor() {
+    }
+
+    /**
+     * Кодирует значения ключа последней записи страницы в непрозрачный курсор.
+     *
+     * @param kind   вид выборки, для которой выдан курсор
+     * @param values значения ключа сортировки последней записи
+     * @return строка курсора
+     */
+    public static String encode(String kind, Object... values) {
+        String payload = kind + SEPARATOR + Arrays.stream(values)
+                .map(String::valueOf)
+                .collect(Collectors.joining(SEPARATOR));
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Возвращает вид выборки, для которой выдан курсор.
+     *
+     * @param cursor строка курсора
+     * @return вид выборки
+     * @throws InvalidCursorException если курсор повреждён
+     */
+    public static String kind(String cursor) {
+        return payload(cursor).split("\\" + SEPARATOR, -1)[0];
+    }
+
+    /**
+     * Декодирует курсор и проверяет, что он выдан для той же выборки.
+     *
+     * @param cursor строка курсора
+     * @param kind   ожидаемый вид выборки
+     * @param size   ожидаемое количество значений ключа
+     * @return значения ключа сортировки
+     * @throws InvalidCursorException если курсор повреждён или выдан для другой выборки
+     */
+    public static String[] decode(String cursor, String kind, int size) {
+        String[] parts = payload(cursor).split("\\" + SEPARATOR, -1);
+        if (parts.length != size + 1 || !parts[0].equals(kind)) {
+            throw new InvalidCursorException(String.format("Invalid cursor [%s]", cursor));
+        }
+        return Arrays.copyOfRange(parts, 1, parts.length);
+    }
+
+    /**
+     * Декодирует курсор, ключ которого состоит из целых чисел.
+     *
+     * @param cursor строка курсора
+     * @param kind   ожидаемый вид выборки
+     * @param size   ожидаемое количество значений ключа
+     * @return значения ключа последней записи
+     * @throws InvalidCursorException если курсор повреждён или выдан для другой выборки
+     */
+    public static Integer[] decodeIntegers(String cursor, String kind, int size) {
+        String[] values = decode(cursor, kind, size);
+        Integer[] result = new Integer[values.length];
+        try {
+            for (int i = 0; i < values.length; i++) {
+                result[i] = Integer.valueOf(values[i]);
+            }
+        } catch (NumberFormatException e) {
+            throw new InvalidCursorException(String.format("Invalid cursor [%s]", cursor));
+        }
+        return result;
+    }
+
+    /**
+     * Декодирует курсор, ключом которого является один целочисленный идентификатор.
+     *
+     * @param cursor строка курсора
+     * @param kind   ожидаемый вид выборки
+     * @return идентификатор последней записи
+     * @throws InvalidCursorException если курсор повреждён или выдан для другой выборки
+     */
+    public static Integer decodeId(String cursor, String kind) {
+        return decodeIntegers(cursor, kind, 1)[0];
+    }
+
+    /**
+     * Декодирует курсор, ключом которого является смещение в упорядоченной выборке.
+     *
+     * @param cursor строка курсора или {@code null} для первой страницы
+     * @param kind   ожидаемый вид выборки
+     * @return смещение, с которого начинается страница
+     * @throws InvalidCursorException если курсор повреждён, выдан для другой выборки или смещение отрицательно
+     *                                или больше {@code MAX_OFFSET}
+     */
+    public static int decodeOffset(String cursor, String kind) {
+        if (cursor == null) {
+            return 0;
+        }
+        int offset = decodeId(cursor, kind);
+        if (offset < 0 || offset > MAX_OFFSET) {
+            throw new InvalidCursorException(String.format("Invalid cursor [%s]", cursor));
+        }
+        return offset;
+    }
+
+    /**
+     * Курсор следующей страницы выборки по смещению или {@code null}, если следующая страница
+     * лежит дальше {@code MAX_OFFSET}.
+     *
+     * @param kind   вид выборки
+     * @param offset смещение следующей страницы
+     * @return строка курсора или {@code null}
+     */
+    public static String encodeOffset(String kind, int offset) {
+        return offset <= MAX_OFFSET ? encode(kind, offset) : null;
+    }
+
+    private static String payload(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException(String.format("Invalid cursor [%s]", cursor));
+        }
+    }
+
+    /**
+     * Приводит запрошенный размер страницы к допустимому диапазону.
+     *
+     * @param size запрошенный размер страницы или {@code null}
+     * @return размер страницы от 1 до {@code MAX_PAGE_SIZE}
+     */
+    public static int pageSize(Integer size) {
+        if (size == null || size < 1) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.min(size, MAX_PAGE_SIZE);
+    }
+}
@@ -0,0 +1,41 @@
+package ru.ac.secondhand.utils;
+
+import lombok.Value;
+import org.springframework.web.context.request.WebRequest;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Версия представления ресурса для условных GET-запросов: значение строгого ETag
+ * и, если оно определено, время последнего изменения для заголовка Last-Modified.
+ */
+@Value
+public class ResourceVersion {
+
+    String etag;
+    LocalDateTime lastModified;
+
+    public ResourceVersion(String etag) {
+        this(etag, null);
+    }
+
+    public ResourceVersion(String etag, LocalDateTime lastModified) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Сверяет версию с заголовками {@code If-None-Match} и {@code If-Modified-Since} запроса
+     * и выставляет заголовки {@code ETag} и {@code Last-Modified} ответа.
+     *
+     * @param request текущий запрос
+     * @return {@code true}, если представление не изменилось и ответ уже переведён в статус 304
+     */
+    public boolean checkNotModified(WebRequest request) {
+        if (lastModified == null) {
+            return request.checkNotModified(etag);
+        }
+        return request.checkNotModified(etag, lastModified.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+}
@@ -0,0 +1,30 @@
+package ru.ac.secondhand.utils;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.List;
+
+/**
+ * Principal аутентифицированного пользователя.
+ * <p>
+ * Кроме логина, пароля и роли хранит идентификатор пользователя, выбранный тем же запросом, что и пароль
+ * при аутентификации. Это позволяет операциям записи ссылаться на пользователя по идентификатору
+ * без повторного чтения пользователя из базы. Изменяемые данные профиля (имя, аватар) principal
+ * не хранит: он живёт в сессии и устарел бы после их изменения.
+ * </p>
+ */
+@Getter
+@EqualsAndHashCode(callSuper = true)
+public class SecurityUser extends User {
+
+    private final Integer id;
+
+    public SecurityUser(ru.ac.secondhand.entity.User user) {
+        super(user.getUsername(), user.getPassword(),
+                List.of(new SimpleGrantedAuthority("ROLE_" + user.getRole().name())));
+        this.id = user.getId();
+    }
+}
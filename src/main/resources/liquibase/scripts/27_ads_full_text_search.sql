@@ -0,0 +1,10 @@
+-- liquibase formatted sql
+
+-- changeset secondhand:27
+ALTER TABLE ads
+    ADD COLUMN search_vector TSVECTOR GENERATED ALWAYS AS (
+        setweight(to_tsvector('russian', coalesce(title, '')), 'A') ||
+        setweight(to_tsvector('russian', coalesce(description, '')), 'B')
+    ) STORED;
+
+CREATE INDEX ads_search_vector_idx ON ads USING GIN (search_vector);
@@ -0,0 +1,4 @@
+-- liquibase formatted sql
+
+-- changeset secondhand:28
+CREATE INDEX ads_price_id_idx ON ads (price, id);
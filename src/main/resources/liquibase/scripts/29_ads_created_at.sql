@@ -0,0 +1,9 @@
+-- liquibase formatted sql
+
+-- changeset secondhand:29
+ALTER TABLE ads
+    ADD COLUMN created_at TIMESTAMP NOT NULL DEFAULT now();
+
+CREATE INDEX ads_created_at_id_idx ON ads (created_at DESC, id DESC);
+
+CREATE INDEX ads_user_id_created_at_id_idx ON ads (user_id, created_at DESC, id DESC);
@@ -0,0 +1,6 @@
+-- liquibase formatted sql
+
+-- changeset secondhand:30
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX ads_title_trgm_idx ON ads USING GIN (title gin_trgm_ops);
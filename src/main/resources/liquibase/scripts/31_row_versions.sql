@@ -0,0 +1,18 @@
+-- liquibase formatted sql
+
+-- changeset secondhand:31
+ALTER TABLE ads
+    ADD COLUMN version    INTEGER   NOT NULL DEFAULT 0,
+    ADD COLUMN updated_at TIMESTAMP NOT NULL DEFAULT now();
+
+UPDATE ads SET updated_at = created_at;
+
+ALTER TABLE comments
+    ADD COLUMN version    INTEGER   NOT NULL DEFAULT 0,
+    ADD COLUMN updated_at TIMESTAMP NOT NULL DEFAULT now();
+
+UPDATE comments SET updated_at = created_at WHERE created_at IS NOT NULL;
+
+ALTER TABLE users
+    ADD COLUMN version    INTEGER   NOT NULL DEFAULT 0,
+    ADD COLUMN updated_at TIMESTAMP NOT NULL DEFAULT now();
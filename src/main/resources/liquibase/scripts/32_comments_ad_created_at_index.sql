@@ -0,0 +1,10 @@
+-- liquibase formatted sql
+
+-- changeset secondhand:32
+UPDATE comments SET created_at = updated_at WHERE created_at IS NULL;
+
+ALTER TABLE comments
+    ALTER COLUMN created_at SET NOT NULL,
+    ALTER COLUMN created_at SET DEFAULT now();
+
+CREATE INDEX comments_ad_id_created_at_id_idx ON comments (ad_id, created_at DESC, id DESC);
@@ -0,0 +1,14 @@
+-- liquibase formatted sql
+
+-- changeset secondhand:33
+ALTER TABLE ads
+    ADD COLUMN comments_count INTEGER NOT NULL DEFAULT 0;
+
+UPDATE ads a
+SET comments_count = (SELECT count(*) FROM comments c WHERE c.ad_id = a.id);
+
+ALTER TABLE users
+    ADD COLUMN ads_count INTEGER NOT NULL DEFAULT 0;
+
+UPDATE users u
+SET ads_count = (SELECT count(*) FROM ads a WHERE a.user_id = u.id);
@@ -0,0 +1,6 @@
+-- liquibase formatted sql
+
+-- changeset secondhand:34
+ALTER TABLE ads
+    ALTER COLUMN id SET GENERATED BY DEFAULT,
+    ALTER COLUMN id SET INCREMENT BY 50;
@@ -0,0 +1,14 @@
+-- liquibase formatted sql
+
+-- changeset secondhand:35
+ALTER TABLE comments
+    DROP CONSTRAINT fk_ads_id,
+    ADD CONSTRAINT fk_ads_id FOREIGN KEY (ad_id) REFERENCES ads(id) ON DELETE CASCADE,
+    DROP CONSTRAINT fk_users_id,
+    ADD CONSTRAINT fk_users_id FOREIGN KEY (author_id) REFERENCES users(id) ON DELETE CASCADE;
+
+ALTER TABLE ads
+    DROP CONSTRAINT fk_users_id,
+    ADD CONSTRAINT fk_users_id FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE;
+
+CREATE INDEX comments_author_id_idx ON comments (author_id);
@@ -0,0 +1,5 @@
+-- liquibase formatted sql
+
+-- changeset secondhand:36
+ALTER TABLE image
+    ADD COLUMN hash VARCHAR(64);
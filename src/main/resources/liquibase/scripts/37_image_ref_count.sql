@@ -0,0 +1,7 @@
+-- liquibase formatted sql
+
+-- changeset secondhand:37
+ALTER TABLE image
+    ADD COLUMN ref_count INT NOT NULL DEFAULT 1;
+
+CREATE INDEX image_hash_idx ON image (hash);
@@ -0,0 +1,98 @@
+package ru.ac.secondhand.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.ac.secondhand.dto.ad.AdFilter;
+import ru.ac.secondhand.dto.ad.AdSort;
+import ru.ac.secondhand.dto.ad.Ads;
+import ru.ac.secondhand.dto.ad.ExtendedAd;
+import ru.ac.secondhand.event.AdCommentsChangedEvent;
+import ru.ac.secondhand.event.AdDeletedEvent;
+import ru.ac.secondhand.event.AdSavedEvent;
+import ru.ac.secondhand.event.UserUpdatedEvent;
+import ru.ac.secondhand.utils.TestUtils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdResponseCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AdResponseCache cache = new AdResponseCache(registry);
+
+    @Test
+    void getFeedShouldLoadOncePerKey() {
+        AtomicInteger loads = new AtomicInteger();
+        AdFilter filter = new AdFilter(null, 1000, AdSort.PRICE_ASC);
+
+        cache.getFeed(filter, null, 20, () -> load(loads, TestUtils.getAds()));
+        cache.getFeed(new AdFilter(null, 1000, AdSort.PRICE_ASC), null, 20, () -> load(loads, TestUtils.getAds()));
+        cache.getFeed(filter, null, 10, () -> load(loads, TestUtils.getAds()));
+
+        assertThat(loads).hasValue(2);
+        assertThat(registry.get("cache.gets").tag("cache", "ads.feed").tag("result", "hit")
+                .functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void adSavedEventShouldEvictDetailsAndFeed() {
+        AtomicInteger loads = new AtomicInteger();
+        ExtendedAd ad = TestUtils.getExtendedAd();
+        AdFilter filter = new AdFilter();
+
+        cache.getDetails(ad.getPk(), () -> load(loads, ad));
+        cache.getFeed(filter, null, 20, () -> load(loads, TestUtils.getAds()));
+        cache.onAdSaved(new AdSavedEvent(TestUtils.getAdDTO(), ad.getDescription()));
+        cache.getDetails(ad.getPk(), () -> load(loads, ad));
+        cache.getFeed(filter, null, 20, () -> load(loads, TestUtils.getAds()));
+
+        assertThat(loads).hasValue(4);
+    }
+
+    @Test
+    void adDeletedEventShouldKeepOtherAdsDetails() {
+        AtomicInteger loads = new AtomicInteger();
+        ExtendedAd ad = TestUtils.getExtendedAd();
+
+        cache.getDetails(ad.getPk(), () -> load(loads, ad));
+        cache.onAdDeleted(new AdDeletedEvent(ad.getPk() + 1));
+        cache.getDetails(ad.getPk(), () -> load(loads, ad));
+
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void adCommentsChangedEventShouldEvictOnlyDetails() {
+        AtomicInteger loads = new AtomicInteger();
+        ExtendedAd ad = TestUtils.getExtendedAd();
+        AdFilter filter = new AdFilter();
+
+        cache.getDetails(ad.getPk(), () -> load(loads, ad));
+        cache.getFeed(filter, null, 20, () -> load(loads, TestUtils.getAds()));
+        cache.onAdCommentsChanged(new AdCommentsChangedEvent(ad.getPk()));
+        cache.getDetails(ad.getPk(), () -> load(loads, ad));
+        cache.getFeed(filter, null, 20, () -> load(loads, TestUtils.getAds()));
+
+        assertThat(loads).hasValue(3);
+    }
+
+    @Test
+    void userUpdatedEventShouldEvictAuthorsAds() {
+        AtomicInteger loads = new AtomicInteger();
+        ExtendedAd ad = TestUtils.getExtendedAd();
+
+        cache.getDetails(ad.getPk(), () -> load(loads, ad));
+        cache.onUserUpdated(new UserUpdatedEvent(1, "someone@gmail.com"));
+        cache.getDetails(ad.getPk(), () -> load(loads, ad));
+        cache.onUserUpdated(new UserUpdatedEvent(1, ad.getEmail()));
+        cache.getDetails(ad.getPk(), () -> load(loads, ad));
+
+        assertThat(loads).hasValue(2);
+    }
+
+    private static <T> T load(AtomicInteger loads, T value) {
+        loads.incrementAndGet();
+        return value;
+    }
+}
@@ -0,0 +1,114 @@
+package ru.ac.secondhand.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.unit.DataSize;
+import ru.ac.secondhand.image.ImageFile;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImageContentCacheTest {
+
+    private static final String HASH = "84d89877f0d4041efb6bf91a16f0248f2fd573e6af05c19f96bedb9f882f7882";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ImageContentCache cache =
+            new ImageContentCache(registry, DataSize.ofKilobytes(64), DataSize.ofBytes(16));
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void putShouldServeContentFromMemory() throws Exception {
+        Path file = Files.write(tempDir.resolve("image.png"), "0123456789".getBytes());
+
+        ImageFile cached = cache.put(1, new ImageFile(new FileSystemResource(file), HASH, null, false));
+        Files.delete(file);
+
+        assertThat(cache.get(1, null)).isSameAs(cached);
+        assertThat(cached.getResource().isFile()).isFalse();
+        assertThat(cached.getResource().getFilename()).isEqualTo("image.png");
+        assertThat(cached.getResource().contentLength()).isEqualTo(10);
+        assertThat(cached.getEtag()).isEqualTo(HASH);
+        for (int i = 0; i < 2; i++) {
+            try (InputStream in = cached.getResource().getInputStream()) {
+                assertThat(in.skip(2)).isEqualTo(2);
+                assertThat(StreamUtils.copyToString(in, StandardCharsets.US_ASCII)).isEqualTo("23456789");
+            }
+        }
+        assertThat(registry.get("images.cache.resident.bytes").gauge().value()).isEqualTo(DirectBufferPool.PAGE_SIZE);
+        assertThat(registry.get("images.cache.hit.ratio").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void largeAndPendingFilesShouldNotBeCached() throws Exception {
+        Path large = Files.write(tempDir.resolve("large.png"), new byte[17]);
+        Path small = Files.write(tempDir.resolve("small.png"), new byte[1]);
+        ImageFile largeFile = new ImageFile(new FileSystemResource(large), HASH, null, false);
+        ImageFile pendingFile = new ImageFile(new FileSystemResource(small), HASH, null, true);
+
+        assertThat(cache.put(1, largeFile)).isSameAs(largeFile);
+        assertThat(cache.put(2, pendingFile)).isSameAs(pendingFile);
+
+        assertThat(cache.get(1, null)).isNull();
+        assertThat(cache.get(2, null)).isNull();
+        assertThat(registry.get("images.cache.resident.bytes").gauge().value()).isZero();
+        assertThat(registry.get("images.cache.direct.bytes").gauge().value()).isZero();
+    }
+
+    @Test
+    void invalidateShouldRemoveOriginalAndRenditions() throws Exception {
+        Path file = Files.write(tempDir.resolve("image.png"), new byte[4]);
+        cache.put(1, new ImageFile(new FileSystemResource(file), HASH, null, false));
+        cache.put(1, new ImageFile(new FileSystemResource(file), HASH, 160, false));
+        cache.put(2, new ImageFile(new FileSystemResource(file), HASH, null, false));
+
+        cache.invalidate(1);
+
+        assertThat(cache.get(1, null)).isNull();
+        assertThat(cache.get(1, 160)).isNull();
+        assertThat(cache.get(2, null)).isNotNull();
+    }
+
+    @Test
+    void removedEntriesShouldReturnPagesToPool() throws Exception {
+        Path file = Files.write(tempDir.resolve("image.png"), "0123456789".getBytes());
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(cache.put(i, new ImageFile(new FileSystemResource(file), HASH, null, false))
+                    .getResource().isFile()).isFalse();
+            cache.invalidate(i);
+        }
+
+        assertThat(registry.get("images.cache.direct.bytes").gauge().value()).isEqualTo(64 * 1024);
+    }
+
+    @Test
+    void openStreamShouldKeepContentOfRemovedEntry() throws Exception {
+        Path file = Files.write(tempDir.resolve("image.png"), "0123456789".getBytes());
+        Path other = Files.write(tempDir.resolve("other.png"), "abcdefghij".getBytes());
+        ImageFile cached = cache.put(1, new ImageFile(new FileSystemResource(file), HASH, null, false));
+
+        try (InputStream in = cached.getResource().getInputStream()) {
+            cache.invalidate(1);
+            for (int i = 2; i < 6; i++) {
+                cache.put(i, new ImageFile(new FileSystemResource(other), HASH, null, false));
+            }
+            assertThat(StreamUtils.copyToString(in, StandardCharsets.US_ASCII)).isEqualTo("0123456789");
+        }
+        assertThat(cache.get(5, null)).isNull();
+
+        Files.write(file, "from disk".getBytes());
+        try (InputStream in = cached.getResource().getInputStream()) {
+            assertThat(StreamUtils.copyToString(in, StandardCharsets.US_ASCII)).isEqualTo("from disk");
+        }
+    }
+}
@@ -9,6 +9,7 @@ import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabas
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.security.test.context.support.WithAnonymousUser;
@@ -18,21 +19,31 @@ import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
+import ru.ac.secondhand.dto.ad.AdFilter;
+import ru.ac.secondhand.dto.ad.AdImportReport;
+import ru.ac.secondhand.dto.ad.AdImportResult;
 import ru.ac.secondhand.dto.ad.Ads;
 import ru.ac.secondhand.dto.ad.CreateOrUpdateAd;
+import ru.ac.secondhand.dto.ad.ExtendedAds;
 import ru.ac.secondhand.exception.AdNotFoundException;
+import ru.ac.secondhand.exception.InvalidCsvException;
 import ru.ac.secondhand.secutity.WithMockCustomUser;
+import ru.ac.secondhand.service.AdImportService;
 import ru.ac.secondhand.service.AdService;
+import ru.ac.secondhand.utils.ResourceVersion;
 import ru.ac.secondhand.utils.TestUtils;
 
 import java.util.Collections;
+import java.util.List;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -48,10 +59,13 @@ class AdsControllerTest {
     @MockBean
     AdService adService;
 
+    @MockBean
+    AdImportService adImportService;
+
     @Test
     @WithAnonymousUser
     void getAllIsOKWithoutAuthorize() throws Exception {
-        BDDMockito.given(adService.getAll()).willReturn(TestUtils.getAds());
+        BDDMockito.given(adService.getAll(any(AdFilter.class), isNull(), isNull())).willReturn(TestUtils.getAds());
 
         mockMvc.perform(MockMvcRequestBuilders.get("/ads"))
                 .andExpect(status().isOk())
@@ -63,7 +77,7 @@ class AdsControllerTest {
     @Test
     @WithAnonymousUser
     void getAllIsOKWithoutAuthorizeShouldReturnEmptyAds() throws Exception {
-        BDDMockito.given(adService.getAll()).willReturn(new Ads(0, Collections.emptyList()));
+        BDDMockito.given(adService.getAll(any(AdFilter.class), isNull(), isNull())).willReturn(new Ads(0, Collections.emptyList()));
 
         mockMvc.perform(MockMvcRequestBuilders.get("/ads"))
                 .andExpect(MockMvcResultMatchers.status().isOk())
@@ -76,13 +90,62 @@ class AdsControllerTest {
     @WithMockCustomUser
     void getAdInfoIsOkReturnExtendedAd() throws Exception {
         Integer adId = TestUtils.AD_ID;
+        BDDMockito.given(adService.getAdVersion(adId)).willReturn(new ResourceVersion("1"));
         BDDMockito.given(adService.getAdInfo(adId)).willReturn(TestUtils.getExtendedAd());
 
         mockMvc.perform(MockMvcRequestBuilders.get("/ads/{id}", adId))
                 .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1\""))
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.pk", is(adId)))
-                .andExpect(jsonPath("$.*", hasSize(9)));
+                .andExpect(jsonPath("$.commentsCount", is(TestUtils.COMMENTS_COUNT)))
+                .andExpect(jsonPath("$.authorAdsCount", is(TestUtils.AUTHOR_ADS_COUNT)))
+                .andExpect(jsonPath("$.*", hasSize(11)));
+    }
+
+    @Test
+    @WithMockCustomUser
+    void getAdsInfoIsOk() throws Exception {
+        ExtendedAds ads = new ExtendedAds(1, List.of(TestUtils.getExtendedAd()), List.of(2));
+        BDDMockito.given(adService.getAdsInfo(List.of(TestUtils.AD_ID, 2))).willReturn(ads);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/ads").param("ids", TestUtils.AD_ID + ",2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count", is(1)))
+                .andExpect(jsonPath("$.results[0].pk", is(TestUtils.AD_ID)))
+                .andExpect(jsonPath("$.missing[0]", is(2)));
+    }
+
+    @Test
+    @WithAnonymousUser
+    void getAdsInfoIsUnauthorized() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/ads").param("ids", "1,2"))
+                .andExpect(status().isUnauthorized());
+
+        Mockito.verify(adService, Mockito.never()).getAdsInfo(any());
+    }
+
+    @Test
+    @WithMockCustomUser
+    void getAdsInfoIsBadRequestForInvalidId() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/ads").param("ids", "1,abc"))
+                .andExpect(status().isBadRequest());
+
+        Mockito.verify(adService, Mockito.never()).getAdsInfo(any());
+    }
+
+    @Test
+    @WithMockCustomUser
+    void getAdInfoIsNotModified() throws Exception {
+        Integer adId = TestUtils.AD_ID;
+        BDDMockito.given(adService.getAdVersion(adId)).willReturn(new ResourceVersion("1"));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/ads/{id}", adId)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"1\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        Mockito.verify(adService, Mockito.never()).getAdInfo(anyInt());
     }
 
     @Test
@@ -100,7 +163,7 @@ class AdsControllerTest {
     @WithMockCustomUser
     void getAdInfoNotFoundAd() throws Exception {
         Integer adId = TestUtils.AD_ID;
-        BDDMockito.willThrow(new AdNotFoundException("Ad not found for id: " + adId)).given(adService).getAdInfo(adId);
+        BDDMockito.willThrow(new AdNotFoundException("Ad not found for id: " + adId)).given(adService).getAdVersion(adId);
 
         mockMvc.perform(MockMvcRequestBuilders.get("/ads/{id}", adId))
                 .andExpect(status().isNotFound())
@@ -111,7 +174,7 @@ class AdsControllerTest {
     @Test
     @WithMockCustomUser
     void getUsersAdsIsOk() throws Exception {
-        BDDMockito.given(adService.getUsersAds()).willReturn(TestUtils.getAds());
+        BDDMockito.given(adService.getUsersAds(null)).willReturn(TestUtils.getAds());
 
         mockMvc.perform(MockMvcRequestBuilders.get("/ads/me"))
                 .andExpect(status().isOk())
@@ -123,7 +186,7 @@ class AdsControllerTest {
     @Test
     @WithMockCustomUser
     void getUsersAdsIsOKShouldReturnEmptyAds() throws Exception {
-        BDDMockito.given(adService.getUsersAds()).willReturn(new Ads(0, Collections.emptyList()));
+        BDDMockito.given(adService.getUsersAds(null)).willReturn(new Ads(0, Collections.emptyList()));
 
         mockMvc.perform(MockMvcRequestBuilders.get("/ads/me"))
                 .andExpect(status().isOk())
@@ -138,7 +201,7 @@ class AdsControllerTest {
         mockMvc.perform(MockMvcRequestBuilders.get("/ads/me"))
                 .andExpect(status().isUnauthorized());
 
-        Mockito.verify(adService, Mockito.never()).getUsersAds();
+        Mockito.verify(adService, Mockito.never()).getUsersAds(any());
     }
 
     @Test
@@ -172,6 +235,60 @@ class AdsControllerTest {
                 .andExpect(status().isUnauthorized());
     }
 
+    @Test
+    @WithMockUser
+    void importAdsIsOk() throws Exception {
+        AdImportReport report = new AdImportReport(1, 1, List.of(
+                new AdImportResult(1, TestUtils.AD_ID, null),
+                new AdImportResult(2, null, "Empty row")));
+        BDDMockito.given(adImportService.importAds(any())).willReturn(report);
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/ads/import")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(TestUtils.asJsonString(List.of(TestUtils.getCreateOrUpdateAd()))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported", is(1)))
+                .andExpect(jsonPath("$.failed", is(1)))
+                .andExpect(jsonPath("$.results[0].pk", is(TestUtils.AD_ID)))
+                .andExpect(jsonPath("$.results[0].*", hasSize(2)))
+                .andExpect(jsonPath("$.results[1].error", is("Empty row")));
+    }
+
+    @Test
+    @WithAnonymousUser
+    void searchIsBadRequestForNonFiniteThreshold() throws Exception {
+        for (String threshold : new String[]{"NaN", "Infinity"}) {
+            mockMvc.perform(MockMvcRequestBuilders.get("/ads/search")
+                            .param("q", "велосипед")
+                            .param("fuzzy", "true")
+                            .param("threshold", threshold))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.message", is("Invalid value [" + threshold + "] for parameter [threshold]")));
+        }
+    }
+
+    @Test
+    @WithMockUser
+    void importAdsCsvReturnsBadRequestForInvalidCsv() throws Exception {
+        BDDMockito.given(adImportService.importCsv(any())).willThrow(new InvalidCsvException("CSV column [price] is missing"));
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/ads/import")
+                        .contentType("text/csv")
+                        .content("title,description\n"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @WithAnonymousUser
+    void importAdsIsUnauthorized() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/ads/import")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[]"))
+                .andExpect(status().isUnauthorized());
+
+        Mockito.verify(adImportService, Mockito.never()).importAds(any());
+    }
+
     @Test
     @WithMockCustomUser
     void updateUsersAdReturnOK() throws Exception {
@@ -0,0 +1,194 @@
+package ru.ac.secondhand.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.BDDMockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.transaction.annotation.Transactional;
+import ru.ac.secondhand.exception.ImageNotFoundException;
+import ru.ac.secondhand.image.ImageFile;
+import ru.ac.secondhand.service.ImageService;
+import ru.ac.secondhand.utils.ByteBufferResource;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional
+class ImageControllerTest {
+
+    private static final Integer IMAGE_ID = 1;
+    private static final String CONTENT = "0123456789";
+    private static final String HASH = "84d89877f0d4041efb6bf91a16f0248f2fd573e6af05c19f96bedb9f882f7882";
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @MockBean
+    ImageService imageService;
+
+    @TempDir
+    Path tempDir;
+
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        file = Files.write(tempDir.resolve("image.png"), CONTENT.getBytes(StandardCharsets.UTF_8));
+        BDDMockito.given(imageService.getImage(IMAGE_ID)).willReturn(new FileSystemResource(file));
+        BDDMockito.given(imageService.getImageFile(IMAGE_ID, null))
+                .willReturn(new ImageFile(new FileSystemResource(file), HASH, null, false));
+    }
+
+    @Test
+    void getImageStreamsWholeFile() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/image/{id}", IMAGE_ID))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.IMAGE_PNG))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, CONTENT.length()))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + HASH + "\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"))
+                .andExpect(content().string(CONTENT));
+    }
+
+    @Test
+    void getImageByHashIsImmutable() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/image/{id}/{hash}", IMAGE_ID, HASH))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + HASH + "\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, public, immutable"))
+                .andExpect(content().string(CONTENT));
+    }
+
+    @Test
+    void getImageByStaleHashReturnsNotFound() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/image/{id}/{hash}", IMAGE_ID, "0" + HASH.substring(1)))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void getImageWithMatchingETagReturnsNotModified() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/image/{id}/{hash}", IMAGE_ID, HASH)
+                        .requestAttr("org.apache.tomcat.sendfile.support", true)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"" + HASH + "\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, public, immutable"))
+                .andExpect(request().attribute("org.apache.tomcat.sendfile.filename", nullValue()))
+                .andExpect(content().string(""));
+
+    }
+
+    @Test
+    void getImageReturnsReadyRenditionAsImmutable() throws Exception {
+        Path rendition = Files.write(tempDir.resolve("image_w160.png"), "small".getBytes(StandardCharsets.UTF_8));
+        BDDMockito.given(imageService.getImageFile(IMAGE_ID, 100))
+                .willReturn(new ImageFile(new FileSystemResource(rendition), HASH, 160, false));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/image/{id}/{hash}", IMAGE_ID, HASH).param("w", "100"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + HASH + "-w160\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, public, immutable"))
+                .andExpect(content().string("small"));
+    }
+
+    @Test
+    void getImageFallsBackToOriginalWhileRenditionIsPending() throws Exception {
+        BDDMockito.given(imageService.getImageFile(IMAGE_ID, 100))
+                .willReturn(new ImageFile(new FileSystemResource(file), HASH, null, true));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/image/{id}/{hash}", IMAGE_ID, HASH).param("w", "100"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + HASH + "\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"))
+                .andExpect(content().string(CONTENT));
+    }
+
+    @Test
+    void getImageReturnsRequestedRange() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/image/{id}", IMAGE_ID)
+                        .header(HttpHeaders.RANGE, "bytes=2-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+                .andExpect(content().string("2345"));
+    }
+
+    @Test
+    void getImageServesCachedContentWithoutSendfile() throws Exception {
+        ByteBuffer content = ByteBuffer.allocateDirect(CONTENT.length()).put(CONTENT.getBytes(StandardCharsets.UTF_8));
+        content.flip();
+        BDDMockito.given(imageService.getImageFile(IMAGE_ID, null))
+                .willReturn(new ImageFile(new ByteBufferResource(content, "image.png"), HASH, null, false));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/image/{id}/{hash}", IMAGE_ID, HASH)
+                        .requestAttr("org.apache.tomcat.sendfile.support", true)
+                        .header(HttpHeaders.RANGE, "bytes=2-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().contentType(MediaType.IMAGE_PNG))
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+                .andExpect(request().attribute("org.apache.tomcat.sendfile.filename", nullValue()))
+                .andExpect(content().string("2345"));
+    }
+
+    @Test
+    void getImageReturnsRangeNotSatisfiable() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/image/{id}", IMAGE_ID)
+                        .header(HttpHeaders.RANGE, "bytes=20-30"))
+                .andExpect(status().isRequestedRangeNotSatisfiable());
+    }
+
+    @Test
+    void headImageReturnsLengthWithoutBody() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.head("/image/{id}", IMAGE_ID))
+                .andExpect(status().isOk())
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, CONTENT.length()))
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void getImageHandsRangeToSendfile() throws Exception {
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/image/{id}", IMAGE_ID)
+                        .requestAttr("org.apache.tomcat.sendfile.support", true)
+                        .header(HttpHeaders.RANGE, "bytes=4-"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 4-9/10"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 6))
+                .andExpect(content().string(""))
+                .andReturn();
+
+        assertEquals(file.toFile().getAbsolutePath(),
+                result.getRequest().getAttribute("org.apache.tomcat.sendfile.filename"));
+        assertEquals(4L, result.getRequest().getAttribute("org.apache.tomcat.sendfile.start"));
+        assertEquals(10L, result.getRequest().getAttribute("org.apache.tomcat.sendfile.end"));
+    }
+
+    @Test
+    void getImageReturnsNotFound() throws Exception {
+        BDDMockito.given(imageService.getImageFile(2, null)).willThrow(new ImageNotFoundException("Image [2] not found"));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/image/{id}", 2))
+                .andExpect(status().isNotFound());
+    }
+}
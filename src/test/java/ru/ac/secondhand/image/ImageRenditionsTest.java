@@ -0,0 +1,149 @@
+package ru.ac.secondhand.image;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.ac.secondhand.event.ImageSavedEvent;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImageRenditionsTest {
+
+    private static final List<Integer> WIDTHS = List.of(320, 160);
+    private static final long MAX_PIXELS = 1_000_000;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final ImageRenditions renditions = new ImageRenditions(registry, WIDTHS, MAX_PIXELS, tasks::add);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void requestedWidthShouldBeRoundedUpToConfiguredWidth() {
+        assertThat(renditions.select(100)).isEqualTo(160);
+        assertThat(renditions.select(160)).isEqualTo(160);
+        assertThat(renditions.select(161)).isEqualTo(320);
+        assertThat(renditions.select(1000)).isNull();
+        assertThat(renditions.select(0)).isNull();
+        assertThat(renditions.select(null)).isNull();
+    }
+
+    @Test
+    void renditionShouldBeStoredNextToOriginal() {
+        assertThat(renditions.path("/images/ab.png", 160)).isEqualTo(Paths.get("/images/ab_w160.png"));
+        assertThat(renditions.path("/images.d/ab", 160)).isEqualTo(Paths.get("/images.d/ab_w160"));
+    }
+
+    @Test
+    void savedImageShouldBeRenderedInBackground() throws Exception {
+        Path original = writeImage("original.png", 800, 600);
+
+        renditions.onImageSaved(new ImageSavedEvent(1, original.toString()));
+        renditions.onImageSaved(new ImageSavedEvent(1, original.toString()));
+
+        assertThat(tasks).hasSize(1);
+        assertThat(renditions.find(original.toString(), 160)).isNull();
+        assertThat(tasks).hasSize(1);
+        tasks.remove(0).run();
+
+        BufferedImage small = ImageIO.read(renditions.find(original.toString(), 160).toFile());
+        assertThat(small.getWidth()).isEqualTo(160);
+        assertThat(small.getHeight()).isEqualTo(120);
+        assertThat(ImageIO.read(renditions.find(original.toString(), 320).toFile()).getWidth()).isEqualTo(320);
+        assertThat(registry.get("images.renditions.created").counter().count()).isEqualTo(2);
+        assertThat(registry.get("images.renditions.pending").gauge().value()).isZero();
+        assertThat(tasks).isEmpty();
+    }
+
+    @Test
+    void narrowOriginalShouldBeLinkedInsteadOfUpscaled() throws Exception {
+        Path original = writeImage("narrow.png", 200, 100);
+
+        renditions.onImageSaved(new ImageSavedEvent(1, original.toString()));
+        tasks.remove(0).run();
+
+        assertThat(ImageIO.read(renditions.find(original.toString(), 160).toFile()).getWidth()).isEqualTo(160);
+        Path wide = renditions.find(original.toString(), 320);
+        assertThat(Files.mismatch(wide, original)).isEqualTo(-1);
+    }
+
+    @Test
+    void oversizedOriginalShouldBeLinkedWithoutDecoding() throws Exception {
+        Path original = writeImage("huge.png", 2000, 600);
+
+        renditions.onImageSaved(new ImageSavedEvent(1, original.toString()));
+        tasks.remove(0).run();
+
+        assertThat(Files.mismatch(renditions.find(original.toString(), 160), original)).isEqualTo(-1);
+        assertThat(Files.mismatch(renditions.find(original.toString(), 320), original)).isEqualTo(-1);
+        assertThat(tasks).isEmpty();
+    }
+
+    @Test
+    void unsupportedOriginalShouldBeLinkedAndNotRequeued() throws Exception {
+        Path original = Files.write(tempDir.resolve("broken.png"), "not an image".getBytes());
+
+        renditions.onImageSaved(new ImageSavedEvent(1, original.toString()));
+        tasks.remove(0).run();
+
+        assertThat(Files.mismatch(renditions.find(original.toString(), 160), original)).isEqualTo(-1);
+        assertThat(tasks).isEmpty();
+        assertThat(registry.get("images.renditions.pending").gauge().value()).isZero();
+    }
+
+    @Test
+    void corruptOriginalShouldBeLinkedAndNotRequeued() throws Exception {
+        Path image = writeImage("image.png", 800, 600);
+        Path original = Files.write(tempDir.resolve("corrupt.png"), Arrays.copyOf(Files.readAllBytes(image), 40));
+
+        renditions.onImageSaved(new ImageSavedEvent(1, original.toString()));
+        tasks.remove(0).run();
+
+        assertThat(Files.mismatch(renditions.find(original.toString(), 160), original)).isEqualTo(-1);
+        assertThat(Files.mismatch(renditions.find(original.toString(), 320), original)).isEqualTo(-1);
+        assertThat(tasks).isEmpty();
+    }
+
+    @Test
+    void fullQueueShouldDropTask() throws Exception {
+        ImageRenditions rejecting = new ImageRenditions(registry, WIDTHS, MAX_PIXELS, task -> {
+            throw new RejectedExecutionException();
+        });
+        Path original = writeImage("original.png", 800, 600);
+
+        assertThat(rejecting.find(original.toString(), 160)).isNull();
+
+        assertThat(registry.get("images.renditions.rejected").counter().count()).isEqualTo(1);
+        assertThat(registry.get("images.renditions.pending").gauge().value()).isZero();
+    }
+
+    @Test
+    void deleteShouldRemoveAllRenditions() throws Exception {
+        Path original = writeImage("original.png", 800, 600);
+        renditions.onImageSaved(new ImageSavedEvent(1, original.toString()));
+        tasks.remove(0).run();
+
+        renditions.delete(original.toString());
+
+        assertThat(renditions.path(original.toString(), 160)).doesNotExist();
+        assertThat(renditions.path(original.toString(), 320)).doesNotExist();
+        assertThat(original).exists();
+    }
+
+    private Path writeImage(String name, int width, int height) throws Exception {
+        Path file = tempDir.resolve(name);
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", file.toFile());
+        return file;
+    }
+}
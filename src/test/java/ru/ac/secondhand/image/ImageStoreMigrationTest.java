@@ -0,0 +1,143 @@
+package ru.ac.secondhand.image;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.ac.secondhand.entity.Image;
+import ru.ac.secondhand.repository.ImageRepository;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ImageStoreMigrationTest {
+
+    private static final String HASH = "b41b86dcfdc6219bc2fb987591ad9995bcf3a1e40c2bdd3fdbec622371e6e1af";
+    private static final String NEW_PATH = "b4/1b/" + HASH + ".jpg";
+
+    @Mock
+    ImageRepository imageRepository;
+    @Mock
+    ImageRenditions renditions;
+    @Mock
+    TransactionTemplate transactionTemplate;
+
+    @TempDir
+    Path tempDir;
+
+    private ImageStoreMigration migration;
+    private Path store;
+    private Path legacy;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = tempDir.resolve("store");
+        legacy = Files.write(tempDir.resolve("0b0e6f7e_photo.JPG"), "image data".getBytes());
+        migration = new ImageStoreMigration(imageRepository, new ImageStore(store.toString()), renditions,
+                transactionTemplate);
+        ReflectionTestUtils.setField(migration, "batchSize", 2);
+        lenient().when(transactionTemplate.execute(any()))
+                .thenAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+    }
+
+    @Test
+    void legacyFileShouldBeMovedToShardedPath() {
+        Image image = legacyImage(1, null);
+        when(imageRepository.findLegacyAfter(0, PageRequest.of(0, 2))).thenReturn(List.of(image));
+        when(imageRepository.findLegacyAfter(1, PageRequest.of(0, 2))).thenReturn(Collections.emptyList());
+        when(imageRepository.movePath(1, legacy.toString(), NEW_PATH, HASH)).thenReturn(1);
+
+        assertThat(migration.migrate()).isEqualTo(1);
+
+        assertThat(store.resolve(NEW_PATH)).hasContent("image data");
+        assertThat(legacy).doesNotExist();
+        verify(renditions).delete(legacy.toString());
+    }
+
+    @Test
+    void sharedLegacyFileShouldBeKeptWhileReferenced() {
+        when(imageRepository.findLegacyAfter(0, PageRequest.of(0, 2))).thenReturn(List.of(legacyImage(1, HASH)));
+        when(imageRepository.findLegacyAfter(1, PageRequest.of(0, 2))).thenReturn(Collections.emptyList());
+        when(imageRepository.movePath(1, legacy.toString(), NEW_PATH, HASH)).thenReturn(1);
+        when(imageRepository.existsByImagePath(legacy.toString())).thenReturn(true);
+
+        migration.migrate();
+
+        assertThat(store.resolve(NEW_PATH)).hasContent("image data");
+        assertThat(legacy).exists();
+        verify(renditions, never()).delete(any());
+    }
+
+    @Test
+    void interruptedMigrationShouldOnlyUpdatePath() throws Exception {
+        Files.createDirectories(store.resolve(NEW_PATH).getParent());
+        Files.write(store.resolve(NEW_PATH), "image data".getBytes());
+        Files.delete(legacy);
+        when(imageRepository.findLegacyAfter(0, PageRequest.of(0, 2))).thenReturn(List.of(legacyImage(1, HASH)));
+        when(imageRepository.findLegacyAfter(1, PageRequest.of(0, 2))).thenReturn(Collections.emptyList());
+        when(imageRepository.movePath(1, legacy.toString(), NEW_PATH, HASH)).thenReturn(1);
+
+        assertThat(migration.migrate()).isEqualTo(1);
+
+        assertThat(store.resolve(NEW_PATH)).hasContent("image data");
+    }
+
+    @Test
+    void concurrentlyChangedImageShouldNotKeepCopy() {
+        when(imageRepository.findLegacyAfter(0, PageRequest.of(0, 2))).thenReturn(List.of(legacyImage(1, HASH)));
+        when(imageRepository.findLegacyAfter(1, PageRequest.of(0, 2))).thenReturn(Collections.emptyList());
+        when(imageRepository.movePath(1, legacy.toString(), NEW_PATH, HASH)).thenReturn(0);
+
+        assertThat(migration.migrate()).isZero();
+
+        assertThat(store.resolve(NEW_PATH)).doesNotExist();
+    }
+
+    @Test
+    void fileDeletedWithReleasedImageShouldBeCopiedAgainUnderHashLock() {
+        when(imageRepository.findLegacyAfter(0, PageRequest.of(0, 2))).thenReturn(List.of(legacyImage(1, HASH)));
+        when(imageRepository.findLegacyAfter(1, PageRequest.of(0, 2))).thenReturn(Collections.emptyList());
+        when(imageRepository.movePath(1, legacy.toString(), NEW_PATH, HASH)).thenReturn(1);
+        doAnswer(invocation -> Files.deleteIfExists(store.resolve(NEW_PATH))).when(imageRepository).lockHash(HASH);
+
+        assertThat(migration.migrate()).isEqualTo(1);
+
+        assertThat(store.resolve(NEW_PATH)).hasContent("image data");
+    }
+
+    @Test
+    void missingFileShouldBeSkipped() throws Exception {
+        Files.delete(legacy);
+        when(imageRepository.findLegacyAfter(0, PageRequest.of(0, 2))).thenReturn(List.of(legacyImage(1, HASH)));
+        when(imageRepository.findLegacyAfter(1, PageRequest.of(0, 2))).thenReturn(Collections.emptyList());
+
+        assertThat(migration.migrate()).isZero();
+
+        verify(imageRepository, never()).movePath(any(), any(), any(), any());
+    }
+
+    private Image legacyImage(Integer id, String hash) {
+        Image image = new Image();
+        image.setId(id);
+        image.setImagePath(legacy.toString());
+        image.setHash(hash);
+        return image;
+    }
+}
@@ -0,0 +1,62 @@
+package ru.ac.secondhand.image;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImageStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void relativePathShouldBeShardedByFilenamePrefix() {
+        ImageStore store = new ImageStore(tempDir.toString());
+
+        assertThat(store.relativePath("abcdef.png")).isEqualTo("ab/cd/abcdef.png");
+    }
+
+    @Test
+    void resolveShouldKeepAbsolutePaths() {
+        ImageStore store = new ImageStore(tempDir.resolve("store").toString());
+
+        assertThat(store.resolve("ab/cd/abcdef.png")).isEqualTo(tempDir.resolve("store/ab/cd/abcdef.png"));
+        assertThat(store.resolve(tempDir.resolve("legacy.png").toString())).isEqualTo(tempDir.resolve("legacy.png"));
+    }
+
+    @Test
+    void moveShouldCreateShardDirectories() throws Exception {
+        ImageStore store = new ImageStore(tempDir.resolve("store").toString());
+        Path upload = store.createTempFile();
+        Files.write(upload, new byte[]{1, 2, 3});
+
+        store.move(upload, "ab/cd/abcdef.png");
+
+        assertThat(upload).doesNotExist();
+        assertThat(tempDir.resolve("store/ab/cd/abcdef.png")).hasBinaryContent(new byte[]{1, 2, 3});
+    }
+
+    @Test
+    void copyShouldKeepSource() throws Exception {
+        ImageStore store = new ImageStore(tempDir.resolve("store").toString());
+        Path source = Files.write(tempDir.resolve("legacy.png"), new byte[]{1, 2, 3});
+
+        store.copy(source, "ab/cd/abcdef.png");
+
+        assertThat(source).exists();
+        assertThat(tempDir.resolve("store/ab/cd/abcdef.png")).hasBinaryContent(new byte[]{1, 2, 3});
+        assertThat(tempDir.resolve("store/ab/cd").toFile().list()).containsExactly("abcdef.png");
+    }
+
+    @Test
+    void hashShouldBeSha256OfContent() throws Exception {
+        Path file = Files.write(tempDir.resolve("image.png"), "image data".getBytes());
+
+        assertThat(ImageStore.hash(file))
+                .isEqualTo("b41b86dcfdc6219bc2fb987591ad9995bcf3a1e40c2bdd3fdbec622371e6e1af");
+    }
+}
@@ -8,6 +8,8 @@ import ru.ac.secondhand.dto.ad.Ads;
 import ru.ac.secondhand.dto.ad.CreateOrUpdateAd;
 import ru.ac.secondhand.dto.ad.ExtendedAd;
 import ru.ac.secondhand.entity.Ad;
+import ru.ac.secondhand.repository.projection.AdCardView;
+import ru.ac.secondhand.repository.projection.AdDetailsView;
 import ru.ac.secondhand.utils.TestUtils;
 
 import java.util.List;
@@ -38,7 +40,7 @@ class AdMapperTest {
         Assertions.assertThat(extendedAd.getAuthorLastName()).isEqualTo(ad.getUser().getLastName());
         Assertions.assertThat(extendedAd.getDescription()).isEqualTo(ad.getDescription());
         Assertions.assertThat(extendedAd.getEmail()).isEqualTo(ad.getUser().getUsername());
-        Assertions.assertThat(extendedAd.getImage()).isEqualTo(String.format("/image/%d", ad.getImage().getId()));
+        Assertions.assertThat(extendedAd.getImage()).isEqualTo(String.format("/image/%d/%s", ad.getImage().getId(), ad.getImage().getHash()));
         Assertions.assertThat(extendedAd.getPhone()).isEqualTo(ad.getUser().getPhone());
         Assertions.assertThat(extendedAd.getPrice()).isEqualTo(ad.getPrice());
         Assertions.assertThat(extendedAd.getTitle()).isEqualTo(ad.getTitle());
@@ -51,7 +53,7 @@ class AdMapperTest {
         AdDTO adDTO = mapper.toAdDTO(ad);
 
         Assertions.assertThat(ad.getUser().getId()).isEqualTo(adDTO.getAuthor());
-        Assertions.assertThat(adDTO.getImage()).isEqualTo(String.format("/image/%d", ad.getImage().getId()));
+        Assertions.assertThat(adDTO.getImage()).isEqualTo(String.format("/image/%d/%s", ad.getImage().getId(), ad.getImage().getHash()));
         Assertions.assertThat(ad.getId()).isEqualTo(adDTO.getPk());
         Assertions.assertThat(ad.getPrice()).isEqualTo(adDTO.getPrice());
         Assertions.assertThat(ad.getTitle()).isEqualTo(adDTO.getTitle());
@@ -67,4 +69,28 @@ class AdMapperTest {
         Assertions.assertThat(adsDTO.getCount()).isEqualTo(ads.size());
         Assertions.assertThat(adsDTO.getResults().size()).isEqualTo(ads.size());
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldMapAdCardViewToAdDTO() {
+        AdCardView view = TestUtils.getAdCardView();
+        AdDTO adDTO = mapper.toAdDTO(view);
+
+        Assertions.assertThat(adDTO.getAuthor()).isEqualTo(view.getAuthorId());
+        Assertions.assertThat(adDTO.getImage()).isEqualTo(String.format("/image/%d/%s", view.getImageId(), view.getImageHash()));
+        Assertions.assertThat(adDTO.getPk()).isEqualTo(view.getId());
+        Assertions.assertThat(adDTO.getPrice()).isEqualTo(view.getPrice());
+        Assertions.assertThat(adDTO.getTitle()).isEqualTo(view.getTitle());
+    }
+
+    @Test
+    void shouldMapAdDetailsViewToExtendedAd() {
+        AdDetailsView view = TestUtils.getAdDetailsView();
+        ExtendedAd extendedAd = mapper.toExtendedAd(view);
+
+        Assertions.assertThat(extendedAd).hasNoNullFieldsOrProperties();
+        Assertions.assertThat(extendedAd.getPk()).isEqualTo(view.getId());
+        Assertions.assertThat(extendedAd.getEmail()).isEqualTo(view.getAuthorEmail());
+        Assertions.assertThat(extendedAd.getPhone()).isEqualTo(view.getAuthorPhone());
+        Assertions.assertThat(extendedAd.getImage()).isEqualTo(String.format("/image/%d/%s", view.getImageId(), view.getImageHash()));
+    }
+}
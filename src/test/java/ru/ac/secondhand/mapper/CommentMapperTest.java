@@ -5,6 +5,7 @@ import org.mapstruct.factory.Mappers;
 import ru.ac.secondhand.dto.comment.CommentDTO;
 import ru.ac.secondhand.dto.comment.Comments;
 import ru.ac.secondhand.entity.Comment;
+import ru.ac.secondhand.repository.projection.CommentView;
 import ru.ac.secondhand.utils.TestUtils;
 
 import java.time.LocalDateTime;
@@ -57,4 +58,18 @@ public class CommentMapperTest {
         assertNull(commentDTO.getAuthorFirstName());
         assertNull(commentDTO.getAuthorImage());
     }
+
+    @Test
+    void toCommentDTO_FromView_Success() {
+        CommentView comment = TestUtils.getCommentView();
+
+        CommentDTO commentDTO = mapper.toCommentDTO(comment);
+
+        assertEquals(TestUtils.getCommentDTO().getPk(), commentDTO.getPk());
+        assertEquals(TestUtils.getCommentDTO().getAuthor(), commentDTO.getAuthor());
+        assertEquals(TestUtils.getCommentDTO().getAuthorFirstName(), commentDTO.getAuthorFirstName());
+        assertEquals(TestUtils.getCommentDTO().getText(), commentDTO.getText());
+        assertEquals("/image/" + TestUtils.IMAGE_ID, commentDTO.getAuthorImage());
+        assertEquals(mapper.mapLocalDateTimeToLong(comment.getCreatedAt()), commentDTO.getCreatedAt());
+    }
 }
@@ -0,0 +1,46 @@
+package ru.ac.secondhand.search;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.ac.secondhand.dto.ad.AdDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class IndexBuildGuardTest {
+
+    private final IndexBuildGuard guard = new IndexBuildGuard();
+    private final List<String> applied = new ArrayList<>();
+
+    @Test
+    void changesShouldBeAppliedImmediatelyOutsideBuild() {
+        guard.apply(() -> applied.add("saved"));
+
+        Assertions.assertThat(applied).containsExactly("saved");
+    }
+
+    @Test
+    void changesDuringBuildShouldBeAppliedAfterItInOrder() {
+        guard.startBuild();
+        guard.apply(() -> applied.add("saved"));
+        guard.apply(() -> applied.add("deleted"));
+        applied.add("read");
+
+        Assertions.assertThat(applied).containsExactly("read");
+        guard.finishBuild();
+        guard.apply(() -> applied.add("later"));
+
+        Assertions.assertThat(applied).containsExactly("read", "saved", "deleted", "later");
+    }
+
+    @Test
+    void deletedDuringBuildShouldNotBeRestoredByStaleRow() {
+        InvertedIndex index = new InvertedIndex();
+        guard.startBuild();
+        guard.apply(() -> index.remove(1));
+        index.put(new AdDTO(1, null, 1, 100, "Шкаф", 0), "Дубовый");
+        guard.finishBuild();
+
+        Assertions.assertThat(index.search("шкаф", 0, 10)).isEmpty();
+    }
+}
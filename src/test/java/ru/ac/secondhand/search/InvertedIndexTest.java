@@ -0,0 +1,91 @@
+package ru.ac.secondhand.search;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.ac.secondhand.dto.ad.AdDTO;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+class InvertedIndexTest {
+
+    InvertedIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new InvertedIndex();
+        index.put(ad(1, "Горный велосипед"), "Почти новый, катался одно лето");
+        index.put(ad(2, "Детская коляска"), "Отдам вместе с велосипед-беговелом");
+        index.put(ad(3, "Диван"), "Раскладной, ёмкий ящик для белья");
+    }
+
+    @Test
+    void searchShouldRankTitleMatchesFirst() {
+        Assertions.assertThat(ids(index.search("велосипед", 0, 10))).containsExactly(1, 2);
+    }
+
+    @Test
+    void searchShouldIgnoreCaseAndYo() {
+        Assertions.assertThat(ids(index.search("ЕМКИЙ", 0, 10))).containsExactly(3);
+    }
+
+    @Test
+    void searchShouldReturnRequestedPage() {
+        Assertions.assertThat(ids(index.search("велосипед", 1, 10))).containsExactly(2);
+        Assertions.assertThat(index.search("велосипед", 2, 10)).isEmpty();
+    }
+
+    @Test
+    void searchShouldHandleHugeOffset() {
+        Assertions.assertThat(index.search("велосипед", Integer.MAX_VALUE, 10)).isEmpty();
+        Assertions.assertThat(index.search("велосипед", Integer.MAX_VALUE - 5, Integer.MAX_VALUE)).isEmpty();
+    }
+
+    @Test
+    void putShouldReplaceIndexedAd() {
+        index.put(ad(1, "Шкаф"), "Дубовый");
+
+        Assertions.assertThat(ids(index.search("велосипед", 0, 10))).containsExactly(2);
+        Assertions.assertThat(ids(index.search("шкаф", 0, 10))).containsExactly(1);
+        Assertions.assertThat(index.size()).isEqualTo(3);
+    }
+
+    @Test
+    void updateShouldReplaceCardWithoutReindexing() {
+        index.update(1, ad -> new AdDTO(ad.getAuthor(), ad.getImage(), ad.getPk(), ad.getPrice(), ad.getTitle(), 5));
+        index.update(42, ad -> {
+            throw new AssertionError("not indexed");
+        });
+
+        Assertions.assertThat(index.search("велосипед", 0, 10).get(0).getCommentsCount()).isEqualTo(5);
+        Assertions.assertThat(ids(index.search("велосипед", 0, 10))).containsExactly(1, 2);
+    }
+
+    @Test
+    void removeShouldExcludeAdFromResults() {
+        index.remove(1);
+
+        Assertions.assertThat(ids(index.search("велосипед", 0, 10))).containsExactly(2);
+        Assertions.assertThat(index.size()).isEqualTo(2);
+    }
+
+    @Test
+    void searchShouldSurviveCompaction() {
+        for (int i = 0; i < 200; i++) {
+            index.put(ad(1, "Горный велосипед " + i), "Почти новый");
+        }
+
+        Assertions.assertThat(ids(index.search("велосипед", 0, 10))).containsExactlyInAnyOrder(1, 2);
+        Assertions.assertThat(ids(index.search("199", 0, 10))).containsExactly(1);
+        Assertions.assertThat(index.search("198", 0, 10)).isEmpty();
+    }
+
+    private static AdDTO ad(Integer id, String title) {
+        return new AdDTO(1, null, id, 100, title, 0);
+    }
+
+    private static List<Integer> ids(List<AdDTO> ads) {
+        return ads.stream().map(AdDTO::getPk).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,57 @@
+package ru.ac.secondhand.search;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SuggestIndexTest {
+
+    SuggestIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new SuggestIndex();
+        index.put(1, "Велосипед горный");
+        index.put(2, "Велосипед детский");
+        index.put(3, "Вельветовые брюки");
+        index.put(4, "Ёлка искусственная");
+    }
+
+    @Test
+    void suggestShouldOrderByPopularity() {
+        Assertions.assertThat(index.suggest("вел", 10)).containsExactly("велосипед", "вельветовые");
+    }
+
+    @Test
+    void suggestShouldCompleteLastWordOnly() {
+        Assertions.assertThat(index.suggest("Горный Д", 10)).containsExactly("детский");
+        Assertions.assertThat(index.suggest("велосипед ", 10)).isEmpty();
+    }
+
+    @Test
+    void suggestShouldNormalizeYo() {
+        Assertions.assertThat(index.suggest("ёл", 10)).containsExactly("елка");
+    }
+
+    @Test
+    void suggestShouldRespectLimit() {
+        Assertions.assertThat(index.suggest("в", 1)).containsExactly("велосипед");
+    }
+
+    @Test
+    void putShouldReplacePreviousTitle() {
+        index.put(1, "Самокат");
+        index.put(2, "Самокат");
+
+        Assertions.assertThat(index.suggest("вел", 10)).containsExactly("вельветовые");
+        Assertions.assertThat(index.suggest("са", 10)).containsExactly("самокат");
+    }
+
+    @Test
+    void removeShouldForgetTitleWords() {
+        index.remove(3);
+
+        Assertions.assertThat(index.suggest("вел", 10)).containsExactly("велосипед");
+        Assertions.assertThat(index.suggest("брю", 10)).isEmpty();
+    }
+}
@@ -0,0 +1,209 @@
+package ru.ac.secondhand.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.ac.secondhand.dto.ad.AdImportReport;
+import ru.ac.secondhand.dto.ad.AdImportResult;
+import ru.ac.secondhand.dto.ad.CreateOrUpdateAd;
+import ru.ac.secondhand.entity.Ad;
+import ru.ac.secondhand.event.AdSavedEvent;
+import ru.ac.secondhand.event.UserUpdatedEvent;
+import ru.ac.secondhand.exception.BatchSizeExceededException;
+import ru.ac.secondhand.exception.InvalidCsvException;
+import ru.ac.secondhand.exception.UserNotFoundException;
+import ru.ac.secondhand.mapper.AdMapper;
+import ru.ac.secondhand.repository.AdRepository;
+import ru.ac.secondhand.repository.UserRepository;
+import ru.ac.secondhand.service.UserService;
+import ru.ac.secondhand.utils.TestUtils;
+
+import javax.persistence.EntityManager;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AdImportServiceImplTest {
+
+    @Mock
+    AdRepository adRepository;
+    @Mock
+    UserRepository userRepository;
+    @Mock
+    UserService userService;
+    @Mock
+    AdMapper mapper;
+    @Spy
+    Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+    @Mock
+    TransactionTemplate transactionTemplate;
+    @Mock
+    ApplicationEventPublisher eventPublisher;
+    @Mock
+    EntityManager entityManager;
+
+    @InjectMocks
+    AdImportServiceImpl importService;
+
+    private final AtomicInteger nextId = new AtomicInteger(100);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(importService, "chunkSize", 2);
+        ReflectionTestUtils.setField(importService, "maxRows", 5);
+        lenient().when(userService.getCurrentUser()).thenReturn(TestUtils.getSecurityUser());
+        lenient().when(transactionTemplate.execute(any()))
+                .thenAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        lenient().when(userRepository.addAdsCount(any(), anyInt())).thenReturn(1);
+        lenient().when(mapper.toAdEntity(any(CreateOrUpdateAd.class))).thenAnswer(invocation -> new Ad());
+        lenient().when(adRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Ad> ads = invocation.getArgument(0);
+            ads.forEach(ad -> ad.setId(nextId.getAndIncrement()));
+            return ads;
+        });
+    }
+
+    @Test
+    void importAdsShouldInsertValidRowsInChunks() {
+        List<CreateOrUpdateAd> ads = Collections.nCopies(3, TestUtils.getCreateOrUpdateAd());
+
+        AdImportReport report = importService.importAds(ads);
+
+        assertEquals(3, report.getImported());
+        assertEquals(0, report.getFailed());
+        assertEquals(List.of(100, 101, 102), pks(report));
+        verify(transactionTemplate, times(2)).execute(any());
+        verify(userRepository).addAdsCount(TestUtils.USER_ID, 2);
+        verify(userRepository).addAdsCount(TestUtils.USER_ID, 1);
+        verify(eventPublisher, times(3)).publishEvent(any(AdSavedEvent.class));
+        verify(eventPublisher, times(2)).publishEvent(any(UserUpdatedEvent.class));
+    }
+
+    @Test
+    void importAdsShouldRejectInvalidRowsAndKeepOrder() {
+        CreateOrUpdateAd invalid = new CreateOrUpdateAd("abc", -1, TestUtils.DESCRIPTION);
+        List<CreateOrUpdateAd> ads = Arrays.asList(invalid, TestUtils.getCreateOrUpdateAd(), null);
+
+        AdImportReport report = importService.importAds(ads);
+
+        assertEquals(1, report.getImported());
+        assertEquals(2, report.getFailed());
+        AdImportResult first = report.getResults().get(0);
+        assertEquals(1, first.getRow());
+        assertNull(first.getPk());
+        assertTrue(first.getError().contains("[price]"));
+        assertTrue(first.getError().contains("[title]"));
+        assertEquals(100, report.getResults().get(1).getPk());
+        assertEquals("Empty row", report.getResults().get(2).getError());
+        verify(userRepository).addAdsCount(TestUtils.USER_ID, 1);
+    }
+
+    @Test
+    void importAdsShouldRejectOnlyFailedChunk() {
+        when(adRepository.saveAll(anyList()))
+                .thenThrow(new DataIntegrityViolationException("constraint"))
+                .thenAnswer(invocation -> {
+                    List<Ad> ads = invocation.getArgument(0);
+                    ads.forEach(ad -> ad.setId(nextId.getAndIncrement()));
+                    return ads;
+                });
+
+        AdImportReport report = importService.importAds(Collections.nCopies(3, TestUtils.getCreateOrUpdateAd()));
+
+        assertEquals(1, report.getImported());
+        assertEquals(2, report.getFailed());
+        assertNotNull(report.getResults().get(0).getError());
+        assertNotNull(report.getResults().get(1).getError());
+        assertEquals(100, report.getResults().get(2).getPk());
+    }
+
+    @Test
+    void importAdsShouldThrowExceptionIfUserNotFound() {
+        when(userRepository.addAdsCount(any(), anyInt())).thenReturn(0);
+
+        assertThrows(UserNotFoundException.class,
+                () -> importService.importAds(List.of(TestUtils.getCreateOrUpdateAd())));
+        verify(adRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void importAdsShouldThrowExceptionIfTooManyRows() {
+        List<CreateOrUpdateAd> ads = Collections.nCopies(6, TestUtils.getCreateOrUpdateAd());
+
+        assertThrows(BatchSizeExceededException.class, () -> importService.importAds(ads));
+        verify(transactionTemplate, never()).execute(any());
+    }
+
+    @Test
+    void importCsvShouldParseRowsInAnyColumnOrder() {
+        String csv = "Price,Title,Description\n"
+                + "100,\"Bike, red\",\"Almost \"\"new\"\" bike\"\n"
+                + "cheap,Lamp,Desk lamp in box\n"
+                + ",Chair,Wooden chair\n"
+                + "5,Table\n";
+        ArgumentCaptor<CreateOrUpdateAd> captor = ArgumentCaptor.forClass(CreateOrUpdateAd.class);
+
+        AdImportReport report = importService.importCsv(new StringReader(csv));
+
+        assertEquals(2, report.getImported());
+        assertEquals(2, report.getFailed());
+        verify(mapper, times(2)).toAdEntity(captor.capture());
+        assertEquals(new CreateOrUpdateAd("Bike, red", 100, "Almost \"new\" bike"), captor.getAllValues().get(0));
+        assertEquals(new CreateOrUpdateAd("Chair", null, "Wooden chair"), captor.getAllValues().get(1));
+        assertEquals("Invalid value [cheap] for field [price]", report.getResults().get(1).getError());
+        assertEquals("Expected 3 fields, got 2", report.getResults().get(3).getError());
+    }
+
+    @Test
+    void importCsvShouldThrowExceptionIfColumnMissing() {
+        assertThrows(InvalidCsvException.class,
+                () -> importService.importCsv(new StringReader("title,description\nLamp,Desk lamp in box\n")));
+        assertThrows(InvalidCsvException.class, () -> importService.importCsv(new StringReader("")));
+    }
+
+    @Test
+    void importCsvShouldThrowExceptionIfTooManyRows() {
+        StringBuilder csv = new StringBuilder("title,price,description\n");
+        for (int i = 0; i < 6; i++) {
+            csv.append("Lamp,1,Desk lamp in box\n");
+        }
+
+        assertThrows(BatchSizeExceededException.class, () -> importService.importCsv(new StringReader(csv.toString())));
+    }
+
+    private static List<Integer> pks(AdImportReport report) {
+        List<Integer> pks = new ArrayList<>();
+        report.getResults().forEach(result -> pks.add(result.getPk()));
+        return pks;
+    }
+}
@@ -0,0 +1,161 @@
+package ru.ac.secondhand.service.impl;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.ac.secondhand.dto.ad.AdSearchQuery;
+import ru.ac.secondhand.dto.ad.Ads;
+import ru.ac.secondhand.exception.InvalidCursorException;
+import ru.ac.secondhand.mapper.AdMapper;
+import ru.ac.secondhand.repository.AdRepository;
+import ru.ac.secondhand.repository.projection.AdCardView;
+import ru.ac.secondhand.utils.PageCursor;
+import ru.ac.secondhand.utils.TestUtils;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AdSearchServiceImplTest {
+
+    private static final String QUERY = "велосипед";
+
+    @Mock
+    AdRepository adRepository;
+    @Mock
+    AdMapper mapper;
+
+    @InjectMocks
+    AdSearchServiceImpl adSearchService;
+
+    @Test
+    void searchShouldReturnFoundAds() {
+        List<AdCardView> found = List.of(TestUtils.getAdCardView());
+
+        when(adRepository.search(QUERY, 0, 21)).thenReturn(found);
+        when(adRepository.fuzzySearch(QUERY, 0, 21)).thenReturn(Collections.emptyList());
+        when(mapper.toAdDTOs(found)).thenReturn(List.of(TestUtils.getAdDTO()));
+
+        Ads result = adSearchService.search(new AdSearchQuery(QUERY), null, null);
+        Assertions.assertThat(result.getCount()).isEqualTo(1);
+        Assertions.assertThat(result.getResults()).hasSize(1);
+        Assertions.assertThat(result.getNextCursor()).isNull();
+    }
+
+    @Test
+    void searchShouldFallBackToFuzzySearchWhenExactSearchFindsTooLittle() {
+        AdCardView ad = TestUtils.getAdCardView();
+        List<AdCardView> fuzzyFound = List.of(ad, ad, ad);
+
+        when(adRepository.search(QUERY, 0, 21)).thenReturn(Collections.emptyList());
+        when(adRepository.fuzzySearch(QUERY, 0, 21)).thenReturn(fuzzyFound);
+        when(mapper.toAdDTOs(fuzzyFound)).thenReturn(List.of(TestUtils.getAdDTO(), TestUtils.getAdDTO(), TestUtils.getAdDTO()));
+
+        Ads result = adSearchService.search(new AdSearchQuery(QUERY), null, null);
+
+        Assertions.assertThat(result.getCount()).isEqualTo(3);
+        verify(adRepository).setWordSimilarityThreshold("0.4");
+    }
+
+    @Test
+    void searchShouldNotFallBackWhenExactSearchFindsEnough() {
+        AdCardView ad = TestUtils.getAdCardView();
+        List<AdCardView> found = List.of(ad, ad, ad);
+
+        when(adRepository.search(QUERY, 0, 21)).thenReturn(found);
+        when(mapper.toAdDTOs(found)).thenReturn(Collections.emptyList());
+
+        adSearchService.search(new AdSearchQuery(QUERY), null, null);
+
+        verify(adRepository, never()).fuzzySearch(anyString(), anyInt(), anyInt());
+    }
+
+    @Test
+    void fuzzySearchShouldUseThresholdAndContinueWithFuzzyCursor() {
+        AdCardView ad = TestUtils.getAdCardView();
+        AdSearchQuery query = new AdSearchQuery(QUERY, true, 0.7);
+
+        when(adRepository.fuzzySearch(QUERY, 0, 2)).thenReturn(List.of(ad, ad));
+        when(mapper.toAdDTOs(List.of(ad))).thenReturn(List.of(TestUtils.getAdDTO()));
+
+        Ads result = adSearchService.search(query, null, 1);
+
+        when(adRepository.fuzzySearch(QUERY, 1, 2)).thenReturn(Collections.emptyList());
+        when(mapper.toAdDTOs(Collections.emptyList())).thenReturn(Collections.emptyList());
+
+        adSearchService.search(new AdSearchQuery(QUERY), result.getNextCursor(), 1);
+
+        verify(adRepository, times(2)).setWordSimilarityThreshold(anyString());
+        verify(adRepository).setWordSimilarityThreshold("0.7");
+        verify(adRepository).fuzzySearch(QUERY, 1, 2);
+        verify(adRepository, never()).search(anyString(), anyInt(), anyInt());
+    }
+
+    @Test
+    void searchShouldReturnCursorWhenNextPageExists() {
+        AdCardView ad = TestUtils.getAdCardView();
+        List<AdCardView> firstPage = List.of(ad);
+
+        when(adRepository.search(QUERY, 0, 2)).thenReturn(List.of(ad, ad));
+        when(mapper.toAdDTOs(firstPage)).thenReturn(List.of(TestUtils.getAdDTO()));
+
+        Ads result = adSearchService.search(new AdSearchQuery(QUERY), null, 1);
+        Assertions.assertThat(result.getCount()).isEqualTo(1);
+        Assertions.assertThat(result.getNextCursor()).isNotNull();
+
+        when(adRepository.search(QUERY, 1, 2)).thenReturn(Collections.emptyList());
+        when(mapper.toAdDTOs(Collections.emptyList())).thenReturn(Collections.emptyList());
+
+        Ads next = adSearchService.search(new AdSearchQuery(QUERY), result.getNextCursor(), 1);
+        Assertions.assertThat(next.getNextCursor()).isNull();
+        verify(adRepository).search(QUERY, 1, 2);
+    }
+
+    @Test
+    void searchShouldReturnEmptyAdsForBlankQuery() {
+        Ads result = adSearchService.search(new AdSearchQuery("  "), null, null);
+
+        Assertions.assertThat(result.getCount()).isZero();
+        Assertions.assertThat(result.getResults()).isEmpty();
+        verify(adRepository, never()).search(anyString(), anyInt(), anyInt());
+    }
+
+    @Test
+    void searchShouldRejectOffsetBeyondResultWindow() {
+        String deepCursor = PageCursor.encode("search", PageCursor.MAX_OFFSET + 1);
+
+        Assertions.assertThatThrownBy(() -> adSearchService.search(new AdSearchQuery(QUERY), deepCursor, null))
+                .isInstanceOf(InvalidCursorException.class);
+        verify(adRepository, never()).search(anyString(), anyInt(), anyInt());
+    }
+
+    @Test
+    void searchShouldNotReturnCursorBeyondResultWindow() {
+        AdCardView ad = TestUtils.getAdCardView();
+        String lastCursor = PageCursor.encode("search", PageCursor.MAX_OFFSET);
+        when(adRepository.search(QUERY, PageCursor.MAX_OFFSET, 2)).thenReturn(List.of(ad, ad));
+        when(mapper.toAdDTOs(List.of(ad))).thenReturn(List.of(TestUtils.getAdDTO()));
+
+        Ads result = adSearchService.search(new AdSearchQuery(QUERY), lastCursor, 1);
+
+        Assertions.assertThat(result.getNextCursor()).isNull();
+    }
+
+    @Test
+    void searchShouldThrowExceptionForFeedCursor() {
+        String feedCursor = PageCursor.encode("ads", TestUtils.AD_ID);
+
+        Assertions.assertThatThrownBy(() -> adSearchService.search(new AdSearchQuery(QUERY), feedCursor, null))
+                .isInstanceOf(InvalidCursorException.class);
+    }
+}
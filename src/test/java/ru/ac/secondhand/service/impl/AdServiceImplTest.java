@@ -1,5 +1,6 @@
 package ru.ac.secondhand.service.impl;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -8,26 +9,53 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.web.multipart.MultipartFile;
+import ru.ac.secondhand.cache.AdResponseCache;
 import ru.ac.secondhand.dto.ad.AdDTO;
+import ru.ac.secondhand.dto.ad.AdFilter;
+import ru.ac.secondhand.dto.ad.AdSort;
 import ru.ac.secondhand.dto.ad.Ads;
 import ru.ac.secondhand.dto.ad.CreateOrUpdateAd;
 import ru.ac.secondhand.dto.ad.ExtendedAd;
+import ru.ac.secondhand.dto.ad.ExtendedAds;
+import ru.ac.secondhand.dto.ad.PriceBucket;
+import ru.ac.secondhand.dto.ad.PriceHistogram;
 import ru.ac.secondhand.entity.Ad;
 import ru.ac.secondhand.entity.Image;
-import ru.ac.secondhand.entity.User;
+import ru.ac.secondhand.event.AdDeletedEvent;
+import ru.ac.secondhand.event.AdSavedEvent;
+import ru.ac.secondhand.event.UserUpdatedEvent;
 import ru.ac.secondhand.exception.AdNotFoundException;
+import ru.ac.secondhand.exception.BatchSizeExceededException;
+import ru.ac.secondhand.exception.InvalidCursorException;
+import ru.ac.secondhand.exception.UserNotFoundException;
 import ru.ac.secondhand.mapper.AdMapper;
+import ru.ac.secondhand.repository.AdFeedQuery;
 import ru.ac.secondhand.repository.AdRepository;
+import ru.ac.secondhand.repository.UserRepository;
+import ru.ac.secondhand.repository.projection.AdCardView;
+import ru.ac.secondhand.repository.projection.AdDetailsView;
+import ru.ac.secondhand.repository.projection.PriceBucketView;
 import ru.ac.secondhand.service.ImageService;
 import ru.ac.secondhand.service.UserService;
+import ru.ac.secondhand.utils.ResourceVersion;
+import ru.ac.secondhand.utils.SecurityUser;
 import ru.ac.secondhand.utils.TestUtils;
 
 import javax.persistence.EntityNotFoundException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -35,6 +63,8 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -44,61 +74,189 @@ class AdServiceImplTest {
     @Mock
     AdRepository adRepository;
     @Mock
+    UserRepository userRepository;
+    @Mock
     UserService userService;
     @Mock
     AdMapper mapper;
     @Mock
     ImageService imageService;
+    @Mock
+    ApplicationEventPublisher eventPublisher;
+    @Spy
+    AdResponseCache cache = new AdResponseCache(new SimpleMeterRegistry());
 
     @InjectMocks
     AdServiceImpl adService;
 
     @Test
     void shouldReturnAds() {
-        List<Ad> ads = List.of(TestUtils.getAdEntity());
+        List<AdCardView> ads = List.of(TestUtils.getAdCardView());
 
-        when(adRepository.findAll()).thenReturn(ads);
-        when(mapper.toAds(ads)).thenReturn(TestUtils.getAds());
+        when(adRepository.findFeed(any(AdFeedQuery.class))).thenReturn(new SliceImpl<>(ads));
+        when(mapper.toAdDTOs(ads)).thenReturn(List.of(TestUtils.getAdDTO()));
 
-        Ads adsDTO = adService.getAll();
+        Ads adsDTO = adService.getAll(new AdFilter(), null, null);
         Assertions.assertThat(adsDTO.getCount()).isEqualTo(ads.size());
         Assertions.assertThat(adsDTO.getResults().size()).isEqualTo(ads.size());
-        verify(adRepository).findAll();
+        Assertions.assertThat(adsDTO.getNextCursor()).isNull();
+        verify(adRepository).findFeed(AdFeedQuery.builder().size(20).build());
     }
 
     @Test
     void getAllReturnEmptyListDontThrowException() {
-        List<Ad> ads = Collections.emptyList();
-        Ads adsExp = new Ads(0, Collections.emptyList());
+        List<AdCardView> ads = Collections.emptyList();
+
+        when(adRepository.findFeed(any(AdFeedQuery.class))).thenReturn(new SliceImpl<>(ads));
+        when(mapper.toAdDTOs(ads)).thenReturn(Collections.emptyList());
+
+        Assertions.assertThatNoException().isThrownBy(() -> adService.getAll(new AdFilter(), null, null));
+        verify(adRepository).findFeed(any(AdFeedQuery.class));
+    }
+
+    @Test
+    void getAllShouldReturnCursorWhenNextPageExists() {
+        List<AdCardView> ads = List.of(TestUtils.getAdCardView());
+        Pageable page = PageRequest.of(0, 1);
+        AdFeedQuery firstPage = AdFeedQuery.builder().size(1).build();
+        AdFeedQuery nextPage = AdFeedQuery.builder().size(1).afterId(TestUtils.AD_ID).build();
+
+        when(adRepository.findFeed(firstPage)).thenReturn(new SliceImpl<>(ads, page, true));
+        when(mapper.toAdDTOs(ads)).thenReturn(List.of(TestUtils.getAdDTO()));
+
+        Ads result = adService.getAll(new AdFilter(), null, 1);
+        Assertions.assertThat(result.getNextCursor()).isNotNull();
+
+        when(adRepository.findFeed(nextPage))
+                .thenReturn(new SliceImpl<>(Collections.emptyList(), page, false));
+        when(mapper.toAdDTOs(Collections.emptyList())).thenReturn(Collections.emptyList());
+
+        Ads next = adService.getAll(new AdFilter(), result.getNextCursor(), 1);
+        Assertions.assertThat(next.getNextCursor()).isNull();
+        verify(adRepository).findFeed(nextPage);
+    }
+
+    @Test
+    void getAllShouldContinuePriceSortedFeedAfterPriceAndId() {
+        List<AdCardView> ads = List.of(TestUtils.getAdCardView());
+        Pageable page = PageRequest.of(0, 1);
+        AdFilter filter = new AdFilter(TestUtils.PRICE, 1000, AdSort.PRICE_DESC);
+        AdFeedQuery.AdFeedQueryBuilder query = AdFeedQuery.builder()
+                .minPrice(TestUtils.PRICE).maxPrice(1000).sort(AdSort.PRICE_DESC).size(1);
 
-        when(adRepository.findAll()).thenReturn(ads);
-        when(mapper.toAds(ads)).thenReturn(adsExp);
+        when(adRepository.findFeed(query.build())).thenReturn(new SliceImpl<>(ads, page, true));
+        when(mapper.toAdDTOs(ads)).thenReturn(List.of(TestUtils.getAdDTO()));
 
-        Assertions.assertThatNoException().isThrownBy(() -> adService.getAll());
-        verify(adRepository).findAll();
+        Ads result = adService.getAll(filter, null, 1);
+
+        AdFeedQuery nextPage = query.afterPrice(TestUtils.PRICE).afterId(TestUtils.AD_ID).build();
+        when(adRepository.findFeed(nextPage)).thenReturn(new SliceImpl<>(Collections.emptyList(), page, false));
+        when(mapper.toAdDTOs(Collections.emptyList())).thenReturn(Collections.emptyList());
+
+        adService.getAll(filter, result.getNextCursor(), 1);
+        verify(adRepository).findFeed(nextPage);
+    }
+
+    @Test
+    void getAllShouldContinueNewestFirstFeedAfterCreationTimeAndId() {
+        AdCardView ad = TestUtils.getAdCardView();
+        List<AdCardView> ads = List.of(ad);
+        Pageable page = PageRequest.of(0, 1);
+        AdFilter filter = new AdFilter(null, null, AdSort.NEWEST);
+        AdFeedQuery.AdFeedQueryBuilder query = AdFeedQuery.builder().sort(AdSort.NEWEST).size(1);
+
+        when(adRepository.findFeed(query.build())).thenReturn(new SliceImpl<>(ads, page, true));
+        when(mapper.toAdDTOs(ads)).thenReturn(List.of(TestUtils.getAdDTO()));
+
+        Ads result = adService.getAll(filter, null, 1);
+
+        AdFeedQuery nextPage = query.afterCreatedAt(ad.getCreatedAt()).afterId(ad.getId()).build();
+        when(adRepository.findFeed(nextPage)).thenReturn(new SliceImpl<>(Collections.emptyList(), page, false));
+        when(mapper.toAdDTOs(Collections.emptyList())).thenReturn(Collections.emptyList());
+
+        adService.getAll(filter, result.getNextCursor(), 1);
+        verify(adRepository).findFeed(nextPage);
+    }
+
+    @Test
+    void getAllShouldRejectCursorOfAnotherSort() {
+        List<AdCardView> ads = List.of(TestUtils.getAdCardView());
+
+        when(adRepository.findFeed(any(AdFeedQuery.class)))
+                .thenReturn(new SliceImpl<>(ads, PageRequest.of(0, 1), true));
+        when(mapper.toAdDTOs(ads)).thenReturn(List.of(TestUtils.getAdDTO()));
+
+        String cursor = adService.getAll(new AdFilter(), null, 1).getNextCursor();
+        AdFilter priceSorted = new AdFilter(null, null, AdSort.PRICE_ASC);
+
+        Assertions.assertThatThrownBy(() -> adService.getAll(priceSorted, cursor, 1))
+                .isInstanceOf(InvalidCursorException.class);
+    }
+
+    @Test
+    void getAllShouldLimitPageSize() {
+        when(adRepository.findFeed(any(AdFeedQuery.class))).thenReturn(new SliceImpl<>(Collections.emptyList()));
+        when(mapper.toAdDTOs(Collections.emptyList())).thenReturn(Collections.emptyList());
+
+        adService.getAll(new AdFilter(), null, 10_000);
+        verify(adRepository).findFeed(AdFeedQuery.builder().size(100).build());
+    }
+
+    @Test
+    void getAllShouldThrowExceptionForInvalidCursor() {
+        Assertions.assertThatThrownBy(() -> adService.getAll(new AdFilter(), "not a cursor", null))
+                .isInstanceOf(InvalidCursorException.class);
+    }
+
+    @Test
+    void getPriceHistogramShouldBuildBucketsAndCacheThem() {
+        PriceBucketView bucket = TestUtils.getPriceBucketView(1, 100, 50, 7L);
+
+        when(adRepository.findPriceHistogram(10)).thenReturn(List.of(bucket));
+
+        PriceHistogram histogram = adService.getPriceHistogram(null);
+        adService.getPriceHistogram(10);
+
+        Assertions.assertThat(histogram.getBuckets()).containsExactly(new PriceBucket(150, 199, 7L));
+        verify(adRepository, times(1)).findPriceHistogram(10);
+    }
+
+    @Test
+    void streamAllShouldPassEveryAdToAction() {
+        AdCardView ad = TestUtils.getAdCardView();
+        AdDTO adDTO = TestUtils.getAdDTO();
+        List<AdDTO> streamed = new ArrayList<>();
+
+        when(adRepository.streamFeed()).thenReturn(Stream.of(ad));
+        when(mapper.toAdDTO(ad)).thenReturn(adDTO);
+
+        adService.streamAll(streamed::add);
+
+        Assertions.assertThat(streamed).containsExactly(adDTO);
+        verify(adRepository).streamFeed();
     }
 
     @Test
     void getAdInfoShouldReturnExtendedAd() {
-        Ad ad = TestUtils.getAdEntity();
+        AdDetailsView ad = TestUtils.getAdDetailsView();
         Integer adId = ad.getId();
         ExtendedAd adDTO = TestUtils.getExtendedAd();
 
-        when(adRepository.findById(adId)).thenReturn(Optional.of(ad));
+        when(adRepository.findDetailsById(adId)).thenReturn(Optional.of(ad));
         when(mapper.toExtendedAd(ad)).thenReturn(adDTO);
 
         ExtendedAd result = adService.getAdInfo(adId);
         Assertions.assertThat(result).isNotNull();
         Assertions.assertThat(result).hasNoNullFieldsOrProperties();
 
-        verify(adRepository).findById(adId);
+        verify(adRepository).findDetailsById(adId);
         verify(mapper).toExtendedAd(ad);
     }
 
     @Test
     void getAdInfoShouldThrowException() {
         Integer adId = TestUtils.AD_ID;
-        when(adRepository.findById(Mockito.anyInt())).thenReturn(Optional.empty());
+        when(adRepository.findDetailsById(Mockito.anyInt())).thenReturn(Optional.empty());
 
         Assertions.assertThatThrownBy(
                         () -> adService.getAdInfo(adId))
@@ -106,49 +264,135 @@ class AdServiceImplTest {
                 .hasMessageContaining(String.format("Ad not found for id: " + adId));
     }
 
+    @Test
+    void getAdsInfoShouldKeepRequestOrderAndReportMissing() {
+        AdDetailsView first = TestUtils.getAdDetailsView(1);
+        AdDetailsView third = TestUtils.getAdDetailsView(3);
+        ExtendedAd firstDTO = TestUtils.getExtendedAd();
+        firstDTO.setPk(1);
+        ExtendedAd thirdDTO = TestUtils.getExtendedAd();
+        thirdDTO.setPk(3);
+
+        when(adRepository.findDetailsByIdIn(List.of(3, 2, 1))).thenReturn(List.of(first, third));
+        when(mapper.toExtendedAd(first)).thenReturn(firstDTO);
+        when(mapper.toExtendedAd(third)).thenReturn(thirdDTO);
+
+        ExtendedAds result = adService.getAdsInfo(List.of(3, 2, 1, 3));
+
+        Assertions.assertThat(result.getResults()).containsExactly(thirdDTO, firstDTO);
+        Assertions.assertThat(result.getMissing()).containsExactly(2);
+        assertEquals(2, result.getCount());
+    }
+
+    @Test
+    void getAdsInfoShouldQueryOnlyUncachedAds() {
+        AdDetailsView first = TestUtils.getAdDetailsView(1);
+        AdDetailsView second = TestUtils.getAdDetailsView(2);
+        ExtendedAd firstDTO = TestUtils.getExtendedAd();
+        ExtendedAd secondDTO = TestUtils.getExtendedAd();
+
+        when(adRepository.findDetailsByIdIn(List.of(1))).thenReturn(List.of(first));
+        when(adRepository.findDetailsByIdIn(List.of(2))).thenReturn(List.of(second));
+        when(mapper.toExtendedAd(first)).thenReturn(firstDTO);
+        when(mapper.toExtendedAd(second)).thenReturn(secondDTO);
+
+        adService.getAdsInfo(List.of(1));
+        ExtendedAds result = adService.getAdsInfo(List.of(1, 2));
+
+        Assertions.assertThat(result.getResults()).containsExactly(firstDTO, secondDTO);
+        verify(adRepository).findDetailsByIdIn(List.of(2));
+    }
+
+    @Test
+    void getAdsInfoShouldRejectTooManyIds() {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 1; i <= 101; i++) {
+            ids.add(i);
+        }
+
+        assertThrows(BatchSizeExceededException.class, () -> adService.getAdsInfo(ids));
+        verify(adRepository, never()).findDetailsByIdIn(any());
+    }
+
+    @Test
+    void getAdVersionShouldNotLoadAd() {
+        Integer adId = TestUtils.AD_ID;
+        LocalDateTime updatedAt = LocalDateTime.of(2024, 1, 2, 10, 0);
+
+        when(adRepository.findVersionById(adId)).thenReturn(Optional.of(TestUtils.getAdVersionView(3L, updatedAt)));
+
+        ResourceVersion version = adService.getAdVersion(adId);
+
+        assertEquals(new ResourceVersion("3-2-3", updatedAt), version);
+        verify(adRepository, never()).findDetailsById(any());
+        verify(adRepository, never()).findById(any());
+    }
+
+    @Test
+    void getAdVersionShouldThrowExceptionIfAdNotFound() {
+        Integer adId = TestUtils.AD_ID;
+        when(adRepository.findVersionById(adId)).thenReturn(Optional.empty());
+
+        assertThrows(AdNotFoundException.class, () -> adService.getAdVersion(adId));
+    }
+
     @Test
     void getUsersAdsShouldReturnAds() {
-        List<Ad> ads = List.of(TestUtils.getAdEntity());
-        User user = TestUtils.getUserEntity();
+        List<AdCardView> ads = List.of(TestUtils.getAdCardView());
+        SecurityUser user = TestUtils.getSecurityUser();
         Integer userId = user.getId();
 
-        when(userService.findUser()).thenReturn(user);
-        when(adRepository.findAdsByUserId(userId)).thenReturn(ads);
-        when(mapper.toAds(ads)).thenReturn(TestUtils.getAds());
+        when(userService.getCurrentUser()).thenReturn(user);
+        when(adRepository.findCardsByUserId(userId, Sort.by("id"))).thenReturn(ads);
+        when(mapper.toAdDTOs(ads)).thenReturn(List.of(TestUtils.getAdDTO()));
 
-        Ads result = adService.getUsersAds();
+        Ads result = adService.getUsersAds(null);
         Assertions.assertThat(result.getCount()).isEqualTo(ads.size());
         Assertions.assertThat(result.getResults().size()).isEqualTo(ads.size());
 
-        verify(userService).findUser();
-        verify(adRepository).findAdsByUserId(userId);
-        verify(mapper).toAds(ads);
+        verify(userService).getCurrentUser();
+        verify(adRepository).findCardsByUserId(userId, Sort.by("id"));
+        verify(mapper).toAdDTOs(ads);
+    }
+
+    @Test
+    void getUsersAdsShouldReadNewestFirst() {
+        SecurityUser user = TestUtils.getSecurityUser();
+        Sort newestFirst = Sort.by(Sort.Direction.DESC, "createdAt", "id");
+
+        when(userService.getCurrentUser()).thenReturn(user);
+        when(adRepository.findCardsByUserId(user.getId(), newestFirst)).thenReturn(Collections.emptyList());
+        when(mapper.toAdDTOs(Collections.emptyList())).thenReturn(Collections.emptyList());
+
+        adService.getUsersAds(AdSort.NEWEST);
+        verify(adRepository).findCardsByUserId(user.getId(), newestFirst);
     }
 
     @Test
     void getUsersAdsShouldReturnEmptyListWithoutThrowingException() {
-        List<Ad> ads = Collections.emptyList();
-        Ads adsExp = new Ads(0, Collections.emptyList());
-        User user = TestUtils.getUserEntity();
+        List<AdCardView> ads = Collections.emptyList();
+        SecurityUser user = TestUtils.getSecurityUser();
         Integer userId = user.getId();
 
-        when(userService.findUser()).thenReturn(user);
-        when(adRepository.findAdsByUserId(userId)).thenReturn(ads);
-        when(mapper.toAds(ads)).thenReturn(adsExp);
+        when(userService.getCurrentUser()).thenReturn(user);
+        when(adRepository.findCardsByUserId(userId, Sort.by("id"))).thenReturn(ads);
+        when(mapper.toAdDTOs(ads)).thenReturn(Collections.emptyList());
 
-        Assertions.assertThatNoException().isThrownBy(() -> adService.getUsersAds());
-        verify(adRepository).findAdsByUserId(userId);
+        Assertions.assertThatNoException().isThrownBy(() -> adService.getUsersAds(null));
+        verify(adRepository).findCardsByUserId(userId, Sort.by("id"));
     }
 
     @Test
     void createAdShouldReturnAdDTO() {
         CreateOrUpdateAd createOrUpdateAd = TestUtils.getCreateOrUpdateAd();
         Ad ad = TestUtils.getAdEntity();
-        User user = TestUtils.getUserEntity();
+        SecurityUser user = TestUtils.getSecurityUser();
         Integer userId = user.getId();
         MultipartFile mockImage = mock(MultipartFile.class);
 
-        when(userService.findUser()).thenReturn(user);
+        when(userService.getCurrentUser()).thenReturn(user);
+        when(userRepository.addAdsCount(userId, 1)).thenReturn(1);
+        when(userRepository.getReferenceById(userId)).thenReturn(TestUtils.getUserEntity());
         when(mapper.toAdEntity(createOrUpdateAd)).thenReturn(ad);
         when(mapper.toAdDTO(ad)).thenReturn(TestUtils.getAdDTO());
         when(mockImage.isEmpty()).thenReturn(false);
@@ -160,6 +404,20 @@ class AdServiceImplTest {
         Assertions.assertThat(result.getAuthor()).isEqualTo(userId);
         verify(adRepository).save(ad);
         verify(imageService).saveImage(mockImage);
+        verify(userRepository, never()).findByUsername(any());
+        verify(eventPublisher).publishEvent(new AdSavedEvent(result, ad.getDescription()));
+        verify(eventPublisher).publishEvent(new UserUpdatedEvent(userId, user.getUsername()));
+    }
+
+    @Test
+    void createAdShouldThrowExceptionIfUserNotFound() {
+        SecurityUser user = TestUtils.getSecurityUser();
+
+        when(userService.getCurrentUser()).thenReturn(user);
+        when(userRepository.addAdsCount(user.getId(), 1)).thenReturn(0);
+
+        assertThrows(UserNotFoundException.class, () -> adService.createAd(TestUtils.getCreateOrUpdateAd(), null));
+        verify(adRepository, never()).save(any());
     }
 
     @Test
@@ -247,6 +505,9 @@ class AdServiceImplTest {
 
         Assertions.assertThatNoException().isThrownBy(() -> adService.deleteAd(adId));
         verify(adRepository).delete(ad);
+        verify(userRepository).addAdsCount(ad.getUser().getId(), -1);
+        verify(eventPublisher).publishEvent(new AdDeletedEvent(adId));
+        verify(eventPublisher).publishEvent(new UserUpdatedEvent(ad.getUser().getId(), ad.getUser().getUsername()));
     }
 
     @Test
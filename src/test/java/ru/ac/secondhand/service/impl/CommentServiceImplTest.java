@@ -1,28 +1,35 @@
 package ru.ac.secondhand.service.impl;
 
-import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import org.springframework.security.core.context.SecurityContext;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.User;
-import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import ru.ac.secondhand.dto.comment.CommentDTO;
 import ru.ac.secondhand.dto.comment.Comments;
 import ru.ac.secondhand.dto.comment.CreateOrUpdateComment;
 import ru.ac.secondhand.entity.Ad;
 import ru.ac.secondhand.entity.Comment;
+import ru.ac.secondhand.event.AdCommentsChangedEvent;
+import ru.ac.secondhand.event.CommentChangedEvent;
+import ru.ac.secondhand.exception.AdNotFoundException;
 import ru.ac.secondhand.exception.CommentNotFoundException;
+import ru.ac.secondhand.exception.InvalidCursorException;
 import ru.ac.secondhand.mapper.CommentMapper;
+import ru.ac.secondhand.repository.AdRepository;
 import ru.ac.secondhand.repository.CommentRepository;
 import ru.ac.secondhand.repository.UserRepository;
+import ru.ac.secondhand.repository.projection.CommentView;
 import ru.ac.secondhand.service.AdService;
+import ru.ac.secondhand.service.UserService;
+import ru.ac.secondhand.stream.CommentStreamHub;
+import ru.ac.secondhand.utils.ResourceVersion;
+import ru.ac.secondhand.utils.SecurityUser;
 import ru.ac.secondhand.utils.TestUtils;
 
 import java.util.Collections;
@@ -31,12 +38,14 @@ import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -47,13 +56,17 @@ public class CommentServiceImplTest {
     @Mock
     UserRepository userRepository;
     @Mock
+    AdRepository adRepository;
+    @Mock
+    ApplicationEventPublisher eventPublisher;
+    @Mock
     AdService adService;
     @Mock
     CommentMapper mapper;
     @Mock
-    Authentication authentication;
+    UserService userService;
     @Mock
-    SecurityContext securityContext;
+    CommentStreamHub commentStreamHub;
     @InjectMocks
     CommentServiceImpl commentService;
 
@@ -73,77 +86,146 @@ public class CommentServiceImplTest {
         ad = TestUtils.getAdEntity();
     }
 
-    @AfterEach
-    void tearDown() {
-        SecurityContextHolder.clearContext();
+    @Test
+    void getComments_Success() {
+        List<CommentView> views = List.of(TestUtils.getCommentView());
+        List<CommentDTO> commentDTOs = TestUtils.getCommentDTOList();
+
+        when(commentRepository.findPageByAdId(adId, PageRequest.of(0, 20)))
+                .thenReturn(new SliceImpl<>(views, PageRequest.of(0, 20), false));
+        when(mapper.toCommentDTOs(views)).thenReturn(commentDTOs);
+
+        Comments actualComments = commentService.getComments(adId, null, null);
+
+        assertEquals(1, actualComments.getCount());
+        assertEquals(commentDTOs, actualComments.getResults());
+        assertNull(actualComments.getNextCursor());
+        verifyNoInteractions(adRepository, adService);
+    }
+
+    @Test
+    void getComments_NextPageByCursor() {
+        List<CommentView> views = List.of(TestUtils.getCommentView());
+
+        when(commentRepository.findPageByAdId(adId, PageRequest.of(0, 1)))
+                .thenReturn(new SliceImpl<>(views, PageRequest.of(0, 1), true));
+        when(mapper.toCommentDTOs(views)).thenReturn(TestUtils.getCommentDTOList());
+
+        Comments firstPage = commentService.getComments(adId, null, 1);
+        assertNotNull(firstPage.getNextCursor());
+
+        when(commentRepository.findPageByAdIdAfter(adId, TestUtils.CREATED_AT, TestUtils.COMMENT_ID,
+                PageRequest.of(0, 1))).thenReturn(new SliceImpl<>(Collections.emptyList(), PageRequest.of(0, 1), false));
+        when(adRepository.existsById(adId)).thenReturn(true);
+
+        Comments nextPage = commentService.getComments(adId, firstPage.getNextCursor(), 1);
+
+        assertEquals(0, nextPage.getCount());
+        assertNull(nextPage.getNextCursor());
     }
 
-    private void setUpAuthentication() {
-        when(securityContext.getAuthentication()).thenReturn(authentication);
-        SecurityContextHolder.setContext(securityContext);
-        when(authentication.isAuthenticated()).thenReturn(true);
-        UserDetails userDetails = new User(
-                "USER",
-                "666999666",
-                Collections.singletonList(new SimpleGrantedAuthority("USER"))
-        );
-        when(authentication.getPrincipal()).thenReturn(userDetails);
+    @Test
+    void getComments_AdWithoutComments() {
+        when(commentRepository.findPageByAdId(adId, PageRequest.of(0, 20)))
+                .thenReturn(new SliceImpl<>(Collections.emptyList(), PageRequest.of(0, 20), false));
+        when(adRepository.existsById(adId)).thenReturn(true);
+        when(mapper.toCommentDTOs(Collections.emptyList())).thenReturn(Collections.emptyList());
+
+        Comments actualComments = commentService.getComments(adId, null, null);
+
+        assertEquals(0, actualComments.getCount());
+        assertTrue(actualComments.getResults().isEmpty());
     }
 
+    @Test
+    void getComments_AdNotFound() {
+        when(commentRepository.findPageByAdId(adId, PageRequest.of(0, 20)))
+                .thenReturn(new SliceImpl<>(Collections.emptyList(), PageRequest.of(0, 20), false));
+        when(adRepository.existsById(adId)).thenReturn(false);
+
+        assertThrows(AdNotFoundException.class, () -> commentService.getComments(adId, null, null));
+        verifyNoInteractions(mapper);
+    }
 
     @Test
-    void getComments_Success() {
-        List<Comment> commentsList = TestUtils.getCommentList();
-        Comments expectedComments = new Comments();
-        expectedComments.setCount(commentsList.size());
-        expectedComments.setResults(TestUtils.getCommentDTOList());
+    void getComments_InvalidCursor() {
+        assertThrows(InvalidCursorException.class, () -> commentService.getComments(adId, "broken", null));
+        verifyNoInteractions(commentRepository, mapper);
+    }
 
-        when(adService.getAdById(adId)).thenReturn(TestUtils.getAdEntity());
-        when(commentRepository.findByAdId(adId)).thenReturn(commentsList);
-        when(mapper.toComments(commentsList)).thenReturn(expectedComments);
+    @Test
+    void getCommentsVersion_Success() {
+        when(commentRepository.findCommentsVersionByAdId(adId))
+                .thenReturn(Optional.of(TestUtils.getCommentsVersionView(2L, 7, 5L)));
 
-        Comments actualComments = commentService.getComments(adId);
+        ResourceVersion version = commentService.getCommentsVersion(adId);
 
-        assertEquals(expectedComments, actualComments);
-        verify(adService).getAdById(adId);
-        verify(commentRepository).findByAdId(adId);
-        verify(mapper).toComments(commentsList);
+        assertEquals(new ResourceVersion("2-7-5"), version);
+        verify(commentRepository, never()).findPageByAdId(any(), any());
+        verifyNoInteractions(mapper);
     }
 
     @Test
-    void createdComment_Success() {
-       setUpAuthentication();
+    void getCommentsVersion_AdNotFound() {
+        when(commentRepository.findCommentsVersionByAdId(adId)).thenReturn(Optional.empty());
 
+        assertThrows(AdNotFoundException.class, () -> commentService.getCommentsVersion(adId));
+    }
+
+    @Test
+    void createdComment_Success() {
         Comment newComment = TestUtils.getCommentEntity();
         CommentDTO expectedCommentDTO = TestUtils.getCommentDTO();
-        ru.ac.secondhand.entity.User mockUser = TestUtils.getUserEntity();
+        SecurityUser author = TestUtils.getSecurityUser();
 
-        when(adService.getAdById(adId)).thenReturn(ad);
+        when(userService.getCurrentUser()).thenReturn(author);
+        when(adRepository.addCommentsCount(adId, 1)).thenReturn(1);
+        when(adRepository.getReferenceById(adId)).thenReturn(ad);
+        when(userRepository.getReferenceById(author.getId())).thenReturn(TestUtils.getUserEntity());
         when(mapper.toComment(createOrUpdateComment)).thenReturn(newComment);
-
-        when(commentRepository.save(any(Comment.class))).thenReturn(newComment);
-        when(userRepository.findByUsername(anyString())).thenReturn(Optional.ofNullable(mockUser));
-        when(mapper.toCommentDTO(any(Comment.class))).thenReturn(expectedCommentDTO);
+        when(commentRepository.save(newComment)).thenReturn(newComment);
+        CommentView view = TestUtils.getCommentView();
+        when(commentRepository.findViewById(newComment.getId())).thenReturn(Optional.of(view));
+        when(mapper.toCommentDTO(view)).thenReturn(expectedCommentDTO);
 
         CommentDTO actualCommentDTO = commentService.createComment(createOrUpdateComment, adId);
 
         assertEquals(expectedCommentDTO, actualCommentDTO);
-        verify(adService).getAdById(adId);
-        verify(mapper).toComment(createOrUpdateComment);
-        verify(commentRepository).save(any(Comment.class));
-        verify(mapper).toCommentDTO(any(Comment.class));
+        assertEquals(ad, newComment.getAd());
+        verify(commentRepository).save(newComment);
+        verify(eventPublisher).publishEvent(new AdCommentsChangedEvent(adId));
+        verify(eventPublisher).publishEvent(
+                new CommentChangedEvent(adId, CommentChangedEvent.Type.CREATED, expectedCommentDTO));
+        verify(userRepository, never()).findByUsername(any());
+        verifyNoInteractions(adService);
+    }
+
+    @Test
+    void createComment_AdNotFound() {
+        when(userService.getCurrentUser()).thenReturn(TestUtils.getSecurityUser());
+        when(adRepository.addCommentsCount(adId, 1)).thenReturn(0);
+
+        assertThrows(AdNotFoundException.class, () -> commentService.createComment(createOrUpdateComment, adId));
+        verify(commentRepository, never()).save(any());
+        verifyNoInteractions(eventPublisher);
     }
 
     @Test
     void delete_CommentFoundAndDeletedSuccessfully() {
         when(adService.getAdById(adId)).thenReturn(TestUtils.getAdEntity());
         when(commentRepository.findByAdIdAndId(adId, commentId)).thenReturn(Optional.of(deletedComment));
+        CommentDTO deletedCommentDTO = TestUtils.getCommentDTO();
+        when(mapper.toCommentDTO(deletedComment)).thenReturn(deletedCommentDTO);
 
         commentService.delete(adId, commentId);
 
         verify(adService).getAdById(adId);
         verify(commentRepository).findByAdIdAndId(adId, commentId);
         verify(commentRepository).delete(deletedComment);
+        verify(adRepository).addCommentsCount(adId, -1);
+        verify(eventPublisher).publishEvent(new AdCommentsChangedEvent(adId));
+        verify(eventPublisher).publishEvent(
+                new CommentChangedEvent(adId, CommentChangedEvent.Type.DELETED, deletedCommentDTO));
     }
 
     @Test
@@ -164,7 +246,7 @@ public class CommentServiceImplTest {
         CommentDTO expectedCommentDTO = TestUtils.getCommentDTO();
 
         when(adService.getAdById(adId)).thenReturn(TestUtils.getAdEntity());
-        when(commentRepository.findById(commentId)).thenReturn(Optional.of(existingComment));
+        when(commentRepository.findByAdIdAndId(adId, commentId)).thenReturn(Optional.of(existingComment));
         when(mapper.toCommentDTO(any(Comment.class))).thenReturn(expectedCommentDTO);
 
         CommentDTO actualCommentDTO = commentService.updateComment(adId, commentId, createOrUpdateComment);
@@ -172,15 +254,45 @@ public class CommentServiceImplTest {
         assertEquals(expectedCommentDTO, actualCommentDTO);
         verify(commentRepository).save(existingComment);
         verify(mapper).toCommentDTO(existingComment);
+        verify(eventPublisher).publishEvent(
+                new CommentChangedEvent(adId, CommentChangedEvent.Type.UPDATED, expectedCommentDTO));
+    }
+
+    @Test
+    void subscribe_Success() {
+        SseEmitter emitter = new SseEmitter();
+        when(adRepository.existsById(adId)).thenReturn(true);
+        when(commentStreamHub.subscribe(adId)).thenReturn(emitter);
+
+        assertEquals(emitter, commentService.subscribe(adId));
+    }
+
+    @Test
+    void subscribe_AdNotFound() {
+        when(adRepository.existsById(adId)).thenReturn(false);
+
+        assertThrows(AdNotFoundException.class, () -> commentService.subscribe(adId));
+        verifyNoInteractions(commentStreamHub);
     }
 
     @Test
     void updateComment_NotFound_ThrowsException() {
         when(adService.getAdById(adId)).thenReturn(TestUtils.getAdEntity());
-        when(commentRepository.findById(commentId)).thenReturn(Optional.empty());
+        when(commentRepository.findByAdIdAndId(adId, commentId)).thenReturn(Optional.empty());
+
+        assertThrows(CommentNotFoundException.class, () -> commentService.updateComment(adId, commentId, createOrUpdateComment));
+        verify(commentRepository, never()).save(any(Comment.class));
+    }
+
+    @Test
+    void updateComment_OfOtherAd_ThrowsException() {
+        when(adService.getAdById(adId)).thenReturn(TestUtils.getAdEntity());
+        when(commentRepository.findByAdIdAndId(adId, commentId)).thenReturn(Optional.empty());
 
         assertThrows(CommentNotFoundException.class, () -> commentService.updateComment(adId, commentId, createOrUpdateComment));
+        verify(commentRepository, never()).findById(any());
         verify(commentRepository, never()).save(any(Comment.class));
+        verifyNoInteractions(eventPublisher);
     }
 
     @Test
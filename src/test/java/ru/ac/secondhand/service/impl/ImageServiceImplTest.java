@@ -1,15 +1,27 @@
 package ru.ac.secondhand.service.impl;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.Resource;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.StreamUtils;
+import ru.ac.secondhand.cache.ImageContentCache;
 import ru.ac.secondhand.entity.Image;
+import ru.ac.secondhand.event.ImageReleasedEvent;
+import ru.ac.secondhand.event.ImageSavedEvent;
 import ru.ac.secondhand.exception.ImageNotFoundException;
 import ru.ac.secondhand.exception.InvalidFileException;
+import ru.ac.secondhand.image.ImageFile;
+import ru.ac.secondhand.image.ImageRenditions;
+import ru.ac.secondhand.image.ImageStore;
 import ru.ac.secondhand.repository.ImageRepository;
 import ru.ac.secondhand.utils.TestUtils;
 
@@ -18,12 +30,16 @@ import java.nio.file.Path;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -33,18 +49,36 @@ public class ImageServiceImplTest {
     @Mock
     private ImageRepository imageRepository;
 
-    @InjectMocks
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ImageRenditions renditions;
+
+    @Mock
+    private ImageContentCache contentCache;
+
     private ImageServiceImpl imageService;
 
+    private static final String FILE_CONTENT_SHA256 =
+            "b41b86dcfdc6219bc2fb987591ad9995bcf3a1e40c2bdd3fdbec622371e6e1af";
+
     @TempDir
     Path tempDir;
 
+    @BeforeEach
+    void setUp() {
+        imageService = new ImageServiceImpl(imageRepository, eventPublisher, transactionManager, renditions,
+                contentCache, new ImageStore(tempDir.resolve("store").toString()));
+    }
+
     @Test
-    public void whenGenerateUniqueFilename_thenStartsWithUUID() {
-        String originalFilename = "test.jpg";
-        String uniqueFilename = imageService.generateUniqueFilename(originalFilename);
-        assertTrue(uniqueFilename.matches("[0-9a-fA-F\\-]{36}_.*"), TestUtils.UUID_START_MSG);
-        assertTrue(uniqueFilename.endsWith(originalFilename), TestUtils.ORIGINAL_FILENAME_END_MSG);
+    public void whenContentFilename_thenHashWithExtension() {
+        assertEquals(FILE_CONTENT_SHA256 + ".jpg", imageService.contentFilename(FILE_CONTENT_SHA256, TestUtils.JPEG_FILE_TYPE));
+        assertEquals(FILE_CONTENT_SHA256 + ".png", imageService.contentFilename(FILE_CONTENT_SHA256, TestUtils.PNG_FILE_TYPE));
     }
 
     @Test
@@ -118,12 +152,23 @@ public class ImageServiceImplTest {
         byte[] expectedData = TestUtils.FILE_CONTENT.getBytes();
         Files.write(imagePath, expectedData);
 
-        byte[] retrievedData = imageService.getImage(imageId);
+        Resource retrievedImage = imageService.getImage(imageId);
 
-        assertArrayEquals(expectedData, retrievedData,
+        assertEquals(expectedData.length, retrievedImage.contentLength());
+        assertArrayEquals(expectedData, StreamUtils.copyToByteArray(retrievedImage.getInputStream()),
                 TestUtils.MATCH_EXPECTED_DATA_MSG);
     }
 
+    @Test
+    public void whenImageFileIsMissing_thenThrowException() {
+        Integer imageId = 1;
+        Image fakeImage = new Image();
+        fakeImage.setImagePath(tempDir.resolve("missing.png").toString());
+        when(imageRepository.findById(imageId)).thenReturn(Optional.of(fakeImage));
+
+        assertThrows(ImageNotFoundException.class, () -> imageService.getImage(imageId));
+    }
+
     @Test
     public void whenImageDoesNotExist_thenThrowException() {
         Integer imageId = 99;
@@ -135,41 +180,208 @@ public class ImageServiceImplTest {
     }
 
     @Test
-    public void whenImageExists_thenDeleteImage() {
+    public void whenImageExists_thenDeleteImageReleasesReference() {
         Integer existingImageId = 1;
-        when(imageRepository.existsById(existingImageId)).thenReturn(true);
+        when(imageRepository.addReferences(existingImageId, -1)).thenReturn(1);
 
         imageService.deleteImage(existingImageId);
 
-        verify(imageRepository).deleteById(existingImageId);
-        verify(imageRepository).existsById(existingImageId);
+        verify(eventPublisher).publishEvent(new ImageReleasedEvent(existingImageId));
+        verify(imageRepository, never()).deleteById(existingImageId);
     }
 
     @Test
     public void whenImageDoesNotExist_thenNoDeletionAttempt() {
         Integer nonExistingImageId = 2;
-        when(imageRepository.existsById(nonExistingImageId)).thenReturn(false);
+        when(imageRepository.addReferences(nonExistingImageId, -1)).thenReturn(0);
 
         imageService.deleteImage(nonExistingImageId);
 
+        verify(eventPublisher, never()).publishEvent(any());
         verify(imageRepository, never()).deleteById(nonExistingImageId);
-        verify(imageRepository).existsById(nonExistingImageId);
     }
 
     @Test
-    public void whenAllValidationsPass_thenSaveImage() {
+    public void whenReleasedImageIsUnreferenced_thenDeleteRowAndFile() throws Exception {
+        Integer imageId = 1;
+        Path imagePath = Files.write(tempDir.resolve(TestUtils.VALID_FILENAME), TestUtils.FILE_CONTENT.getBytes());
+        Image image = new Image();
+        image.setImagePath(imagePath.toString());
+        image.setHash(FILE_CONTENT_SHA256);
+        when(imageRepository.findById(imageId)).thenReturn(Optional.of(image));
+        when(imageRepository.deleteUnreferenced(imageId)).thenReturn(1);
+        when(imageRepository.existsByImagePath(imagePath.toString())).thenReturn(false);
+
+        imageService.onImageReleased(new ImageReleasedEvent(imageId));
+
+        assertFalse(Files.exists(imagePath));
+        InOrder inOrder = inOrder(imageRepository, renditions);
+        inOrder.verify(imageRepository).lockHash(FILE_CONTENT_SHA256);
+        inOrder.verify(imageRepository).deleteUnreferenced(imageId);
+        inOrder.verify(imageRepository).existsByImagePath(imagePath.toString());
+        inOrder.verify(renditions).delete(imagePath.toString());
+        verify(contentCache).invalidate(imageId);
+    }
+
+    @Test
+    public void whenReleasedImageIsStillReferenced_thenKeepFile() throws Exception {
+        Integer imageId = 1;
+        Path imagePath = Files.write(tempDir.resolve(TestUtils.VALID_FILENAME), TestUtils.FILE_CONTENT.getBytes());
+        Image image = new Image();
+        image.setImagePath(imagePath.toString());
+        image.setRefCount(1);
+        when(imageRepository.findById(imageId)).thenReturn(Optional.of(image));
+
+        imageService.onImageReleased(new ImageReleasedEvent(imageId));
+
+        verify(imageRepository, never()).deleteUnreferenced(imageId);
+        assertTrue(Files.exists(imagePath));
+    }
+
+    @Test
+    public void whenAllValidationsPass_thenSaveImage() throws Exception {
         byte[] content = TestUtils.FILE_CONTENT.getBytes();
         MockMultipartFile validImage = new MockMultipartFile(
                 "image",
                 "test.jpg",
                 "image/jpeg",
                 content);
-        when(imageRepository.save(any(Image.class))).thenReturn(new Image());
+        when(imageRepository.findFirstByHashOrderByIdAsc(FILE_CONTENT_SHA256)).thenReturn(Optional.empty());
+        when(imageRepository.save(any(Image.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
         Image savedImage = imageService.saveImage(validImage);
 
         assertNotNull(savedImage, TestUtils.SAVED_IMAGE_NOT_NULL_MSG);
-        verify(imageRepository).save(any(Image.class));
+        ArgumentCaptor<Image> captor = ArgumentCaptor.forClass(Image.class);
+        InOrder inOrder = inOrder(imageRepository);
+        inOrder.verify(imageRepository).lockHash(FILE_CONTENT_SHA256);
+        inOrder.verify(imageRepository).findFirstByHashOrderByIdAsc(FILE_CONTENT_SHA256);
+        inOrder.verify(imageRepository).save(captor.capture());
+        assertEquals(FILE_CONTENT_SHA256, captor.getValue().getHash());
+        assertEquals(1, captor.getValue().getRefCount());
+        assertEquals("b4/1b/" + FILE_CONTENT_SHA256 + ".jpg", captor.getValue().getImagePath());
+        Path stored = tempDir.resolve("store").resolve(captor.getValue().getImagePath());
+        assertArrayEquals(content, Files.readAllBytes(stored));
+        verify(eventPublisher).publishEvent(new ImageSavedEvent(null, stored.toString()));
+    }
+
+    @Test
+    public void whenIdenticalImageExists_thenReuseIt() {
+        MockMultipartFile validImage = new MockMultipartFile(
+                "image",
+                "copy.jpg",
+                "image/jpeg",
+                TestUtils.FILE_CONTENT.getBytes());
+        Image existing = TestUtils.getImage();
+        when(imageRepository.findFirstByHashOrderByIdAsc(FILE_CONTENT_SHA256)).thenReturn(Optional.of(existing));
+        when(imageRepository.addReferences(existing.getId(), 1)).thenReturn(1);
+
+        Image savedImage = imageService.saveImage(validImage);
+
+        assertEquals(existing, savedImage);
+        verify(imageRepository, never()).save(any(Image.class));
+    }
+
+    @Test
+    public void whenImageHasHash_thenOriginalFileWithHash() throws Exception {
+        Integer imageId = 1;
+        Image image = new Image();
+        Path imagePath = Files.write(tempDir.resolve(TestUtils.VALID_FILENAME), TestUtils.FILE_CONTENT.getBytes());
+        image.setImagePath(imagePath.toString());
+        image.setHash(TestUtils.IMAGE_HASH);
+        when(imageRepository.findById(imageId)).thenReturn(Optional.of(image));
+        when(renditions.select(null)).thenReturn(null);
+        returnFilesUncached();
+
+        ImageFile file = imageService.getImageFile(imageId, null);
+
+        assertEquals(TestUtils.IMAGE_HASH, file.getEtag());
+        assertEquals(imagePath.toFile(), file.getResource().getFile());
+        assertFalse(file.isPending());
+    }
+
+    @Test
+    public void whenImagePathIsRelative_thenFileIsResolvedFromStoreRoot() throws Exception {
+        Integer imageId = 1;
+        Image image = new Image();
+        Path imagePath = tempDir.resolve("store/b4/1b/image.jpg");
+        Files.createDirectories(imagePath.getParent());
+        Files.write(imagePath, TestUtils.FILE_CONTENT.getBytes());
+        image.setImagePath("b4/1b/image.jpg");
+        image.setHash(TestUtils.IMAGE_HASH);
+        when(imageRepository.findById(imageId)).thenReturn(Optional.of(image));
+        when(renditions.select(100)).thenReturn(160);
+
+        imageService.getImageFile(imageId, 100);
+
+        verify(renditions).find(imagePath.toString(), 160);
+    }
+
+    @Test
+    public void whenImageHasNoHash_thenHashIsComputedFromFile() throws Exception {
+        Integer imageId = 1;
+        Image image = new Image();
+        Path imagePath = Files.write(tempDir.resolve(TestUtils.VALID_FILENAME), TestUtils.FILE_CONTENT.getBytes());
+        image.setImagePath(imagePath.toString());
+        when(imageRepository.findById(imageId)).thenReturn(Optional.of(image));
+        when(renditions.select(null)).thenReturn(null);
+        returnFilesUncached();
+
+        assertEquals(FILE_CONTENT_SHA256, imageService.getImageFile(imageId, null).getEtag());
+        verify(imageRepository).saveHashIfMissing(imageId, FILE_CONTENT_SHA256);
+        verify(imageRepository, never()).save(any());
+    }
+
+    @Test
+    public void whenRenditionIsReady_thenRenditionFile() throws Exception {
+        Integer imageId = 1;
+        Image image = new Image();
+        Path imagePath = Files.write(tempDir.resolve(TestUtils.VALID_FILENAME), TestUtils.FILE_CONTENT.getBytes());
+        Path renditionPath = Files.write(tempDir.resolve("rendition.jpg"), new byte[1]);
+        image.setImagePath(imagePath.toString());
+        image.setHash(TestUtils.IMAGE_HASH);
+        when(imageRepository.findById(imageId)).thenReturn(Optional.of(image));
+        when(renditions.select(100)).thenReturn(160);
+        when(renditions.find(imagePath.toString(), 160)).thenReturn(renditionPath);
+        returnFilesUncached();
+
+        ImageFile file = imageService.getImageFile(imageId, 100);
+
+        assertEquals(TestUtils.IMAGE_HASH + "-w160", file.getEtag());
+        assertEquals(renditionPath.toFile(), file.getResource().getFile());
+        assertFalse(file.isPending());
+    }
+
+    @Test
+    public void whenRenditionIsNotReady_thenPendingOriginal() throws Exception {
+        Integer imageId = 1;
+        Image image = new Image();
+        Path imagePath = Files.write(tempDir.resolve(TestUtils.VALID_FILENAME), TestUtils.FILE_CONTENT.getBytes());
+        image.setImagePath(imagePath.toString());
+        image.setHash(TestUtils.IMAGE_HASH);
+        when(imageRepository.findById(imageId)).thenReturn(Optional.of(image));
+        when(renditions.select(100)).thenReturn(160);
+
+        ImageFile file = imageService.getImageFile(imageId, 100);
+
+        assertEquals(TestUtils.IMAGE_HASH, file.getEtag());
+        assertEquals(imagePath.toFile(), file.getResource().getFile());
+        assertTrue(file.isPending());
+        verify(contentCache, never()).put(any(), any());
+    }
+
+    @Test
+    public void whenFileIsCached_thenNoRepositoryLookup() {
+        ImageFile cached = new ImageFile(null, TestUtils.IMAGE_HASH, 160, false);
+        when(renditions.select(100)).thenReturn(160);
+        when(contentCache.get(1, 160)).thenReturn(cached);
+
+        assertEquals(cached, imageService.getImageFile(1, 100));
+        verifyNoInteractions(imageRepository);
+    }
+
+    private void returnFilesUncached() {
+        when(contentCache.put(eq(1), any(ImageFile.class))).thenAnswer(invocation -> invocation.getArgument(1));
     }
 
     @Test
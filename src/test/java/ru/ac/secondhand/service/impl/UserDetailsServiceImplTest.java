@@ -10,6 +10,7 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import ru.ac.secondhand.entity.User;
 import ru.ac.secondhand.entity.enums.Role;
 import ru.ac.secondhand.repository.UserRepository;
+import ru.ac.secondhand.utils.SecurityUser;
 
 import java.util.Optional;
 
@@ -32,6 +33,7 @@ public class UserDetailsServiceImplTest {
     public void loadUserByUsername_UserExists_ShouldReturnUserDetails() {
         String username = "testUser";
         User user = new User();
+        user.setId(1);
         user.setUsername(username);
         user.setPassword("password");
         user.setRole(Role.USER);
@@ -47,6 +49,7 @@ public class UserDetailsServiceImplTest {
         assertEquals(user.getPassword(), userDetails.getPassword());
         assertTrue(userDetails.getAuthorities().stream()
                 .anyMatch(authority -> authority.getAuthority().equals("ROLE_" + user.getRole().name())));
+        assertEquals(user.getId(), ((SecurityUser) userDetails).getId());
     }
 
     @Test
@@ -10,6 +10,7 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -20,13 +21,17 @@ import ru.ac.secondhand.dto.user.UpdateUserDTO;
 import ru.ac.secondhand.dto.user.UserDTO;
 import ru.ac.secondhand.entity.Image;
 import ru.ac.secondhand.entity.User;
+import ru.ac.secondhand.event.UserUpdatedEvent;
 import ru.ac.secondhand.exception.IncorrectPasswordException;
 import ru.ac.secondhand.mapper.UserMapper;
 import ru.ac.secondhand.repository.UserRepository;
 import ru.ac.secondhand.service.ImageService;
 import ru.ac.secondhand.exception.UserNotFoundException;
+import ru.ac.secondhand.utils.ResourceVersion;
+import ru.ac.secondhand.utils.SecurityUser;
 import ru.ac.secondhand.utils.TestUtils;
 
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -34,7 +39,9 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -48,6 +55,8 @@ class UserServiceImplTest {
     private ImageService imageService;
     @Mock
     private PasswordEncoder encoder;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
     @Captor
     private ArgumentCaptor<User> userCaptor;
     @InjectMocks
@@ -87,6 +96,29 @@ class UserServiceImplTest {
         assertThrows(UserNotFoundException.class, () -> userService.findUser());
     }
 
+    @Test
+    public void getCurrentUser_SecurityUserPrincipal_DoesNotReadUser() {
+        SecurityUser principal = TestUtils.getSecurityUser();
+        when(SecurityContextHolder.getContext().getAuthentication().getPrincipal()).thenReturn(principal);
+
+        SecurityUser result = userService.getCurrentUser();
+
+        assertSame(principal, result);
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    public void getCurrentUser_OtherPrincipal_ReadsUserByUsername() {
+        User user = TestUtils.getUserEntity();
+        when(SecurityContextHolder.getContext().getAuthentication().getPrincipal()).thenReturn("username");
+        when(userRepository.findByUsername("username")).thenReturn(Optional.of(user));
+
+        SecurityUser result = userService.getCurrentUser();
+
+        assertEquals(user.getId(), result.getId());
+        assertEquals(user.getUsername(), result.getUsername());
+    }
+
     @Test
     public void setPassword_CorrectOldPassword_UpdatesPassword() {
         User mockUser = TestUtils.getUserEntity();
@@ -146,9 +178,23 @@ class UserServiceImplTest {
         verify(userService).findUser();
         verify(userMapper).updateUserDTOToUser(updateUserDTO, mockUser);
         verify(userRepository).save(mockUser);
+        verify(eventPublisher).publishEvent(new UserUpdatedEvent(mockUser.getId(), mockUser.getUsername()));
         assertEquals(updateUserDTO, result);
     }
 
+    @Test
+    void getUserDataVersion_ReturnsVersionWithoutLoadingUser() {
+        LocalDateTime updatedAt = LocalDateTime.of(2024, 1, 2, 10, 0);
+        when(userRepository.findVersionByUsername(anyString()))
+                .thenReturn(Optional.of(TestUtils.getVersionView(4L, updatedAt)));
+
+        ResourceVersion version = userService.getUserDataVersion();
+
+        assertEquals(new ResourceVersion("4", updatedAt), version);
+        verify(userRepository, never()).findByUsername(anyString());
+        verifyNoInteractions(userMapper);
+    }
+
     @Test
     public void updateAvatarTest() {
         MultipartFile image = mock(MultipartFile.class);
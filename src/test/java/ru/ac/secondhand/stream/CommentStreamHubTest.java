@@ -0,0 +1,142 @@
+package ru.ac.secondhand.stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.ac.secondhand.dto.comment.CommentDTO;
+import ru.ac.secondhand.event.AdDeletedEvent;
+import ru.ac.secondhand.event.CommentChangedEvent;
+import ru.ac.secondhand.exception.StreamLimitExceededException;
+import ru.ac.secondhand.utils.TestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatNoException;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class CommentStreamHubTest {
+
+    private static final int BUFFER_SIZE = 2;
+    private static final int MAX_SUBSCRIBERS_PER_AD = 2;
+    private static final int MAX_SUBSCRIBERS = 3;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ObjectMapper objectMapper = spy(new ObjectMapper());
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final CommentStreamHub hub = new CommentStreamHub(objectMapper, registry, BUFFER_SIZE,
+            Duration.ofMinutes(1), MAX_SUBSCRIBERS_PER_AD, MAX_SUBSCRIBERS, tasks::add, null);
+
+    @Test
+    void commentShouldBeSerializedOnceForAllSubscribers() throws Exception {
+        hub.subscribe(TestUtils.AD_ID);
+        hub.subscribe(TestUtils.AD_ID);
+        hub.subscribe(TestUtils.AD_ID + 1);
+
+        hub.onCommentChanged(event(TestUtils.AD_ID));
+
+        verify(objectMapper, times(1)).writeValueAsString(any());
+        assertThat(tasks).hasSize(2);
+        assertThatNoException().isThrownBy(() -> tasks.forEach(Runnable::run));
+        assertThat(registry.get("comments.stream.subscribers").gauge().value()).isEqualTo(3);
+    }
+
+    @Test
+    void eventWithoutSubscribersShouldNotBeSerialized() throws Exception {
+        hub.subscribe(TestUtils.AD_ID + 1);
+
+        hub.onCommentChanged(event(TestUtils.AD_ID));
+
+        verify(objectMapper, never()).writeValueAsString(any());
+        assertThat(tasks).isEmpty();
+    }
+
+    @Test
+    void subscriberShouldBeScheduledOncePerDrain() {
+        hub.subscribe(TestUtils.AD_ID);
+
+        hub.onCommentChanged(event(TestUtils.AD_ID));
+        hub.onCommentChanged(event(TestUtils.AD_ID));
+
+        assertThat(tasks).hasSize(1);
+        tasks.remove(0).run();
+        hub.onCommentChanged(event(TestUtils.AD_ID));
+        assertThat(tasks).hasSize(1);
+        assertThat(hub.subscriberCount(TestUtils.AD_ID)).isEqualTo(1);
+    }
+
+    @Test
+    void slowSubscriberShouldBeEvicted() {
+        hub.subscribe(TestUtils.AD_ID);
+        hub.subscribe(TestUtils.AD_ID);
+
+        for (int i = 0; i <= BUFFER_SIZE; i++) {
+            hub.onCommentChanged(event(TestUtils.AD_ID));
+        }
+
+        assertThat(hub.subscriberCount(TestUtils.AD_ID)).isZero();
+        assertThat(registry.get("comments.stream.evictions").counter().count()).isEqualTo(2);
+        assertThat(registry.get("comments.stream.subscribers").gauge().value()).isZero();
+        assertThatNoException().isThrownBy(() -> tasks.forEach(Runnable::run));
+    }
+
+    @Test
+    void heartbeatShouldBeQueuedOnlyForIdleSubscribers() {
+        hub.subscribe(TestUtils.AD_ID);
+
+        hub.heartbeat();
+        assertThat(tasks).hasSize(1);
+        assertThatNoException().isThrownBy(() -> tasks.remove(0).run());
+
+        for (int i = 0; i < BUFFER_SIZE; i++) {
+            hub.onCommentChanged(event(TestUtils.AD_ID));
+        }
+        hub.heartbeat();
+
+        assertThat(hub.subscriberCount(TestUtils.AD_ID)).isEqualTo(1);
+        assertThat(registry.get("comments.stream.evictions").counter().count()).isZero();
+    }
+
+    @Test
+    void subscribersBeyondLimitsShouldBeRejected() {
+        hub.subscribe(TestUtils.AD_ID);
+        hub.subscribe(TestUtils.AD_ID);
+
+        assertThatThrownBy(() -> hub.subscribe(TestUtils.AD_ID)).isInstanceOf(StreamLimitExceededException.class);
+        hub.subscribe(TestUtils.AD_ID + 1);
+        assertThatThrownBy(() -> hub.subscribe(TestUtils.AD_ID + 2)).isInstanceOf(StreamLimitExceededException.class);
+
+        assertThat(hub.subscriberCount(TestUtils.AD_ID)).isEqualTo(MAX_SUBSCRIBERS_PER_AD);
+        assertThat(hub.subscriberCount(TestUtils.AD_ID + 2)).isZero();
+        assertThat(registry.get("comments.stream.subscribers").gauge().value()).isEqualTo(MAX_SUBSCRIBERS);
+        assertThat(registry.get("comments.stream.rejections").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void adDeletionShouldCloseItsSubscribers() {
+        hub.subscribe(TestUtils.AD_ID);
+        hub.subscribe(TestUtils.AD_ID);
+        hub.subscribe(TestUtils.AD_ID + 1);
+
+        hub.onAdDeleted(new AdDeletedEvent(TestUtils.AD_ID));
+
+        assertThat(hub.subscriberCount(TestUtils.AD_ID)).isZero();
+        assertThat(hub.subscriberCount(TestUtils.AD_ID + 1)).isEqualTo(1);
+        assertThat(registry.get("comments.stream.subscribers").gauge().value()).isEqualTo(1);
+        assertThat(tasks).hasSize(2);
+        assertThatNoException().isThrownBy(() -> tasks.forEach(Runnable::run));
+        hub.subscribe(TestUtils.AD_ID);
+    }
+
+    private static CommentChangedEvent event(Integer adId) {
+        CommentDTO comment = TestUtils.getCommentDTO();
+        return new CommentChangedEvent(adId, CommentChangedEvent.Type.CREATED, comment);
+    }
+}
@@ -1,6 +1,8 @@
 package ru.ac.secondhand.utils;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.multipart.MultipartFile;
 import ru.ac.secondhand.dto.ad.AdDTO;
@@ -17,11 +19,20 @@ import ru.ac.secondhand.entity.Comment;
 import ru.ac.secondhand.entity.Image;
 import ru.ac.secondhand.entity.User;
 import ru.ac.secondhand.entity.enums.Role;
+import ru.ac.secondhand.repository.projection.AdCardView;
+import ru.ac.secondhand.repository.projection.AdDetailsView;
+import ru.ac.secondhand.repository.projection.AdVersionView;
+import ru.ac.secondhand.repository.projection.CommentView;
+import ru.ac.secondhand.repository.projection.CommentsVersionView;
+import ru.ac.secondhand.repository.projection.PriceBucketView;
+import ru.ac.secondhand.repository.projection.VersionView;
 
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 public class TestUtils {
@@ -31,10 +42,13 @@ public class TestUtils {
     public static Integer AD_ID = 1;
     public static Integer USER_ID = 1;
     public static Integer IMAGE_ID = 1;
+    public static final String IMAGE_HASH = "b41b86dcfdc6219bc2fb987591ad9995bcf3a1e40c2bdd3fdbec622371e6e1af";
     public static String TITLE = "title";
     public static String DESCRIPTION = "description";
     public static Integer PRICE = 1;
     public static String ADD_IMAGE_PATH = "/ads/image";
+    public static Integer COMMENTS_COUNT = 2;
+    public static Integer AUTHOR_ADS_COUNT = 3;
     public static Integer COMMENT_ID = 1;
     public static String COMMENT_TEXT = "Test comment text";
     public static LocalDateTime CREATED_AT = LocalDateTime.now();
@@ -53,8 +67,6 @@ public class TestUtils {
     public static final String PNG_FILE_TYPE = "image/png";
     public static final String GIF_FILE_TYPE = "image/gif";
     public static final String FILE_VALID_SIZE = "File size within valid range should return true";
-    public static final String UUID_START_MSG = "Filename should start with a UUID.";
-    public static final String ORIGINAL_FILENAME_END_MSG = "Filename should end with the original filename.";
     public static final String INVALID_FILE_SIZE_MSG = "File size above valid range should return false";
     public static final String VALID_JPEG_TYPE_MSG = "JPEG file type should be valid";
     public static final String VALID_PNG_TYPE_MSG = "PNG file type should be valid";
@@ -70,6 +82,7 @@ public class TestUtils {
 
 
     private static final byte[] BYTE_ARRAY;
+    private static final ProjectionFactory PROJECTION_FACTORY = new SpelAwareProxyProjectionFactory();
 
     static {
         BYTE_ARRAY = new byte[20]; // Пример размера, можно изменить
@@ -82,6 +95,7 @@ public class TestUtils {
         ad.setTitle(TITLE);
         ad.setDescription(DESCRIPTION);
         ad.setPrice(PRICE);
+        ad.setCommentsCount(COMMENTS_COUNT);
         ad.setUser(getUserEntity());
         ad.setImage(getImage());
         return ad;
@@ -93,7 +107,8 @@ public class TestUtils {
                 ADD_IMAGE_PATH,
                 AD_ID,
                 PRICE,
-                TITLE
+                TITLE,
+                COMMENTS_COUNT
         );
     }
 
@@ -104,6 +119,59 @@ public class TestUtils {
         );
     }
 
+    public static AdCardView getAdCardView() {
+        return PROJECTION_FACTORY.createProjection(AdCardView.class, getAdViewValues());
+    }
+
+    public static AdDetailsView getAdDetailsView() {
+        return PROJECTION_FACTORY.createProjection(AdDetailsView.class, getAdViewValues());
+    }
+
+    public static AdDetailsView getAdDetailsView(Integer id) {
+        Map<String, Object> values = getAdViewValues();
+        values.put("id", id);
+        return PROJECTION_FACTORY.createProjection(AdDetailsView.class, values);
+    }
+
+    public static PriceBucketView getPriceBucketView(Integer bucket, Integer low, Integer width, Long count) {
+        return PROJECTION_FACTORY.createProjection(PriceBucketView.class,
+                Map.of("bucket", bucket, "low", low, "width", width, "count", count));
+    }
+
+    public static VersionView getVersionView(Long version, LocalDateTime updatedAt) {
+        return PROJECTION_FACTORY.createProjection(VersionView.class,
+                Map.of("version", version, "updatedAt", updatedAt));
+    }
+
+    public static AdVersionView getAdVersionView(Long version, LocalDateTime updatedAt) {
+        return PROJECTION_FACTORY.createProjection(AdVersionView.class, Map.of("version", version,
+                "updatedAt", updatedAt, "commentsCount", COMMENTS_COUNT, "authorAdsCount", AUTHOR_ADS_COUNT));
+    }
+
+    public static CommentsVersionView getCommentsVersionView(Long count, Integer lastId, Long version) {
+        return PROJECTION_FACTORY.createProjection(CommentsVersionView.class,
+                Map.of("count", count, "lastId", lastId, "version", version));
+    }
+
+    private static Map<String, Object> getAdViewValues() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("id", AD_ID);
+        values.put("title", TITLE);
+        values.put("price", PRICE);
+        values.put("authorId", USER_ID);
+        values.put("imageId", IMAGE_ID);
+        values.put("imageHash", IMAGE_HASH);
+        values.put("createdAt", LocalDateTime.of(2024, 1, 1, 12, 0, 0, 123_456_000));
+        values.put("description", DESCRIPTION);
+        values.put("authorFirstName", "first");
+        values.put("authorLastName", "last");
+        values.put("authorEmail", "username@gmail.com");
+        values.put("authorPhone", "79998886655");
+        values.put("commentsCount", COMMENTS_COUNT);
+        values.put("authorAdsCount", AUTHOR_ADS_COUNT);
+        return values;
+    }
+
     public static CreateOrUpdateAd getCreateOrUpdateAd() {
         return new CreateOrUpdateAd(
                 TITLE,
@@ -122,7 +190,9 @@ public class TestUtils {
                 ADD_IMAGE_PATH,
                 "79998886655",
                 PRICE,
-                TITLE
+                TITLE,
+                COMMENTS_COUNT,
+                AUTHOR_ADS_COUNT
         );
     }
 
@@ -135,9 +205,14 @@ public class TestUtils {
                 .lastName("last")
                 .phone("79998886655")
                 .role(Role.USER)
+                .adsCount(AUTHOR_ADS_COUNT)
                 .image(getImage()).build();
     }
 
+    public static SecurityUser getSecurityUser() {
+        return new SecurityUser(getUserEntity());
+    }
+
     public static NewPassword getNewPassword() {
         return NewPassword.builder()
                 .currentPassword("password")
@@ -168,6 +243,7 @@ public class TestUtils {
         Image image = new Image();
         image.setId(IMAGE_ID);
         image.setImagePath(ADD_IMAGE_PATH);
+        image.setHash(IMAGE_HASH);
         return image;
     }
 
@@ -221,6 +297,17 @@ public class TestUtils {
         return commentDTOs;
     }
 
+    public static CommentView getCommentView() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("id", COMMENT_ID);
+        values.put("text", COMMENT_TEXT);
+        values.put("createdAt", CREATED_AT);
+        values.put("authorId", AUTHOR_ID);
+        values.put("authorFirstName", AUTHOR_FIRST_NAME);
+        values.put("authorImageId", IMAGE_ID);
+        return PROJECTION_FACTORY.createProjection(CommentView.class, values);
+    }
+
     public static List<Comment> getCommentList() {
         List<Comment> comments = new ArrayList<>();
         comments.add(getCommentEntity());